@@ -0,0 +1,89 @@
+package net.atos.xa.healthcheck;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * 
+ * Measure the filtering of the checks found by the registry. One check out of
+ * ten is excluded.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+	/** the number of checks found by the registry */
+	@Param({ "10", "100", "1000" })
+	public int checks;
+
+	private CustomHealthCheckRegistry registry;
+
+	private List<String> excludeList;
+
+	private String[] excludeArray;
+
+	private String excludeString;
+
+	@Setup
+	public void setUp() {
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put(SyntheticHealthCheckFactory.SYNTHETIC_CHECKS_KEY,
+				String.valueOf(checks));
+		registry = new CustomHealthCheckRegistry(environment);
+
+		excludeList = new ArrayList<String>();
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < checks; i += 10) {
+			String name = SyntheticHealthCheckFactory.getName(i);
+			excludeList.add(name);
+			builder.append(name).append(" ; ");
+		}
+		excludeArray = excludeList.toArray(new String[excludeList.size()]);
+		excludeString = builder.toString();
+	}
+
+	@TearDown
+	public void tearDown() {
+		registry.shutdown();
+	}
+
+	@Benchmark
+	public Collection<HealthCheck> filterWithList() {
+		return registry.getFilteredHealthChecks(excludeList);
+	}
+
+	@Benchmark
+	public Collection<HealthCheck> filterWithArray() {
+		return registry.getFilteredHealthChecks(excludeArray);
+	}
+
+	@Benchmark
+	public Collection<HealthCheck> filterWithString() {
+		return registry.getFilteredHealthChecksList(excludeString);
+	}
+
+}
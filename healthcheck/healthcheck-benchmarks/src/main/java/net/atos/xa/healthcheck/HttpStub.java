@@ -0,0 +1,74 @@
+package net.atos.xa.healthcheck;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.http.HttpHost;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 
+ * A local http server answering 200 "OK" to every request, used as
+ * the target of the http checks of the benchmarks
+ * 
+ */
+class HttpStub {
+
+	private static final byte[] OK = { 'O', 'K' };
+
+	private final HttpServer server;
+
+	private final ExecutorService executorService;
+
+	private HttpStub(HttpServer server, ExecutorService executorService) {
+		this.server = server;
+		this.executorService = executorService;
+	}
+
+	/**
+	 * start a stub on a free port of the loopback interface
+	 * 
+	 * @return the started stub
+	 * @throws IOException
+	 *             if the server cannot be started
+	 */
+	static HttpStub start() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(
+				"localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getRequestBody().close();
+				exchange.sendResponseHeaders(200, OK.length);
+				OutputStream body = exchange.getResponseBody();
+				body.write(OK);
+				body.close();
+			}
+		});
+		ExecutorService executorService = Executors.newFixedThreadPool(8);
+		server.setExecutor(executorService);
+		server.start();
+		return new HttpStub(server, executorService);
+	}
+
+	/**
+	 * 
+	 * @return the host of the stub
+	 */
+	HttpHost getHost() {
+		return new HttpHost("localhost", server.getAddress().getPort());
+	}
+
+	/**
+	 * stop the stub
+	 */
+	void stop() {
+		server.stop(0);
+		executorService.shutdownNow();
+	}
+}
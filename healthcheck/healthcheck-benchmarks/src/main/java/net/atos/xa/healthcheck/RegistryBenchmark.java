@@ -0,0 +1,113 @@
+package net.atos.xa.healthcheck;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import net.atos.xa.healthcheck.checks.DatabaseCheck;
+import net.atos.xa.healthcheck.checks.SimpleHttpCheck;
+
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * Measure a run of the registry, sequential (0 thread) or parallel, over a
+ * mix of synthetic checks, database checks on an in-memory H2 database and
+ * http checks on a local stub.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmark {
+
+	/** the number of checks */
+	@Param({ "10", "100" })
+	public int checks;
+
+	/** the number of threads of the registry, 0 for the sequential mode */
+	@Param({ "0", "8" })
+	public int threads;
+
+	private CustomHealthCheckRegistry registry;
+
+	private JdbcConnectionPool dataSource;
+
+	private HttpStub httpStub;
+
+	@Setup
+	public void setUp() throws IOException {
+		dataSource = JdbcConnectionPool.create(
+				"jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1", "sa", "sa");
+		httpStub = HttpStub.start();
+
+		HttpParams params = new BasicHttpParams();
+		params.setIntParameter(SimpleHttpCheck.MAX_CONNECTIONS_PER_ROUTE, 16);
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.executor.threads",
+				String.valueOf(threads));
+		registry = new CustomHealthCheckRegistry(environment);
+
+		for (int i = 0; i < checks; i++) {
+			switch (i % 3) {
+			case 0:
+				registry.registerHealthChecks(new SyntheticCheck("synthetic "
+						+ i));
+				break;
+			case 1:
+				registry.registerHealthChecks(new DatabaseCheck("h2 " + i,
+						dataSource, null, null, 0));
+				break;
+			default:
+				registry.registerHealthChecks(new SimpleHttpCheck("stub " + i,
+						httpStub.getHost(), "/", params));
+				break;
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		registry.shutdown();
+		SimpleHttpCheck.shutdownConnectionPool();
+		httpStub.stop();
+		dataSource.dispose();
+	}
+
+	@Benchmark
+	public SortedMap<String, HealthCheckResult> run() {
+		return registry.runHealthchecksWithDetailedReport();
+	}
+
+	/**
+	 * concurrent probes, the runs started while the checks are executed share
+	 * their results
+	 */
+	@Benchmark
+	@Threads(4)
+	public SortedMap<String, HealthCheckResult> concurrentRuns() {
+		return registry.runHealthchecksWithDetailedReport();
+	}
+
+}
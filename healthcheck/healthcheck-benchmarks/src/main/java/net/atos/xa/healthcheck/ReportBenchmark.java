@@ -0,0 +1,88 @@
+package net.atos.xa.healthcheck;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yammer.metrics.core.HealthCheck.Result;
+
+/**
+ * 
+ * Measure the rendering of the textual report. One result out of ten is
+ * unhealthy.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+
+	/** the number of results in the report */
+	@Param({ "10", "100", "1000" })
+	public int results;
+
+	private SortedMap<String, HealthCheckResult> report;
+
+	@Setup
+	public void setUp() {
+		report = new TreeMap<String, HealthCheckResult>();
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < results; i++) {
+			Result result = i % 10 == 0 ? Result.unhealthy("HTTP status code "
+					+ "500 for check " + i) : Result.healthy();
+			report.put("check " + i, new HealthCheckResult(result, i % 50, now));
+		}
+	}
+
+	@Benchmark
+	public long produceReport() {
+		CountingWriter writer = new CountingWriter();
+		HealthCheckReport.produceReport(new PrintWriter(writer), report);
+		return writer.count;
+	}
+
+	/**
+	 * A writer which only counts the characters, so that the benchmark does not
+	 * measure the copy of the report
+	 */
+	private static class CountingWriter extends Writer {
+
+		private long count;
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+}
@@ -0,0 +1,212 @@
+package net.atos.xa.healthcheck;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.atos.xa.healthcheck.servlet.XaHealthCheckServlet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * Measure the GET requests served concurrently by the servlet over synthetic
+ * checks, with stub requests and responses: the concurrent requests share the
+ * runs of the registry, and with a result TTL the cached reports.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ServletBenchmark {
+
+	/** the number of checks */
+	@Param({ "10", "100" })
+	public int checks;
+
+	/** the time in milliseconds the results are reused, 0 for none */
+	@Param({ "0", "1000" })
+	public long resultTtl;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private XaHealthCheckServlet servlet;
+
+	@Setup
+	public void setUp() throws ServletException {
+		final Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put(SyntheticHealthCheckFactory.SYNTHETIC_CHECKS_KEY,
+				String.valueOf(checks));
+		parameters.put("healthcheck.resultTtl", String.valueOf(resultTtl));
+		ServletConfig config = proxy(ServletConfig.class,
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("getInitParameterNames")) {
+							return Collections.enumeration(parameters.keySet());
+						}
+						if (method.getName().equals("getInitParameter")) {
+							return parameters.get(args[0]);
+						}
+						return null;
+					}
+				});
+		servlet = new XaHealthCheckServlet();
+		servlet.init(config);
+	}
+
+	@TearDown
+	public void tearDown() {
+		servlet.destroy();
+	}
+
+	@Benchmark
+	public long textReport(TextExchange exchange) throws ServletException,
+			IOException {
+		servlet.service(exchange.request, exchange.response);
+		return exchange.body.count;
+	}
+
+	@Benchmark
+	public long jsonReport(JsonExchange exchange) throws ServletException,
+			IOException {
+		servlet.service(exchange.request, exchange.response);
+		return exchange.body.count;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(
+				ServletBenchmark.class.getClassLoader(),
+				new Class<?>[] { type }, handler);
+	}
+
+	/**
+	 * The stub request and response of a thread asking for the text report
+	 */
+	@State(Scope.Thread)
+	public static class TextExchange extends Exchange {
+
+		public TextExchange() {
+			super(null);
+		}
+	}
+
+	/**
+	 * The stub request and response of a thread asking for the JSON report
+	 */
+	@State(Scope.Thread)
+	public static class JsonExchange extends Exchange {
+
+		public JsonExchange() {
+			super("json");
+		}
+	}
+
+	/**
+	 * A GET request on the servlet and its response, the report written to
+	 * the response is only counted
+	 */
+	static class Exchange {
+
+		final CountingOutputStream body = new CountingOutputStream();
+
+		final HttpServletRequest request;
+
+		final HttpServletResponse response;
+
+		Exchange(final String format) {
+			request = proxy(HttpServletRequest.class, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					String name = method.getName();
+					if (name.equals("getMethod")) {
+						return "GET";
+					} else if (name.equals("getRequestURI")) {
+						return "/healthcheck";
+					} else if (name.equals("getParameter")) {
+						return "format".equals(args[0]) ? format : null;
+					} else if (name.equals("getDateHeader")) {
+						return Long.valueOf(-1);
+					} else if (method.getReturnType() == boolean.class) {
+						return Boolean.FALSE;
+					} else if (method.getReturnType() == String.class) {
+						return name.startsWith("get") && args == null ? "localhost"
+								: null;
+					}
+					return null;
+				}
+			});
+			response = proxy(HttpServletResponse.class,
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method,
+								Object[] args) {
+							String name = method.getName();
+							if (name.equals("getOutputStream")) {
+								return body;
+							} else if (name.equals("getWriter")) {
+								// the servlet closes the writer of each response
+								return new PrintWriter(new OutputStreamWriter(
+										body, UTF_8));
+							} else if (method.getReturnType() == boolean.class) {
+								return Boolean.FALSE;
+							}
+							return null;
+						}
+					});
+		}
+	}
+
+	/**
+	 * A response body which only counts the bytes, so that the benchmark does
+	 * not measure the copy of the reports
+	 */
+	private static class CountingOutputStream extends ServletOutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+}
@@ -0,0 +1,25 @@
+package net.atos.xa.healthcheck;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * 
+ * A check which does nothing, used to measure the overhead of the registry
+ * 
+ */
+public class SyntheticCheck extends HealthCheck {
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of the check
+	 */
+	public SyntheticCheck(String name) {
+		super(name);
+	}
+
+	@Override
+	protected Result check() throws Exception {
+		return Result.healthy();
+	}
+}
@@ -0,0 +1,47 @@
+package net.atos.xa.healthcheck;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.atos.xa.healthcheck.spi.HealthCheckFactory;
+import net.atos.xa.healthcheck.util.EnvironmentUtil;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * 
+ * Implementation of {@link HealthCheckFactory} giving synthetic checks to the
+ * registries of the benchmarks. The number of checks is given by the
+ * environment variable benchmark.syntheticChecks (none if not set).
+ * 
+ */
+public class SyntheticHealthCheckFactory implements HealthCheckFactory {
+
+	static final String SYNTHETIC_CHECKS_KEY = "benchmark.syntheticChecks";
+
+	/**
+	 * 
+	 * @param index
+	 *            the index of the check
+	 * @return the name of the synthetic check with the given index
+	 */
+	static String getName(int index) {
+		return "synthetic " + index;
+	}
+
+	public List<HealthCheck> getHealthChecks(Map<String, String> environment) {
+		int count = EnvironmentUtil.getInt(environment, SYNTHETIC_CHECKS_KEY,
+				0);
+		if (count == 0) {
+			return null;
+		}
+
+		List<HealthCheck> healthChecks = new ArrayList<HealthCheck>(count);
+		for (int i = 0; i < count; i++) {
+			healthChecks.add(new SyntheticCheck(getName(i)));
+		}
+		return healthChecks;
+	}
+
+}
@@ -0,0 +1,135 @@
+package net.atos.xa.healthcheck;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.yammer.metrics.core.HealthCheck.Result;
+
+/**
+ * 
+ * Stop executing a check which keeps failing. After a number of consecutive
+ * failures, the circuit is open: the check is not executed and an unhealthy
+ * result is returned immediately. Once the back-off is elapsed, a single trial
+ * execution is allowed; the circuit is closed if it succeeds, open again for
+ * another back-off otherwise. A trial whose result is never recorded (e.g.
+ * the check threw an {@link Error}) does not keep the circuit half-open:
+ * another trial is allowed once the back-off is elapsed again.
+ * 
+ * 
+ */
+final class CircuitBreaker {
+
+	private static final int CLOSED = 0;
+
+	private static final int OPEN = 1;
+
+	/** the back-off is elapsed and the trial execution is in progress */
+	private static final int HALF_OPEN = 2;
+
+	/** the number of consecutive failures opening the circuit */
+	private final int failureThreshold;
+
+	/** the back-off in nanoseconds */
+	private final long backoff;
+
+	private final AtomicInteger state = new AtomicInteger(CLOSED);
+
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+	/**
+	 * the time (from {@link System#nanoTime()}) from which the next trial
+	 * execution is allowed
+	 */
+	private final AtomicLong nextTrial = new AtomicLong();
+
+	/** the result returned while the circuit is open */
+	private volatile HealthCheckResult openResult;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param failureThreshold
+	 *            the number of consecutive failures opening the circuit
+	 * @param backoff
+	 *            the time in milliseconds before a trial execution
+	 */
+	CircuitBreaker(int failureThreshold, long backoff) {
+		this.failureThreshold = Math.max(failureThreshold, 1);
+		this.backoff = TimeUnit.MILLISECONDS.toNanos(backoff);
+	}
+
+	/**
+	 * Ask for the execution of the check
+	 * 
+	 * @return null if the check can be executed, otherwise the result to
+	 *         return instead
+	 */
+	HealthCheckResult tryExecute() {
+		int current = state.get();
+		if (current == CLOSED) {
+			return null;
+		}
+		long next = nextTrial.get();
+		long now = System.nanoTime();
+		if (now - next >= 0 && nextTrial.compareAndSet(next, now + backoff)) {
+			// the trial execution, or a new one if the result of the previous
+			// trial has not been recorded within the back-off
+			state.set(HALF_OPEN);
+			return null;
+		}
+		return openResult;
+	}
+
+	/**
+	 * Take into account the result of an execution of the check
+	 * 
+	 * @param result
+	 *            the result, ignored if it has been returned by
+	 *            {@link #tryExecute()}
+	 * @return true if the circuit has been opened by this result
+	 */
+	boolean onResult(HealthCheckResult result) {
+		if (isOpenCircuitResult(result)) {
+			return false;
+		}
+		if (result.isHealthy()) {
+			consecutiveFailures.set(0);
+			state.set(CLOSED);
+			return false;
+		}
+		int failures = consecutiveFailures.incrementAndGet();
+		if (state.get() == HALF_OPEN || failures >= failureThreshold) {
+			openResult = new OpenCircuitResult(
+					Result.unhealthy("circuit open after " + failures
+							+ " consecutive failures, last failure: "
+							+ result.getMessage()));
+			nextTrial.set(System.nanoTime() + backoff);
+			state.set(OPEN);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 
+	 * @param result
+	 *            a result
+	 * @return true if the result has been returned instead of executing a
+	 *         check
+	 */
+	static boolean isOpenCircuitResult(HealthCheckResult result) {
+		return result instanceof OpenCircuitResult;
+	}
+
+	/**
+	 * The result returned while the circuit is open
+	 */
+	private static class OpenCircuitResult extends HealthCheckResult {
+
+		OpenCircuitResult(Result result) {
+			super(result, 0);
+		}
+	}
+
+}
@@ -1,359 +1,2199 @@
-package net.atos.xa.healthcheck;
-
-import java.io.IOException;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.ServiceLoader;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.StringTokenizer;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
-import net.atos.xa.healthcheck.spi.HealthCheckFactory;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.yammer.metrics.HealthChecks;
-import com.yammer.metrics.core.HealthCheck;
-import com.yammer.metrics.core.HealthCheck.Result;
-
-/**
- * 
- * A custom registry that replaces the one provided by metrics
- * 
- * 
- * 
- */
-class CustomHealthCheckRegistry {
-
-	/** the logger */
-	private static Logger log = LoggerFactory
-			.getLogger(CustomHealthCheckRegistry.class.getName());
-
-	private final Map<String, HealthCheck> healthChecks = new HashMap<String, HealthCheck>();
-
-	private final ConcurrentMap<String, HealthCheck> registerHealthChecks = new ConcurrentHashMap<String, HealthCheck>();
-
-	/**
-	 * Constructor
-	 * 
-	 */
-	public CustomHealthCheckRegistry() {
-		init(null);
-	}
-
-	/**
-	 * Constructor
-	 * 
-	 */
-	public CustomHealthCheckRegistry(Map<String, String> environment) {
-		init(environment);
-	}
-
-	/**
-	 * Initialization method
-	 * 
-	 * @param environment
-	 *            environment variable used for the setup of the checks <br>
-	 *            This is an optional option, it depends on the checks you use.
-	 *            Please consult the javadoc of the checks you use for details
-	 *            about the possible variable environments
-	 */
-	protected void init(Map<String, String> environment) {
-
-		ClassLoader classLoader = this.getClass().getClassLoader();
-
-		if (log.isDebugEnabled()) {
-
-			StringBuffer buffer = new StringBuffer();
-			if (environment != null) {
-				Set<String> keys = environment.keySet();
-				for (String key : keys) {
-					buffer.append("key " + key + " : " + environment.get(key)
-							+ "\n");
-				}
-			} else {
-				buffer.append("environment is null");
-			}
-
-			log.debug(
-					"[HealthCheck] init healthcheck locator (classloader : {} ) with environment",
-					classLoader.getClass());
-			log.debug(buffer.toString());
-
-			try {
-				Enumeration<URL> urls = classLoader
-						.getResources("META-INF/services/"
-								+ HealthCheck.class.getName());
-				if (urls != null) {
-					while (urls.hasMoreElements()) {
-						URL url = urls.nextElement();
-						log.debug(
-								"[HealthCheck] load SPI file {} for static healthcheck",
-								url.getPath());
-					}
-				}
-
-				urls = classLoader.getResources("META-INF/services/"
-						+ HealthCheckFactory.class.getName());
-				if (urls != null) {
-					while (urls.hasMoreElements()) {
-						URL url = urls.nextElement();
-						log.debug(
-								"[HealthCheck] load SPI file {} for dynamic healthcheck",
-								url.getPath());
-					}
-				}
-			} catch (IOException e) {
-				// do nothing
-				log.debug("[HealthCheck] error when getting resources", e);
-			}
-		}
-
-		ServiceLoader<HealthCheck> serviceLoader = ServiceLoader.load(
-				HealthCheck.class, classLoader);
-		Iterator<HealthCheck> iterator = serviceLoader.iterator();
-		while (iterator.hasNext()) {
-			HealthCheck check = iterator.next();
-			log.debug("[HealthCheck] found a check {} (classname : {})",
-					check.getName(), check.getClass());
-			healthChecks.put(check.getName(), check);
-		}
-
-		ServiceLoader<HealthCheckFactory> serviceLoaderFactory = ServiceLoader
-				.load(HealthCheckFactory.class, classLoader);
-		Iterator<HealthCheckFactory> iteratorFactory = serviceLoaderFactory
-				.iterator();
-		while (iteratorFactory.hasNext()) {
-			HealthCheckFactory factory = iteratorFactory.next();
-			List<HealthCheck> healthchecks = factory
-					.getHealthChecks(environment);
-			if (healthchecks != null) {
-				for (HealthCheck check : healthchecks) {
-					log.debug(
-							"[HealthCheck] found a check {} (classname : {}) given by the healthcheck factory {}",
-							check.getName(), check.getClass(),
-							factory.getClass());
-					healthChecks.put(check.getName(), check);
-				}
-			}
-
-		}
-	}
-
-	Collection<HealthCheck> getAllHealthChecks() {
-		return healthChecks.values();
-	}
-
-	Collection<HealthCheck> getFilteredHealthChecks(List<String> excludeChecks) {
-
-		if (excludeChecks == null) {
-			return healthChecks.values();
-		}
-
-		List<String> trimmedExcludeChecks = new ArrayList<String>();
-		for (String string : excludeChecks) {
-			trimmedExcludeChecks.add(trimToEmpty(string));
-		}
-
-		Iterator<HealthCheck> iterator = healthChecks.values().iterator();
-		List<HealthCheck> result = null;
-
-		while (iterator.hasNext()) {
-			HealthCheck healthcheck = iterator.next();
-
-			if (!trimmedExcludeChecks.contains(trimToEmpty(healthcheck
-					.getName()))) {
-				if (result == null) {
-					result = new ArrayList<HealthCheck>();
-				}
-
-				result.add(healthcheck);
-			}
-
-		}
-
-		return result;
-	}
-
-	Collection<HealthCheck> getFilteredHealthChecks(String... excludeChecks) {
-
-		if (excludeChecks == null) {
-			return healthChecks.values();
-		}
-
-		List<String> trimmedExcludeChecks = new ArrayList<String>();
-		for (String string : excludeChecks) {
-			trimmedExcludeChecks.add(trimToEmpty(string));
-		}
-
-		Iterator<HealthCheck> iterator = healthChecks.values().iterator();
-		List<HealthCheck> result = null;
-
-		while (iterator.hasNext()) {
-			HealthCheck healthcheck = iterator.next();
-
-			if (!trimmedExcludeChecks.contains(trimToEmpty(healthcheck
-					.getName()))) {
-				if (result == null) {
-					result = new ArrayList<HealthCheck>();
-				}
-
-				result.add(healthcheck);
-			}
-
-		}
-
-		return result;
-	}
-
-	Collection<HealthCheck> getFilteredHealthChecksList(
-			String excludeHealthChecks) {
-
-		List<String> excludeChecks = new ArrayList<String>();
-		if (excludeHealthChecks != null) {
-
-			StringTokenizer tokenizer = new StringTokenizer(
-					excludeHealthChecks, ";");
-			while (tokenizer.hasMoreTokens()) {
-				excludeChecks.add(trimToEmpty(tokenizer.nextToken()));
-			}
-		}
-
-		return getFilteredHealthChecks(excludeChecks);
-
-	}
-
-	/**
-	 * register the healthchecks into the {@link HealthChecks} class.
-	 * 
-	 * @param healthChecks
-	 */
-	void registerHealthChecks(Collection<HealthCheck> healthChecks) {
-		if (healthChecks != null) {
-			for (HealthCheck healthCheck : healthChecks) {
-				log.debug("[HealthCheck] register a check {} (classname : {})",
-						healthCheck.getName(), healthCheck.getClass());
-				register(healthCheck);
-			}
-		}
-
-	}
-
-	void registerHealthChecks(HealthCheck... healthChecks) {
-
-		if (healthChecks != null) {
-			for (int i = 0; i < healthChecks.length; i++) {
-				if (healthChecks[i] != null) {
-					log.debug(
-							"[HealthCheck] register a check {} (classname : {})",
-							healthChecks[i].getName(),
-							healthChecks[i].getClass());
-					register(healthChecks[i]);
-				}
-			}
-		}
-	}
-
-	boolean runHealthchecks() {
-		return isAllHealthy(runHealthchecksWithDetailedReport());
-	}
-
-	/**
-	 * Runs the registered health checks and returns a map of the results.
-	 * 
-	 * @return a map of the health check results
-	 */
-	SortedMap<String, HealthCheckResult> runHealthchecksWithDetailedReport() {
-		final SortedMap<String, HealthCheckResult> results = new TreeMap<String, HealthCheckResult>();
-		for (Entry<String, HealthCheck> entry : registerHealthChecks.entrySet()) {
-			long startTime = System.currentTimeMillis();
-			final Result result = entry.getValue().execute();
-			results.put(entry.getKey(),
-					new HealthCheckResult(result, System.currentTimeMillis()
-							- startTime));
-		}
-		return Collections.unmodifiableSortedMap(results);
-	}
-
-	void register(HealthCheck healthCheck) {
-		registerHealthChecks.putIfAbsent(healthCheck.getName(), healthCheck);
-	}
-
-	void activateCheck(String name) {
-		if (name == null) {
-			return;
-		}
-		if (healthChecks.get(name.trim()) == null) {
-			log.warn("[HealthCheck] Not able to activate an unknown check {}",
-					name.trim());
-		} else {
-			register(healthChecks.get(name.trim()));
-		}
-
-	}
-
-	void activateChecks(String... names) {
-
-		if (names != null && names.length > 0) {
-			for (int i = 0; i < names.length; i++) {
-				activateCheck(names[i]);
-			}
-		}
-	}
-
-	void deactivateCheck(String name) {
-		if (name == null) {
-			return;
-		}
-		if (registerHealthChecks.get(name.trim()) == null) {
-			log.warn(
-					"[HealthCheck] Not able to deactivate an unknown check {}",
-					name.trim());
-		} else {
-			registerHealthChecks.remove(name.trim());
-		}
-
-	}
-
-	void deactivateCheck(HealthCheck healthCheck) {
-		deactivateCheck(healthCheck.getName());
-	}
-
-	void deactivateChecks(String... names) {
-		if (names != null && names.length > 0) {
-			for (int i = 0; i < names.length; i++) {
-				deactivateCheck(names[i]);
-			}
-		}
-	}
-
-	void deactivateAllChecks() {
-		registerHealthChecks.clear();
-	}
-
-	private String trimToEmpty(String str) {
-		return str == null ? "" : str.trim();
-	}
-
-	private boolean isAllHealthy(Map<String, HealthCheckResult> results) {
-		for (HealthCheckResult result : results.values()) {
-			if (!result.isHealthy()) {
-				return false;
-			}
-		}
-		return true;
-	}
-
-}
+package net.atos.xa.healthcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.atos.xa.healthcheck.spi.AsyncHealthCheck;
+import net.atos.xa.healthcheck.spi.AsyncHealthCheck.CompletionTime;
+import net.atos.xa.healthcheck.spi.DependentHealthCheck;
+import net.atos.xa.healthcheck.spi.GroupedHealthCheck;
+import net.atos.xa.healthcheck.util.EnvironmentUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yammer.metrics.HealthChecks;
+import com.yammer.metrics.core.HealthCheck;
+import com.yammer.metrics.core.HealthCheck.Result;
+
+/**
+ * 
+ * A custom registry that replaces the one provided by metrics
+ * 
+ * 
+ * 
+ */
+class CustomHealthCheckRegistry {
+
+	/** the logger */
+	private static Logger log = LoggerFactory
+			.getLogger(CustomHealthCheckRegistry.class.getName());
+
+	/** finds the available checks (SPI and factories) when first needed */
+	private volatile HealthCheckDiscovery discovery;
+
+	/** serializes the rediscoveries */
+	private final Object discoveryLock = new Object();
+
+	/**
+	 * the active checks, the snapshot is replaced atomically when a check is
+	 * registered or deactivated
+	 */
+	private final AtomicReference<HealthCheckSnapshot> registerHealthChecks = new AtomicReference<HealthCheckSnapshot>(
+			HealthCheckSnapshot.EMPTY);
+
+	/**
+	 * environment variable giving the number of threads used to run the
+	 * checks in parallel (0 or not set: the checks are run sequentially)
+	 */
+	private static final String EXECUTOR_THREADS_KEY = "healthcheck.executor.threads";
+
+	/**
+	 * environment variable giving the maximum number of threads used to
+	 * enforce the deadline of the checks in sequential mode (10 by default)
+	 */
+	private static final String TIMEOUT_THREADS_KEY = "healthcheck.timeoutExecutor.threads";
+
+	/** the executor used to run the checks in parallel, null in sequential mode */
+	private volatile ExecutorService executorService;
+
+	/** true if the executor has been created by this registry */
+	private volatile boolean ownExecutorService;
+
+	/**
+	 * environment variable giving the default deadline in milliseconds of a
+	 * check (0 or not set: no deadline)
+	 */
+	private static final String TIMEOUT_KEY = "healthcheck.timeout";
+
+	/**
+	 * prefix of the environment variables giving the deadline in milliseconds
+	 * of one check (e.g. "healthcheck.timeout.databaseCheck jdbc/myDS")
+	 */
+	private static final String TIMEOUT_KEY_PREFIX = TIMEOUT_KEY + ".";
+
+	/** the default deadline of a check in milliseconds, 0 for no deadline */
+	private long defaultTimeout;
+
+	/** the deadline in milliseconds per check name */
+	private final ConcurrentMap<String, Long> timeouts = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * the executor used in sequential mode to enforce the deadline of the
+	 * checks, created on first use
+	 */
+	private ExecutorService timeoutExecutorService;
+
+	/** the maximum number of threads of the timeout executor */
+	private int timeoutThreads;
+
+	/**
+	 * the executions abandoned at their deadline whose thread is still
+	 * running the check, per check name
+	 */
+	private final ConcurrentMap<String, CheckTask> abandonedChecks = new ConcurrentHashMap<String, CheckTask>();
+
+	/**
+	 * environment variable giving the default interval in milliseconds
+	 * between two background executions of a check. If set, the checks are
+	 * executed by a scheduler and the runs return the last known results.
+	 */
+	private static final String SCHEDULE_INTERVAL_KEY = "healthcheck.schedule.interval";
+
+	/**
+	 * prefix of the environment variables giving the interval in milliseconds
+	 * of one check
+	 */
+	private static final String SCHEDULE_INTERVAL_KEY_PREFIX = SCHEDULE_INTERVAL_KEY
+			+ ".";
+
+	/** environment variable giving the number of threads of the scheduler */
+	private static final String SCHEDULE_THREADS_KEY = "healthcheck.schedule.threads";
+
+	/** the interval in milliseconds of the background execution per check */
+	private final ConcurrentMap<String, Long> scheduleIntervals = new ConcurrentHashMap<String, Long>();
+
+	private int scheduleThreads;
+
+	/** the scheduler, null if the checks are not executed in the background */
+	private volatile HealthCheckScheduler scheduler;
+
+	/**
+	 * environment variable giving the time in milliseconds during which the
+	 * results of a run are reused by the next runs (0 or not set: the results
+	 * are only shared with the runs started while the checks are executed)
+	 */
+	private static final String RESULT_TTL_KEY = "healthcheck.resultTtl";
+
+	private volatile long resultTtl;
+
+	/**
+	 * environment variable giving the duration in milliseconds of the sliding
+	 * window of the latency percentiles (10 minutes by default)
+	 */
+	private static final String LATENCY_WINDOW_KEY = "healthcheck.latency.window";
+
+	private long latencyWindow;
+
+	/**
+	 * environment variable giving the number of last results kept per check
+	 * (20 by default, 0 to keep no history), it bounds the flapping window
+	 */
+	private static final String HISTORY_SIZE_KEY = "healthcheck.history.size";
+
+	/**
+	 * environment variable giving the number of status changes within the
+	 * flapping window above which a check is flapping (5 by default, 0 to
+	 * disable the detection)
+	 */
+	private static final String FLAPPING_TRANSITIONS_KEY = "healthcheck.flapping.transitions";
+
+	/**
+	 * environment variable giving the duration in milliseconds of the
+	 * flapping window (10 minutes by default)
+	 */
+	private static final String FLAPPING_WINDOW_KEY = "healthcheck.flapping.window";
+
+	private int historySize;
+
+	private int flappingTransitions;
+
+	private long flappingWindow;
+
+	/**
+	 * environment variable giving the number of consecutive failures after
+	 * which a check is not executed anymore during a back-off (0 or not set:
+	 * no circuit breaker)
+	 */
+	private static final String CIRCUIT_FAILURES_KEY = "healthcheck.circuitBreaker.failures";
+
+	/**
+	 * prefix of the environment variables giving the number of consecutive
+	 * failures per check name
+	 */
+	private static final String CIRCUIT_FAILURES_KEY_PREFIX = CIRCUIT_FAILURES_KEY
+			+ ".";
+
+	/**
+	 * environment variable giving the back-off in milliseconds before a trial
+	 * execution of a check whose circuit is open (30 seconds by default)
+	 */
+	private static final String CIRCUIT_BACKOFF_KEY = "healthcheck.circuitBreaker.backoff";
+
+	/**
+	 * prefix of the environment variables giving the back-off per check name
+	 */
+	private static final String CIRCUIT_BACKOFF_KEY_PREFIX = CIRCUIT_BACKOFF_KEY
+			+ ".";
+
+	private long defaultCircuitFailures;
+
+	private final Map<String, Long> circuitFailures = new HashMap<String, Long>();
+
+	private long defaultCircuitBackoff;
+
+	private final Map<String, Long> circuitBackoffs = new HashMap<String, Long>();
+
+	/** the circuit breakers per check name, created at the first result */
+	private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+	/**
+	 * prefix of the environment variables giving the names of the checks a
+	 * check depends on, separated by ';' (e.g.
+	 * "healthcheck.dependsOn.databaseCheck jdbc/myDS")
+	 */
+	private static final String DEPENDS_ON_KEY_PREFIX = "healthcheck.dependsOn.";
+
+	private static final String LIST_SEPARATOR = ";";
+
+	/**
+	 * the names of the checks each check depends on, in addition to the ones
+	 * declared by the check itself
+	 */
+	private final ConcurrentMap<String, List<String>> dependencies = new ConcurrentHashMap<String, List<String>>();
+
+	/**
+	 * prefix of the environment variables giving the groups of a check,
+	 * separated by ';' (e.g. "healthcheck.groups.databaseCheck ready;deep")
+	 */
+	private static final String GROUPS_KEY_PREFIX = "healthcheck.groups.";
+
+	/**
+	 * the groups of each check, in addition to the ones declared by the check
+	 * itself
+	 */
+	private final ConcurrentMap<String, Set<String>> groups = new ConcurrentHashMap<String, Set<String>>();
+
+	/** incremented each time the groups are changed */
+	private final AtomicInteger groupsVersion = new AtomicInteger();
+
+	/** the checks of each group, for the last registered checks */
+	private final ConcurrentMap<String, GroupSnapshot> groupSnapshots = new ConcurrentHashMap<String, GroupSnapshot>();
+
+	/**
+	 * the interval in milliseconds between two polls of the pending
+	 * asynchronous checks
+	 */
+	private static final long ASYNC_POLL_INTERVAL = 10;
+
+	/** the runs in progress (or reusable) per set of checks */
+	private final ConcurrentMap<HealthCheckSnapshot, SharedRun> sharedRuns = new ConcurrentHashMap<HealthCheckSnapshot, SharedRun>();
+
+	/**
+	 * environment variable giving the interval in milliseconds between two
+	 * rediscoveries of the available checks (0 or not set: only on demand)
+	 */
+	private static final String REDISCOVERY_INTERVAL_KEY = "healthcheck.rediscovery.interval";
+
+	/**
+	 * environment variable telling whether the checks found by a rediscovery
+	 * are activated (true by default)
+	 */
+	private static final String REDISCOVERY_ACTIVATE_KEY = "healthcheck.rediscovery.activate";
+
+	private volatile boolean activateRediscovered;
+
+	/** the executor of the periodic rediscovery, null if not started */
+	private ScheduledExecutorService rediscoveryExecutorService;
+
+	/** the last result and the execution times per check name */
+	private final ConcurrentMap<String, HealthCheckMetrics> metrics = new ConcurrentHashMap<String, HealthCheckMetrics>();
+
+	/**
+	 * Constructor
+	 * 
+	 */
+	public CustomHealthCheckRegistry() {
+		init(null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 */
+	public CustomHealthCheckRegistry(Map<String, String> environment) {
+		init(environment);
+	}
+
+	/**
+	 * Initialization method
+	 * 
+	 * @param environment
+	 *            environment variable used for the setup of the checks <br>
+	 *            This is an optional option, it depends on the checks you use.
+	 *            Please consult the javadoc of the checks you use for details
+	 *            about the possible variable environments
+	 */
+	protected void init(Map<String, String> environment) {
+
+		int threads = EnvironmentUtil.getInt(environment, EXECUTOR_THREADS_KEY,
+				0);
+		if (threads > 0) {
+			log.debug("[HealthCheck] run the checks in parallel with {} threads",
+					threads);
+			executorService = Executors.newFixedThreadPool(threads,
+					new HealthCheckThreadFactory());
+			ownExecutorService = true;
+		}
+
+		defaultTimeout = EnvironmentUtil.getLong(environment, TIMEOUT_KEY, 0);
+		putPerCheckValues(environment, TIMEOUT_KEY_PREFIX, timeouts);
+		timeoutThreads = Math.max(1,
+				EnvironmentUtil.getInt(environment, TIMEOUT_THREADS_KEY, 10));
+
+		resultTtl = EnvironmentUtil.getLong(environment, RESULT_TTL_KEY, 0);
+
+		latencyWindow = EnvironmentUtil.getLong(environment,
+				LATENCY_WINDOW_KEY, 600000);
+
+		historySize = EnvironmentUtil.getInt(environment, HISTORY_SIZE_KEY, 20);
+		flappingTransitions = EnvironmentUtil.getInt(environment,
+				FLAPPING_TRANSITIONS_KEY, 5);
+		flappingWindow = EnvironmentUtil.getLong(environment,
+				FLAPPING_WINDOW_KEY, 600000);
+		if (historySize > 0 && flappingTransitions > 0
+				&& historySize <= flappingTransitions + 1) {
+			log.warn(
+					"[HealthCheck] no check can be detected as flapping: {} results kept per check ({}) show at most {} status changes, not more than {} ({})",
+					new Object[] { historySize, HISTORY_SIZE_KEY,
+							historySize - 1, flappingTransitions,
+							FLAPPING_TRANSITIONS_KEY });
+		}
+
+		defaultCircuitFailures = EnvironmentUtil.getLong(environment,
+				CIRCUIT_FAILURES_KEY, 0);
+		putPerCheckValues(environment, CIRCUIT_FAILURES_KEY_PREFIX,
+				circuitFailures);
+		defaultCircuitBackoff = EnvironmentUtil.getLong(environment,
+				CIRCUIT_BACKOFF_KEY, 30000);
+		putPerCheckValues(environment, CIRCUIT_BACKOFF_KEY_PREFIX,
+				circuitBackoffs);
+
+		if (environment != null) {
+			for (String key : environment.keySet()) {
+				if (key.startsWith(DEPENDS_ON_KEY_PREFIX)) {
+					setDependencies(key.substring(
+							DEPENDS_ON_KEY_PREFIX.length()).trim(),
+							getList(environment, key));
+				} else if (key.startsWith(GROUPS_KEY_PREFIX)) {
+					setGroups(key.substring(GROUPS_KEY_PREFIX.length())
+							.trim(), getList(environment, key));
+				}
+			}
+		}
+
+		scheduleThreads = EnvironmentUtil.getInt(environment,
+				SCHEDULE_THREADS_KEY, 1);
+		putPerCheckValues(environment, SCHEDULE_INTERVAL_KEY_PREFIX,
+				scheduleIntervals);
+
+		if (log.isDebugEnabled()) {
+
+			StringBuffer buffer = new StringBuffer();
+			if (environment != null) {
+				Set<String> keys = environment.keySet();
+				for (String key : keys) {
+					buffer.append("key " + key + " : " + environment.get(key)
+							+ "\n");
+				}
+			} else {
+				buffer.append("environment is null");
+			}
+
+			log.debug(
+					"[HealthCheck] init healthcheck locator (classloader : {} ) with environment",
+					getClass().getClassLoader().getClass());
+			log.debug(buffer.toString());
+		}
+
+		// the providers are loaded when the checks are first needed
+		discovery = new HealthCheckDiscovery(getClass().getClassLoader(),
+				environment);
+
+		long scheduleInterval = EnvironmentUtil.getLong(environment,
+				SCHEDULE_INTERVAL_KEY, 0);
+		if (scheduleInterval > 0) {
+			startScheduler(scheduleInterval);
+		}
+
+		activateRediscovered = EnvironmentUtil.getBoolean(environment,
+				REDISCOVERY_ACTIVATE_KEY, true);
+		long rediscoveryInterval = EnvironmentUtil.getLong(environment,
+				REDISCOVERY_INTERVAL_KEY, 0);
+		if (rediscoveryInterval > 0) {
+			startRediscovery(rediscoveryInterval);
+		}
+	}
+
+	/**
+	 * read the environment variables giving a value per check name
+	 * 
+	 * @param environment
+	 *            the environment
+	 * @param prefix
+	 *            the prefix of the variables, followed by the name of the check
+	 * @param values
+	 *            the map in which the values are stored by check name
+	 */
+	private void putPerCheckValues(Map<String, String> environment,
+			String prefix, Map<String, Long> values) {
+		if (environment != null) {
+			for (String key : environment.keySet()) {
+				if (key.startsWith(prefix)) {
+					long value = EnvironmentUtil.getLong(environment, key, 0);
+					values.put(key.substring(prefix.length()).trim(),
+							Long.valueOf(value));
+				}
+			}
+		}
+	}
+
+	Collection<HealthCheck> getAllHealthChecks() {
+		return discovery.getAll().asList();
+	}
+
+	/**
+	 * Load the available checks in the background, so that the first call
+	 * needing them does not wait for the providers
+	 * 
+	 * @return the future available checks
+	 */
+	Future<Collection<HealthCheck>> warmUp() {
+		FutureTask<Collection<HealthCheck>> task = new FutureTask<Collection<HealthCheck>>(
+				new Callable<Collection<HealthCheck>>() {
+					public Collection<HealthCheck> call() {
+						return getAllHealthChecks();
+					}
+				});
+		Thread thread = new Thread(task, "healthcheck-warmup");
+		thread.setDaemon(true);
+		thread.start();
+		return task;
+	}
+
+	/**
+	 * Walk the providers again and apply the differences atomically: the
+	 * checks which are not given anymore are deactivated, the new ones are
+	 * activated (unless healthcheck.rediscovery.activate is false). The
+	 * checks given as before are kept as is, the checks registered directly
+	 * are not affected, and the runs in progress complete with the checks
+	 * they started with.
+	 * 
+	 * @return true if the available checks have changed
+	 */
+	boolean rediscover() {
+		HealthCheckSnapshot before;
+		HealthCheckSnapshot after;
+		synchronized (discoveryLock) {
+			HealthCheckDiscovery previous = discovery;
+			HealthCheckDiscovery next = previous.rediscover();
+			before = previous.getAll();
+			after = next.getAll();
+			discovery = next;
+		}
+		if (before.equals(after)) {
+			log.debug("[HealthCheck] rediscovery: no change");
+			return false;
+		}
+
+		List<String> removed = new ArrayList<String>();
+		for (int i = 0; i < before.size(); i++) {
+			if (after.get(before.getName(i)) == null) {
+				removed.add(before.getName(i));
+			}
+		}
+		List<HealthCheck> added = new ArrayList<HealthCheck>();
+		for (int i = 0; i < after.size(); i++) {
+			if (before.get(after.getName(i)) == null) {
+				log.debug("[HealthCheck] rediscovery: new check {}",
+						after.getName(i));
+				added.add(after.getCheck(i));
+			}
+		}
+		log.info("[HealthCheck] rediscovery: {} checks added, {} removed {}",
+				new Object[] { added.size(), removed.size(), removed });
+
+		HealthCheckSnapshot current;
+		HealthCheckSnapshot updated;
+		do {
+			current = registerHealthChecks.get();
+			updated = current;
+			for (String name : removed) {
+				// only if registered from the discovery
+				if (current.get(name) == before.get(name)) {
+					updated = updated.without(name);
+				}
+			}
+			if (activateRediscovered) {
+				for (HealthCheck healthCheck : added) {
+					updated = updated.with(healthCheck);
+				}
+			}
+		} while (updated != current
+				&& !registerHealthChecks.compareAndSet(current, updated));
+
+		HealthCheckScheduler currentScheduler = scheduler;
+		for (String name : removed) {
+			if (updated.get(name) == null && current.get(name) != null) {
+				if (currentScheduler != null) {
+					currentScheduler.cancel(name);
+				}
+				metrics.remove(name);
+				circuitBreakers.remove(name);
+			}
+		}
+		if (currentScheduler != null) {
+			for (HealthCheck healthCheck : added) {
+				if (current.get(healthCheck.getName()) == null
+						&& updated.get(healthCheck.getName()) == healthCheck) {
+					currentScheduler.schedule(healthCheck);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Rediscover the available checks periodically, see
+	 * {@link #rediscover()}
+	 * 
+	 * @param interval
+	 *            the interval in milliseconds between two rediscoveries
+	 */
+	synchronized void startRediscovery(long interval) {
+		stopRediscovery();
+		log.info("[HealthCheck] rediscover the checks every {} ms", interval);
+		rediscoveryExecutorService = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"healthcheck-rediscovery");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		rediscoveryExecutorService.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					rediscover();
+				} catch (RuntimeException e) {
+					// keep the next rediscoveries scheduled
+					log.error("[HealthCheck] the rediscovery failed", e);
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the periodic rediscovery of the checks
+	 */
+	synchronized void stopRediscovery() {
+		if (rediscoveryExecutorService != null) {
+			rediscoveryExecutorService.shutdownNow();
+			rediscoveryExecutorService = null;
+		}
+	}
+
+	Collection<HealthCheck> getFilteredHealthChecks(List<String> excludeChecks) {
+
+		HealthCheckSnapshot snapshot = discovery.getAll();
+		if (excludeChecks == null) {
+			return snapshot.asList();
+		}
+
+		Set<String> trimmedExcludeChecks = new HashSet<String>();
+		for (String string : excludeChecks) {
+			trimmedExcludeChecks.add(trimToEmpty(string));
+		}
+
+		List<HealthCheck> result = null;
+
+		for (int i = 0; i < snapshot.size(); i++) {
+			HealthCheck healthcheck = snapshot.getCheck(i);
+
+			if (!trimmedExcludeChecks.contains(trimToEmpty(healthcheck
+					.getName()))) {
+				if (result == null) {
+					result = new ArrayList<HealthCheck>();
+				}
+
+				result.add(healthcheck);
+			}
+
+		}
+
+		return result;
+	}
+
+	Collection<HealthCheck> getFilteredHealthChecks(String... excludeChecks) {
+
+		if (excludeChecks == null) {
+			return getAllHealthChecks();
+		}
+
+		return getFilteredHealthChecks(Arrays.asList(excludeChecks));
+	}
+
+	Collection<HealthCheck> getFilteredHealthChecksList(
+			String excludeHealthChecks) {
+
+		List<String> excludeChecks = new ArrayList<String>();
+		if (excludeHealthChecks != null) {
+
+			StringTokenizer tokenizer = new StringTokenizer(
+					excludeHealthChecks, ";");
+			while (tokenizer.hasMoreTokens()) {
+				excludeChecks.add(trimToEmpty(tokenizer.nextToken()));
+			}
+		}
+
+		return getFilteredHealthChecks(excludeChecks);
+
+	}
+
+	/**
+	 * register the healthchecks into the {@link HealthChecks} class.
+	 * 
+	 * @param healthChecks
+	 */
+	void registerHealthChecks(Collection<HealthCheck> healthChecks) {
+		if (healthChecks != null) {
+			for (HealthCheck healthCheck : healthChecks) {
+				log.debug("[HealthCheck] register a check {} (classname : {})",
+						healthCheck.getName(), healthCheck.getClass());
+				register(healthCheck);
+			}
+		}
+
+	}
+
+	void registerHealthChecks(HealthCheck... healthChecks) {
+
+		if (healthChecks != null) {
+			for (int i = 0; i < healthChecks.length; i++) {
+				if (healthChecks[i] != null) {
+					log.debug(
+							"[HealthCheck] register a check {} (classname : {})",
+							healthChecks[i].getName(),
+							healthChecks[i].getClass());
+					register(healthChecks[i]);
+				}
+			}
+		}
+	}
+
+	boolean runHealthchecks() {
+		return isAllHealthy(runHealthchecksWithDetailedReport());
+	}
+
+	/**
+	 * Runs the registered health checks and returns a map of the results.
+	 * 
+	 * If an executor is set, the checks are executed in parallel and the
+	 * results are merged once all the checks are done; otherwise the checks
+	 * are executed one after another in the calling thread.
+	 * 
+	 * A check which runs past its deadline is interrupted and reported as
+	 * unhealthy.
+	 * 
+	 * If the scheduler is started, nothing is executed: the last known
+	 * results are returned (a check never executed by the scheduler yet is
+	 * executed immediately).
+	 * 
+	 * Concurrent callers share the same run: a caller asking for the same
+	 * checks while a run is in progress waits for its results instead of
+	 * executing the checks again.
+	 * 
+	 * @return a map of the health check results
+	 */
+	SortedMap<String, HealthCheckResult> runHealthchecksWithDetailedReport() {
+		return runHealthchecksWithDetailedReport(null, null);
+	}
+
+	/**
+	 * Runs the registered health checks, see
+	 * {@link #runHealthchecksWithDetailedReport()}
+	 * 
+	 * @param listener
+	 *            notified of each result as soon as it is known, can be null
+	 * @return a map of the health check results
+	 */
+	SortedMap<String, HealthCheckResult> runHealthchecksWithDetailedReport(
+			HealthCheckListener listener) {
+		return runHealthchecksWithDetailedReport(null, listener);
+	}
+
+	/**
+	 * Runs the registered health checks of a group, see
+	 * {@link #runHealthchecksWithDetailedReport()}
+	 * 
+	 * @param group
+	 *            the group of the checks to run, null for all the checks
+	 * @param listener
+	 *            notified of each result as soon as it is known, can be null
+	 * @return a map of the health check results
+	 */
+	SortedMap<String, HealthCheckResult> runHealthchecksWithDetailedReport(
+			String group, HealthCheckListener listener) {
+		HealthCheckSnapshot checks = getGroupChecks(
+				registerHealthChecks.get(), group);
+		HealthCheckScheduler currentScheduler = scheduler;
+
+		if (currentScheduler != null) {
+			HealthCheckResult[] results = new HealthCheckResult[checks.size()];
+			for (int i = 0; i < checks.size(); i++) {
+				String name = checks.getName(i);
+				HealthCheckResult result = currentScheduler.getLastResult(name);
+				if (result == null) {
+					result = runCheck(name, checks.getCheck(i));
+					recordResult(name, result);
+					currentScheduler.putLastResult(name, result);
+				}
+				results[i] = result;
+				notifyListener(listener, name, result);
+			}
+			return new SortedResultMap(checks.getNames(), results);
+		}
+
+		return runShared(checks, listener);
+	}
+
+	/**
+	 * Execute the checks, or share the results of the run started by another
+	 * caller for the same checks (if it is still in progress or its results
+	 * are not older than the result TTL)
+	 * 
+	 * @param checks
+	 *            the checks to execute
+	 * @param listener
+	 *            notified of each result, can be null
+	 * @return the results
+	 */
+	private SortedMap<String, HealthCheckResult> runShared(
+			HealthCheckSnapshot checks, HealthCheckListener listener) {
+		HealthCheckSnapshot key = checks;
+
+		SharedRun run = sharedRuns.get(key);
+		if (run != null && run.isExpired()) {
+			sharedRuns.remove(key, run);
+			run = null;
+		}
+
+		if (run == null) {
+			SharedRun newRun = new SharedRun(checks);
+			run = sharedRuns.putIfAbsent(key, newRun);
+			if (run == null) {
+				removeExpiredRuns();
+				SortedMap<String, HealthCheckResult> results = newRun
+						.start(listener);
+				if (resultTtl <= 0 || newRun.isExpired()) {
+					sharedRuns.remove(key, newRun);
+				}
+				return results;
+			}
+		}
+
+		log.debug("[HealthCheck] share the results of a run in progress");
+		return run.follow(listener);
+	}
+
+	private void removeExpiredRuns() {
+		Iterator<SharedRun> iterator = sharedRuns.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().isExpired()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Execute the checks, in parallel if an executor is set. The asynchronous
+	 * checks are started first from the calling thread. The results are
+	 * collected in the order of completion of the checks.
+	 * 
+	 * If some checks depend on others, the checks are executed by layers in
+	 * topological order (the checks of a layer in parallel if an executor is
+	 * set), and a check is skipped when one of its upstream checks is
+	 * unhealthy.
+	 * 
+	 * @param checks
+	 *            the checks to execute
+	 * @param execution
+	 *            the run of the checks to execute
+	 * @return the results
+	 */
+	private SortedMap<String, HealthCheckResult> executeHealthchecks(
+			CheckExecution execution) {
+		HealthCheckSnapshot checks = execution.checks;
+
+		int[][] upstreams = getUpstreams(checks);
+		if (upstreams == null) {
+			executeLayer(execution, null, checks.size());
+			return execution.getResults();
+		}
+
+		for (int[] layer : getLayers(checks, upstreams)) {
+			int[] executed = new int[layer.length];
+			int count = 0;
+			for (int i : layer) {
+				String unhealthyUpstream = execution
+						.getUnhealthyUpstream(upstreams[i]);
+				if (unhealthyUpstream != null) {
+					execution.completed(i, skipped(unhealthyUpstream));
+				} else {
+					executed[count++] = i;
+				}
+			}
+			executeLayer(execution, executed, count);
+		}
+		return execution.getResults();
+	}
+
+	/**
+	 * Execute some checks of a run and wait for their results
+	 * 
+	 * @param execution
+	 *            the run
+	 * @param indexes
+	 *            the indexes of the checks to execute, null for all the checks
+	 * @param count
+	 *            the number of checks to execute
+	 */
+	private void executeLayer(CheckExecution execution, int[] indexes,
+			int count) {
+		ExecutorService executor = executorService;
+		HealthCheckSnapshot checks = execution.checks;
+
+		// the asynchronous checks do not hold any thread while running
+		for (int k = 0; k < count; k++) {
+			int i = indexes == null ? k : indexes[k];
+			if (checks.getCheck(i) instanceof AsyncHealthCheck) {
+				HealthCheckResult openCircuitResult = tryExecute(checks
+						.getName(i));
+				if (openCircuitResult != null) {
+					execution.completed(i, openCircuitResult);
+				} else {
+					execution.started(i,
+							startAsync((AsyncHealthCheck) checks.getCheck(i)),
+							true);
+				}
+			}
+		}
+
+		for (int k = 0; k < count; k++) {
+			int i = indexes == null ? k : indexes[k];
+			HealthCheck healthCheck = checks.getCheck(i);
+			if (!(healthCheck instanceof AsyncHealthCheck)) {
+				if (executor == null) {
+					execution.completed(i,
+							runCheck(checks.getName(i), healthCheck));
+					execution.collectCompleted();
+				} else {
+					// not executed if the circuit is open or if the previous
+					// execution is still running past its deadline
+					HealthCheckResult result = tryExecute(checks.getName(i));
+					if (result == null) {
+						result = getAbandonedResult(checks.getName(i));
+					}
+					if (result != null) {
+						execution.completed(i, result);
+					} else {
+						execution.started(i, submit(executor, checks
+								.getName(i), healthCheck, execution.completions),
+								false);
+					}
+				}
+			}
+		}
+
+		execution.awaitAll();
+	}
+
+	/**
+	 * 
+	 * @param checks
+	 *            the checks of a run
+	 * @return the indexes of the upstream checks of each check, null if no
+	 *         check depends on another one of the run
+	 */
+	private int[][] getUpstreams(HealthCheckSnapshot checks) {
+		int[][] upstreams = null;
+		for (int i = 0; i < checks.size(); i++) {
+			List<String> names = getDependencies(checks.getName(i),
+					checks.getCheck(i));
+			if (names.isEmpty()) {
+				continue;
+			}
+			int[] indexes = new int[names.size()];
+			int count = 0;
+			for (String name : names) {
+				int index = checks.indexOf(name);
+				if (index >= 0 && index != i) {
+					indexes[count++] = index;
+				}
+			}
+			if (count > 0) {
+				if (upstreams == null) {
+					upstreams = new int[checks.size()][];
+				}
+				upstreams[i] = new int[count];
+				System.arraycopy(indexes, 0, upstreams[i], 0, count);
+			}
+		}
+		return upstreams;
+	}
+
+	/**
+	 * Sort the checks in topological order
+	 * 
+	 * @param checks
+	 *            the checks of a run
+	 * @param upstreams
+	 *            the indexes of the upstream checks of each check
+	 * @return the layers of checks: the upstream checks of a check are in the
+	 *         previous layers. The checks of a dependency cycle are in the
+	 *         last layer
+	 */
+	private List<int[]> getLayers(HealthCheckSnapshot checks, int[][] upstreams) {
+		int size = checks.size();
+		int[] remaining = new int[size];
+		int[] downstreamCounts = new int[size];
+		for (int i = 0; i < size; i++) {
+			if (upstreams[i] != null) {
+				remaining[i] = upstreams[i].length;
+				for (int upstream : upstreams[i]) {
+					downstreamCounts[upstream]++;
+				}
+			}
+		}
+		int[][] downstreams = new int[size][];
+		for (int i = 0; i < size; i++) {
+			downstreams[i] = new int[downstreamCounts[i]];
+			downstreamCounts[i] = 0;
+		}
+		for (int i = 0; i < size; i++) {
+			if (upstreams[i] != null) {
+				for (int upstream : upstreams[i]) {
+					downstreams[upstream][downstreamCounts[upstream]++] = i;
+				}
+			}
+		}
+
+		List<int[]> layers = new ArrayList<int[]>();
+		int[] layer = new int[size];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (remaining[i] == 0) {
+				layer[count++] = i;
+			}
+		}
+		int placed = 0;
+		while (count > 0) {
+			int[] current = new int[count];
+			System.arraycopy(layer, 0, current, 0, count);
+			layers.add(current);
+			placed += count;
+			count = 0;
+			for (int i : current) {
+				for (int downstream : downstreams[i]) {
+					if (--remaining[downstream] == 0) {
+						layer[count++] = downstream;
+					}
+				}
+			}
+		}
+
+		if (placed < size) {
+			int[] cycle = new int[size - placed];
+			List<String> names = new ArrayList<String>();
+			count = 0;
+			for (int i = 0; i < size; i++) {
+				if (remaining[i] > 0) {
+					cycle[count++] = i;
+					names.add(checks.getName(i));
+				}
+			}
+			log.warn(
+					"[HealthCheck] dependency cycle between the checks {}, they are executed last",
+					names);
+			layers.add(cycle);
+		}
+		return layers;
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of a check
+	 * @param healthCheck
+	 *            the check
+	 * @return the names of the checks the check depends on, declared by the
+	 *         check or set for its name
+	 */
+	private List<String> getDependencies(String name, HealthCheck healthCheck) {
+		List<String> names = dependencies.get(name);
+		if (!(healthCheck instanceof DependentHealthCheck)) {
+			return names == null ? Collections.<String> emptyList() : names;
+		}
+		Collection<String> declared = ((DependentHealthCheck) healthCheck)
+				.getDependencies();
+		if (declared == null || declared.isEmpty()) {
+			return names == null ? Collections.<String> emptyList() : names;
+		}
+		List<String> all = new ArrayList<String>(declared.size()
+				+ (names == null ? 0 : names.size()));
+		for (String dependency : declared) {
+			if (dependency != null) {
+				all.add(dependency.trim());
+			}
+		}
+		if (names != null) {
+			all.addAll(names);
+		}
+		return all;
+	}
+
+	/**
+	 * 
+	 * @param environment
+	 *            the environment
+	 * @param key
+	 *            the key of a list of values separated by ';'
+	 * @return the values, null if the value of the key is empty
+	 */
+	private static String[] getList(Map<String, String> environment,
+			String key) {
+		String value = EnvironmentUtil.getString(environment, key);
+		return value == null ? null : value.split(LIST_SEPARATOR);
+	}
+
+	/**
+	 * Set the checks a check depends on, in addition to the ones declared by
+	 * the check itself
+	 * 
+	 * @param name
+	 *            the name of the check
+	 * @param upstreams
+	 *            the names of the checks it depends on, none to remove the
+	 *            dependencies
+	 */
+	void setDependencies(String name, String... upstreams) {
+		if (name == null) {
+			return;
+		}
+		List<String> names = new ArrayList<String>();
+		if (upstreams != null) {
+			for (String upstream : upstreams) {
+				if (upstream != null && upstream.trim().length() > 0) {
+					names.add(upstream.trim());
+				}
+			}
+		}
+		if (names.isEmpty()) {
+			dependencies.remove(name.trim());
+		} else {
+			dependencies.put(name.trim(), names);
+		}
+	}
+
+	/**
+	 * 
+	 * @param registered
+	 *            the registered checks
+	 * @param group
+	 *            a group, can be null
+	 * @return the registered checks of the group, all the registered checks
+	 *         if the group is null. The result is kept until the registered
+	 *         checks or the groups change
+	 */
+	private HealthCheckSnapshot getGroupChecks(HealthCheckSnapshot registered,
+			String group) {
+		if (group == null) {
+			return registered;
+		}
+		int version = groupsVersion.get();
+		GroupSnapshot cached = groupSnapshots.get(group);
+		if (cached != null && cached.registered == registered
+				&& cached.version == version) {
+			return cached.checks;
+		}
+
+		List<HealthCheck> members = new ArrayList<HealthCheck>();
+		for (int i = 0; i < registered.size(); i++) {
+			if (isInGroup(registered.getName(i), registered.getCheck(i), group)) {
+				members.add(registered.getCheck(i));
+			}
+		}
+		HealthCheckSnapshot checks = members.size() == registered.size() ? registered
+				: HealthCheckSnapshot.of(members);
+		groupSnapshots.put(group, new GroupSnapshot(registered, version,
+				checks));
+		return checks;
+	}
+
+	private boolean isInGroup(String name, HealthCheck healthCheck,
+			String group) {
+		Set<String> names = groups.get(name);
+		if (names != null && names.contains(group)) {
+			return true;
+		}
+		if (healthCheck instanceof GroupedHealthCheck) {
+			Collection<String> declared = ((GroupedHealthCheck) healthCheck)
+					.getGroups();
+			return declared != null && declared.contains(group);
+		}
+		return false;
+	}
+
+	/**
+	 * Set the groups of a check, in addition to the ones declared by the
+	 * check itself
+	 * 
+	 * @param name
+	 *            the name of the check
+	 * @param checkGroups
+	 *            the groups of the check, none to remove the groups
+	 */
+	void setGroups(String name, String... checkGroups) {
+		if (name == null) {
+			return;
+		}
+		Set<String> names = new HashSet<String>();
+		if (checkGroups != null) {
+			for (String group : checkGroups) {
+				if (group != null && group.trim().length() > 0) {
+					names.add(group.trim());
+				}
+			}
+		}
+		if (names.isEmpty()) {
+			groups.remove(name.trim());
+		} else {
+			groups.put(name.trim(), names);
+		}
+		groupsVersion.incrementAndGet();
+	}
+
+	/**
+	 * Skip the execution of a check by the scheduler if one of its upstream
+	 * checks is unhealthy
+	 * 
+	 * @param name
+	 *            the name of the check
+	 * @param healthCheck
+	 *            the check
+	 * @param lastResults
+	 *            the last results of the checks by name
+	 * @return the result of the skipped check, or null if the check must be
+	 *         executed
+	 */
+	HealthCheckResult skipIfUpstreamUnhealthy(String name,
+			HealthCheck healthCheck, Map<String, HealthCheckResult> lastResults) {
+		for (String upstream : getDependencies(name, healthCheck)) {
+			HealthCheckResult result = lastResults.get(upstream);
+			if (result != null && !result.isHealthy()) {
+				return skipped(upstream);
+			}
+		}
+		return null;
+	}
+
+	private static HealthCheckResult skipped(String upstream) {
+		return new SkippedResult(Result.unhealthy("skipped: upstream "
+				+ upstream + " unhealthy"));
+	}
+
+	/**
+	 * Reuse the results of a run during the given time
+	 * 
+	 * @param ttl
+	 *            the time in milliseconds, 0 to share the results only with
+	 *            the runs started while the checks are executed
+	 */
+	void setResultTtl(long ttl) {
+		resultTtl = ttl;
+		sharedRuns.clear();
+	}
+
+	/**
+	 * 
+	 * @return true if the results are reused by several runs, i.e. the
+	 *         scheduler is started or a result TTL is set
+	 */
+	boolean areResultsReused() {
+		return scheduler != null || resultTtl > 0;
+	}
+
+	/**
+	 * Execute one check, its deadline is enforced
+	 * 
+	 * @param name
+	 *            the name of the check
+	 * @param healthCheck
+	 *            the check
+	 * @return the result of the check
+	 */
+	HealthCheckResult runCheck(String name, HealthCheck healthCheck) {
+		HealthCheckResult openCircuitResult = tryExecute(name);
+		if (openCircuitResult != null) {
+			return openCircuitResult;
+		}
+		long timeout = getTimeout(name);
+		if (healthCheck instanceof AsyncHealthCheck) {
+			long startTime = System.nanoTime();
+			return getResult(startAsync((AsyncHealthCheck) healthCheck),
+					startTime, timeout);
+		}
+		if (timeout <= 0) {
+			return execute(healthCheck);
+		}
+		HealthCheckResult abandonedResult = getAbandonedResult(name);
+		if (abandonedResult != null) {
+			return abandonedResult;
+		}
+		ExecutorService executor = executorService;
+		if (executor == null) {
+			executor = getTimeoutExecutorService();
+		}
+		long startTime = System.nanoTime();
+		return getResult(submit(executor, name, healthCheck, null), startTime,
+				timeout);
+	}
+
+	/**
+	 * Keep the result of an execution of a check for the metrics
+	 * 
+	 * @param name
+	 *            the name of the check
+	 * @param result
+	 *            the result
+	 */
+	void recordResult(String name, HealthCheckResult result) {
+		if (result instanceof SkippedResult) {
+			// the check has not been executed
+			return;
+		}
+		CircuitBreaker circuitBreaker = getCircuitBreaker(name);
+		if (circuitBreaker != null && circuitBreaker.onResult(result)) {
+			log.warn(
+					"[HealthCheck] open the circuit of the check {}, it is not executed during {} ms ({})",
+					name, getPerCheckValue(circuitBackoffs, name,
+							defaultCircuitBackoff), result.getMessage());
+		}
+		if (CircuitBreaker.isOpenCircuitResult(result)) {
+			// the check has not been executed
+			return;
+		}
+		HealthCheckMetrics checkMetrics = metrics.get(name);
+		if (checkMetrics == null) {
+			HealthCheckMetrics newMetrics = new HealthCheckMetrics(
+					latencyWindow, historySize > 0 ? new ResultHistory(
+							historySize, flappingTransitions, flappingWindow)
+							: null);
+			checkMetrics = metrics.putIfAbsent(name, newMetrics);
+			if (checkMetrics == null) {
+				checkMetrics = newMetrics;
+			}
+		}
+		if (checkMetrics.record(result)) {
+			log.warn(
+					"[HealthCheck] the check {} is flapping, its status has changed more than {} times in {} ms",
+					new Object[] { name, flappingTransitions, flappingWindow });
+		}
+	}
+
+	/**
+	 * Ask the circuit breaker of a check (if any) whether the check can be
+	 * executed
+	 * 
+	 * @param name
+	 *            the name of the check
+	 * @return null if the check can be executed, otherwise the unhealthy
+	 *         result to use without executing the check
+	 */
+	private HealthCheckResult tryExecute(String name) {
+		CircuitBreaker circuitBreaker = circuitBreakers.get(name);
+		return circuitBreaker == null ? null : circuitBreaker.tryExecute();
+	}
+
+	private CircuitBreaker getCircuitBreaker(String name) {
+		CircuitBreaker circuitBreaker = circuitBreakers.get(name);
+		if (circuitBreaker == null) {
+			long failures = getPerCheckValue(circuitFailures, name,
+					defaultCircuitFailures);
+			if (failures <= 0) {
+				return null;
+			}
+			CircuitBreaker newCircuitBreaker = new CircuitBreaker(
+					(int) failures, getPerCheckValue(circuitBackoffs, name,
+							defaultCircuitBackoff));
+			circuitBreaker = circuitBreakers.putIfAbsent(name,
+					newCircuitBreaker);
+			if (circuitBreaker == null) {
+				circuitBreaker = newCircuitBreaker;
+			}
+		}
+		return circuitBreaker;
+	}
+
+	private static long getPerCheckValue(Map<String, Long> values,
+			String name, long defaultValue) {
+		Long value = values.get(name);
+		return value == null ? defaultValue : value.longValue();
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of a check
+	 * @return the last result and the execution times of the check, or null
+	 *         if it has never been executed
+	 */
+	HealthCheckMetrics getMetrics(String name) {
+		return metrics.get(name);
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of a check
+	 * @return the percentiles of the execution times of the check over the
+	 *         latency window, or null if it has never been executed
+	 */
+	HealthCheckLatency getLatency(String name) {
+		HealthCheckMetrics checkMetrics = name == null ? null : metrics
+				.get(name.trim());
+		return checkMetrics == null ? null : checkMetrics.getLatency();
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of a check
+	 * @return the last results of the check, oldest first, or null if it has
+	 *         never been executed or no history is kept
+	 */
+	HealthCheckHistory getHistory(String name) {
+		HealthCheckMetrics checkMetrics = name == null ? null : metrics
+				.get(name.trim());
+		return checkMetrics == null ? null : checkMetrics.getHistory();
+	}
+
+	/**
+	 * 
+	 * @return the registered checks
+	 */
+	HealthCheckSnapshot getRegisteredHealthChecks() {
+		return registerHealthChecks.get();
+	}
+
+	/**
+	 * Execute the registered checks in the background. The runs then return
+	 * the last known results without executing the checks.
+	 * 
+	 * @param interval
+	 *            the default interval in milliseconds between two executions
+	 *            of a check
+	 */
+	synchronized void startScheduler(long interval) {
+		stopScheduler();
+		log.info("[HealthCheck] execute the checks in the background every {} ms",
+				interval);
+		HealthCheckScheduler newScheduler = new HealthCheckScheduler(this,
+				scheduleThreads, interval, scheduleIntervals);
+		scheduler = newScheduler;
+		HealthCheckSnapshot checks = registerHealthChecks.get();
+		for (int i = 0; i < checks.size(); i++) {
+			newScheduler.schedule(checks.getCheck(i));
+		}
+	}
+
+	/**
+	 * Stop the background execution of the checks, the runs execute the
+	 * checks again
+	 */
+	synchronized void stopScheduler() {
+		if (scheduler != null) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * Use the given executor to run the checks in parallel. The executor
+	 * previously created by this registry (if any) is shut down.
+	 * 
+	 * @param executor
+	 *            the executor, if null the checks are executed sequentially
+	 */
+	void setExecutorService(ExecutorService executor) {
+		ExecutorService previous = executorService;
+		boolean ownPrevious = ownExecutorService;
+		executorService = executor;
+		ownExecutorService = false;
+		if (previous != null && ownPrevious && previous != executor) {
+			previous.shutdownNow();
+		}
+	}
+
+	/**
+	 * Release the resources held by this registry (threads of the executor
+	 * created by the registry).
+	 */
+	void shutdown() {
+		stopRediscovery();
+		stopScheduler();
+		setExecutorService(null);
+		synchronized (this) {
+			if (timeoutExecutorService != null) {
+				timeoutExecutorService.shutdownNow();
+				timeoutExecutorService = null;
+			}
+		}
+	}
+
+	/**
+	 * Set the deadline of a check
+	 * 
+	 * @param name
+	 *            the name of the check
+	 * @param timeout
+	 *            the deadline in milliseconds, 0 for no deadline
+	 */
+	void setTimeout(String name, long timeout) {
+		if (name != null) {
+			timeouts.put(name.trim(), Long.valueOf(timeout));
+		}
+	}
+
+	private long getTimeout(String name) {
+		Long timeout = timeouts.get(name);
+		return timeout == null ? defaultTimeout : timeout.longValue();
+	}
+
+	private synchronized ExecutorService getTimeoutExecutorService() {
+		if (timeoutExecutorService == null) {
+			// bounded, the threads are released when idle
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(
+					timeoutThreads, timeoutThreads, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new HealthCheckThreadFactory());
+			executor.allowCoreThreadTimeOut(true);
+			timeoutExecutorService = executor;
+		}
+		return timeoutExecutorService;
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of a check
+	 * @return a timeout result if an execution of the check abandoned at its
+	 *         deadline is still running (the check is not executed again
+	 *         until it ends), or null
+	 */
+	private HealthCheckResult getAbandonedResult(String name) {
+		CheckTask abandoned = abandonedChecks.get(name);
+		if (abandoned == null) {
+			return null;
+		}
+		long timeout = getTimeout(name);
+		log.debug(
+				"[HealthCheck] the check {} is still running after its deadline, not executed again",
+				name);
+		return new HealthCheckResult(Result.unhealthy("timed out after "
+				+ timeout + " ms, the previous execution is still running"),
+				timeout);
+	}
+
+	private HealthCheckResult execute(HealthCheck healthCheck) {
+		long startTime = System.nanoTime();
+		final Result result = healthCheck.execute();
+		return HealthCheckResult.ofNanos(result, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Submit a check to an executor
+	 * 
+	 * @param executor
+	 *            the executor
+	 * @param name
+	 *            the name of the check
+	 * @param healthCheck
+	 *            the check
+	 * @param completions
+	 *            released when the check completes, can be null
+	 * @return the future result of the check
+	 */
+	private Future<HealthCheckResult> submit(ExecutorService executor,
+			String name, HealthCheck healthCheck, Semaphore completions) {
+		CheckTask task = new CheckTask(name, healthCheck, completions);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			log.warn(
+					"[HealthCheck] executor rejected the check {}, run it in the calling thread",
+					healthCheck.getName());
+			task.run();
+		}
+		return task;
+	}
+
+	/**
+	 * Start an asynchronous check from the calling thread
+	 * 
+	 * @param healthCheck
+	 *            the check
+	 * @return the future result of the check
+	 */
+	private Future<HealthCheckResult> startAsync(AsyncHealthCheck healthCheck) {
+		long startTime = System.nanoTime();
+		try {
+			return new AsyncResultFuture(healthCheck.executeAsync(), startTime);
+		} catch (RuntimeException e) {
+			return completedFuture(HealthCheckResult.ofNanos(
+					Result.unhealthy(e), System.nanoTime() - startTime));
+		}
+	}
+
+	private static Future<HealthCheckResult> completedFuture(
+			final HealthCheckResult result) {
+		FutureTask<HealthCheckResult> future = new FutureTask<HealthCheckResult>(
+				new Callable<HealthCheckResult>() {
+					public HealthCheckResult call() {
+						return result;
+					}
+				});
+		future.run();
+		return future;
+	}
+
+	/**
+	 * Wait for the result of a check
+	 * 
+	 * @param future
+	 *            the running check
+	 * @param startTime
+	 *            the time when the check has been submitted, from
+	 *            {@link System#nanoTime()}
+	 * @param timeout
+	 *            the deadline in milliseconds from the start time, 0 for no
+	 *            deadline
+	 * @return the result of the check
+	 */
+	private HealthCheckResult getResult(Future<HealthCheckResult> future,
+			long startTime, long timeout) {
+		try {
+			if (timeout <= 0) {
+				return future.get();
+			}
+			long remaining = startTime + TimeUnit.MILLISECONDS.toNanos(timeout)
+					- System.nanoTime();
+			return future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			// abandon the check, its thread is interrupted
+			future.cancel(true);
+			if (future instanceof CheckTask) {
+				((CheckTask) future).abandon();
+			}
+			return new HealthCheckResult(Result.unhealthy("timed out after "
+					+ timeout + " ms"), timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.cancel(true);
+			return new HealthCheckResult(
+					Result.unhealthy("interrupted while waiting for the check"),
+					0);
+		} catch (ExecutionException e) {
+			return new HealthCheckResult(Result.unhealthy(e.getCause()), 0);
+		} catch (CancellationException e) {
+			return new HealthCheckResult(
+					Result.unhealthy("the check has been cancelled"), 0);
+		}
+	}
+
+	void registerHealthCheck(HealthCheck healthCheck, long timeout) {
+		if (healthCheck != null) {
+			setTimeout(healthCheck.getName(), timeout);
+			registerHealthChecks(healthCheck);
+		}
+	}
+
+	void register(HealthCheck healthCheck) {
+		HealthCheckSnapshot current;
+		HealthCheckSnapshot updated;
+		do {
+			current = registerHealthChecks.get();
+			updated = current.with(healthCheck);
+			if (updated == current) {
+				// already registered
+				return;
+			}
+		} while (!registerHealthChecks.compareAndSet(current, updated));
+
+		HealthCheckScheduler currentScheduler = scheduler;
+		if (currentScheduler != null) {
+			currentScheduler.schedule(healthCheck);
+		}
+	}
+
+	void activateCheck(String name) {
+		if (name == null) {
+			return;
+		}
+		HealthCheck healthCheck = discovery.find(name.trim());
+		if (healthCheck == null) {
+			log.warn("[HealthCheck] Not able to activate an unknown check {}",
+					name.trim());
+		} else {
+			register(healthCheck);
+		}
+
+	}
+
+	void activateChecks(String... names) {
+
+		if (names != null && names.length > 0) {
+			for (int i = 0; i < names.length; i++) {
+				activateCheck(names[i]);
+			}
+		}
+	}
+
+	void deactivateCheck(String name) {
+		if (name == null) {
+			return;
+		}
+		HealthCheckSnapshot current;
+		HealthCheckSnapshot updated;
+		do {
+			current = registerHealthChecks.get();
+			updated = current.without(name.trim());
+			if (updated == current) {
+				log.warn(
+						"[HealthCheck] Not able to deactivate an unknown check {}",
+						name.trim());
+				return;
+			}
+		} while (!registerHealthChecks.compareAndSet(current, updated));
+
+		HealthCheckScheduler currentScheduler = scheduler;
+		if (currentScheduler != null) {
+			currentScheduler.cancel(name.trim());
+		}
+
+	}
+
+	void deactivateCheck(HealthCheck healthCheck) {
+		deactivateCheck(healthCheck.getName());
+	}
+
+	void deactivateChecks(String... names) {
+		if (names != null && names.length > 0) {
+			for (int i = 0; i < names.length; i++) {
+				deactivateCheck(names[i]);
+			}
+		}
+	}
+
+	void deactivateAllChecks() {
+		registerHealthChecks.set(HealthCheckSnapshot.EMPTY);
+		HealthCheckScheduler currentScheduler = scheduler;
+		if (currentScheduler != null) {
+			currentScheduler.cancelAll();
+		}
+	}
+
+	private static void notifyListener(HealthCheckListener listener,
+			String name, HealthCheckResult result) {
+		if (listener != null) {
+			try {
+				listener.onResult(name, result);
+			} catch (RuntimeException e) {
+				log.error("[HealthCheck] error when notifying the result of "
+						+ name, e);
+			}
+		}
+	}
+
+	private String trimToEmpty(String str) {
+		return str == null ? "" : str.trim();
+	}
+
+	private boolean isAllHealthy(Map<String, HealthCheckResult> results) {
+		for (HealthCheckResult result : results.values()) {
+			if (!result.isHealthy()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A run of a set of checks whose results are shared between the callers.
+	 * The results are published one by one as the checks complete, then
+	 * notified to the caller which starts the run by the thread running the
+	 * checks; the other callers follow them from their own thread, so that
+	 * the run never waits for their listeners.
+	 */
+	private class SharedRun implements
+			Callable<SortedMap<String, HealthCheckResult>> {
+
+		private final HealthCheckSnapshot checks;
+
+		private final FutureTask<SortedMap<String, HealthCheckResult>> future = new FutureTask<SortedMap<String, HealthCheckResult>>(
+				this) {
+			@Override
+			protected void done() {
+				synchronized (SharedRun.this) {
+					// wake up the callers following a failed run
+					SharedRun.this.notifyAll();
+				}
+			}
+		};
+
+		/**
+		 * the results can be reused until this time (from
+		 * {@link System#nanoTime()}), only read once the run is done
+		 */
+		private volatile long expiration;
+
+		/**
+		 * the listener of the caller which starts the run, only used by the
+		 * thread running the checks
+		 */
+		private HealthCheckListener starterListener;
+
+		/** the published results, guarded by the run */
+		private final HealthCheckResult[] results;
+
+		/**
+		 * the indexes of the published results, in the order of completion,
+		 * guarded by the run
+		 */
+		private final int[] completionOrder;
+
+		/** the number of published results, guarded by the run */
+		private int completed;
+
+		SharedRun(HealthCheckSnapshot checks) {
+			this.checks = checks;
+			this.results = new HealthCheckResult[checks.size()];
+			this.completionOrder = new int[checks.size()];
+		}
+
+		/**
+		 * Execute the checks in the calling thread
+		 * 
+		 * @param listener
+		 *            notified of each result as soon as it is known, can be
+		 *            null
+		 * @return the results
+		 */
+		SortedMap<String, HealthCheckResult> start(HealthCheckListener listener) {
+			starterListener = listener;
+			future.run();
+			return getResults();
+		}
+
+		public SortedMap<String, HealthCheckResult> call() throws Exception {
+			CheckExecution execution = new CheckExecution(checks, this);
+			try {
+				return executeHealthchecks(execution);
+			} finally {
+				if (execution.interrupted) {
+					// the results of an interrupted run are not reused
+					expiration = System.nanoTime() - 1;
+				} else {
+					expiration = System.nanoTime()
+							+ TimeUnit.MILLISECONDS.toNanos(resultTtl);
+				}
+			}
+		}
+
+		boolean isExpired() {
+			// never expire while in progress
+			return future.isDone() && System.nanoTime() - expiration > 0;
+		}
+
+		/**
+		 * Publish the result of a check to the callers following the run,
+		 * then notify the caller which has started it
+		 */
+		void completed(int index, HealthCheckResult result) {
+			synchronized (this) {
+				results[index] = result;
+				completionOrder[completed++] = index;
+				notifyAll();
+			}
+			notifyListener(starterListener, checks.getName(index), result);
+		}
+
+		/**
+		 * Follow the run started by another caller: the results already
+		 * published are notified at once, the next ones as soon as they are
+		 * published
+		 * 
+		 * @param listener
+		 *            notified of each result in the order of completion, can
+		 *            be null
+		 * @return the results
+		 */
+		SortedMap<String, HealthCheckResult> follow(HealthCheckListener listener) {
+			HealthCheckResult[] notified = new HealthCheckResult[results.length];
+			int next = 0;
+			try {
+				for (int index = awaitCompleted(next); index >= 0; index = awaitCompleted(++next)) {
+					HealthCheckResult result;
+					synchronized (this) {
+						result = results[index];
+					}
+					notified[index] = result;
+					notifyListener(listener, checks.getName(index), result);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for (int i = 0; i < notified.length; i++) {
+					if (notified[i] == null) {
+						notified[i] = new HealthCheckResult(
+								Result.unhealthy("interrupted while waiting for the check"),
+								0);
+						notifyListener(listener, checks.getName(i), notified[i]);
+					}
+				}
+				return new SortedResultMap(checks.getNames(), notified);
+			}
+			if (next < notified.length) {
+				// the run has failed
+				return getResults();
+			}
+			return new SortedResultMap(checks.getNames(), notified);
+		}
+
+		/**
+		 * 
+		 * @param position
+		 *            the position of a result in the order of completion
+		 * @return the index of the check of this result, -1 if the run has
+		 *         ended without publishing it
+		 */
+		private synchronized int awaitCompleted(int position)
+				throws InterruptedException {
+			while (position == completed && completed < results.length
+					&& !future.isDone()) {
+				wait();
+			}
+			return position < completed ? completionOrder[position] : -1;
+		}
+
+		private SortedMap<String, HealthCheckResult> getResults() {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				// the run is done
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw (RuntimeException) e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * The results of the checks of a run, collected in the order of completion
+	 */
+	private class CheckExecution {
+
+		private final HealthCheckSnapshot checks;
+
+		/** the shared run publishing the results */
+		private final SharedRun run;
+
+		private final HealthCheckResult[] results;
+
+		private final Future<HealthCheckResult>[] futures;
+
+		/** the time when each check has been started */
+		private final long[] startTimes;
+
+		/** released by the checks submitted to the executor when they complete */
+		private final Semaphore completions = new Semaphore(0);
+
+		/** the number of started checks whose result is not collected yet */
+		private int pending;
+
+		/** the number of pending asynchronous checks, they are polled */
+		private int pendingAsync;
+
+		/**
+		 * true if the calling thread has been interrupted: the results
+		 * collected since are not recorded
+		 */
+		private boolean interrupted;
+
+		@SuppressWarnings("unchecked")
+		CheckExecution(HealthCheckSnapshot checks, SharedRun run) {
+			this.checks = checks;
+			this.run = run;
+			this.results = new HealthCheckResult[checks.size()];
+			// no generic array creation
+			this.futures = (Future<HealthCheckResult>[]) new Future<?>[checks
+					.size()];
+			this.startTimes = new long[checks.size()];
+		}
+
+		void started(int index, Future<HealthCheckResult> future,
+				boolean async) {
+			startTimes[index] = System.nanoTime();
+			futures[index] = future;
+			pending++;
+			if (async) {
+				pendingAsync++;
+			}
+		}
+
+		void completed(int index, HealthCheckResult result) {
+			results[index] = result;
+			if (Thread.currentThread().isInterrupted()) {
+				// the result may only tell that the caller is interrupted, it
+				// is kept out of the history, the metrics and the circuit
+				interrupted = true;
+			} else {
+				recordResult(checks.getName(index), result);
+			}
+			run.completed(index, result);
+		}
+
+		/**
+		 * Collect the results of the checks which are done or past their
+		 * deadline
+		 * 
+		 * @return the time to wait in nanoseconds before the next deadline
+		 *         or the next poll of the asynchronous checks, 0 to wait for
+		 *         the completion of a check
+		 */
+		long collectCompleted() {
+			long now = System.nanoTime();
+			long wait = 0;
+			for (int i = 0; i < futures.length; i++) {
+				if (futures[i] == null || results[i] != null) {
+					continue;
+				}
+				long timeout = getTimeout(checks.getName(i));
+				long remaining = timeout <= 0 ? Long.MAX_VALUE : startTimes[i]
+						+ TimeUnit.MILLISECONDS.toNanos(timeout) - now;
+				if (futures[i].isDone() || remaining <= 0) {
+					if (checks.getCheck(i) instanceof AsyncHealthCheck) {
+						pendingAsync--;
+					}
+					pending--;
+					completed(i, getResult(futures[i], startTimes[i], timeout));
+				} else if (remaining != Long.MAX_VALUE
+						&& (wait == 0 || remaining < wait)) {
+					wait = remaining;
+				}
+			}
+			long pollInterval = TimeUnit.MILLISECONDS.toNanos(ASYNC_POLL_INTERVAL);
+			if (pendingAsync > 0 && (wait == 0 || wait > pollInterval)) {
+				wait = pollInterval;
+			}
+			return wait;
+		}
+
+		/**
+		 * Wait until the results of all the started checks are collected
+		 */
+		void awaitAll() {
+			while (pending > 0) {
+				long wait = collectCompleted();
+				if (pending == 0) {
+					break;
+				}
+				try {
+					if (wait == 0) {
+						completions.acquire();
+					} else {
+						completions.tryAcquire(wait, TimeUnit.NANOSECONDS);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					// the pending checks are cancelled and reported as
+					// interrupted to this run only
+					for (int i = 0; i < futures.length; i++) {
+						if (futures[i] != null && results[i] == null) {
+							completed(
+									i,
+									getResult(futures[i], startTimes[i],
+											getTimeout(checks.getName(i))));
+						}
+					}
+					return;
+				}
+			}
+		}
+
+		/**
+		 * 
+		 * @param upstreams
+		 *            the indexes of the upstream checks of a check, can be
+		 *            null
+		 * @return the name of the first upstream check known as unhealthy,
+		 *         or null
+		 */
+		String getUnhealthyUpstream(int[] upstreams) {
+			if (upstreams != null) {
+				for (int upstream : upstreams) {
+					if (results[upstream] != null
+							&& !results[upstream].isHealthy()) {
+						return checks.getName(upstream);
+					}
+				}
+			}
+			return null;
+		}
+
+		SortedMap<String, HealthCheckResult> getResults() {
+			return new SortedResultMap(checks.getNames(), results);
+		}
+	}
+
+	/**
+	 * The checks of a group, computed from a set of registered checks
+	 */
+	private static class GroupSnapshot {
+
+		private final HealthCheckSnapshot registered;
+
+		private final int version;
+
+		private final HealthCheckSnapshot checks;
+
+		GroupSnapshot(HealthCheckSnapshot registered, int version,
+				HealthCheckSnapshot checks) {
+			this.registered = registered;
+			this.version = version;
+			this.checks = checks;
+		}
+	}
+
+	/**
+	 * The result of a check not executed because one of its upstream checks
+	 * is unhealthy
+	 */
+	private static class SkippedResult extends HealthCheckResult {
+
+		SkippedResult(Result result) {
+			super(result, 0);
+		}
+	}
+
+	/**
+	 * Wrap the future result of an asynchronous check
+	 */
+	private static class AsyncResultFuture implements
+			Future<HealthCheckResult> {
+
+		private final Future<Result> future;
+
+		private final long startTime;
+
+		AsyncResultFuture(Future<Result> future, long startTime) {
+			this.future = future;
+			this.startTime = startTime;
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return future.cancel(mayInterruptIfRunning);
+		}
+
+		public boolean isCancelled() {
+			return future.isCancelled();
+		}
+
+		public boolean isDone() {
+			return future.isDone();
+		}
+
+		public HealthCheckResult get() throws InterruptedException,
+				ExecutionException {
+			return toHealthCheckResult(future.get());
+		}
+
+		public HealthCheckResult get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException,
+				TimeoutException {
+			return toHealthCheckResult(future.get(timeout, unit));
+		}
+
+		private HealthCheckResult toHealthCheckResult(Result result) {
+			// the result may be collected up to ASYNC_POLL_INTERVAL after
+			// its completion
+			long endTime = future instanceof CompletionTime ? ((CompletionTime) future)
+					.getCompletionTime() : System.nanoTime();
+			return HealthCheckResult.ofNanos(result, endTime - startTime);
+		}
+	}
+
+	/**
+	 * Create daemon threads so that a stuck check never prevents the JVM from
+	 * stopping
+	 */
+	/**
+	 * The execution of a check by an executor. Once abandoned at its deadline,
+	 * the execution is known as still running until its thread ends the check
+	 * (a check may ignore the interruption).
+	 */
+	private class CheckTask extends FutureTask<HealthCheckResult> {
+
+		private final String name;
+
+		/** released when the check completes, can be null */
+		private final Semaphore completions;
+
+		/** true once the thread of the executor has left the check */
+		private volatile boolean ended;
+
+		CheckTask(String name, final HealthCheck healthCheck,
+				Semaphore completions) {
+			super(new Callable<HealthCheckResult>() {
+				public HealthCheckResult call() throws Exception {
+					return execute(healthCheck);
+				}
+			});
+			this.name = name;
+			this.completions = completions;
+		}
+
+		@Override
+		public void run() {
+			try {
+				super.run();
+			} finally {
+				ended = true;
+				abandonedChecks.remove(name, this);
+			}
+		}
+
+		@Override
+		protected void done() {
+			if (completions != null) {
+				completions.release();
+			}
+		}
+
+		/**
+		 * Keep the execution as still running until its thread ends the check
+		 */
+		void abandon() {
+			abandonedChecks.put(name, this);
+			if (ended) {
+				// ended meanwhile
+				abandonedChecks.remove(name, this);
+			}
+		}
+	}
+
+	private static class HealthCheckThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "healthcheck-"
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -0,0 +1,361 @@
+package net.atos.xa.healthcheck;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.atos.xa.healthcheck.processor.HealthCheckIndexProcessor;
+import net.atos.xa.healthcheck.spi.HealthCheckFactory;
+import net.atos.xa.healthcheck.util.EnvironmentUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * 
+ * Find the available checks (SPI and factories) lazily.
+ * 
+ * The class names of the providers are read, without loading any class, from
+ * the indexes generated at build time by {@link HealthCheckIndexProcessor}.
+ * The "META-INF/services" files are only read when no index is found, or
+ * also when {@link #INDEX_ONLY} is false, a provider both indexed and
+ * declared as a service being loaded once. The providers
+ * are then instantiated one after another only when needed: all of them when
+ * the checks are listed, until the check is found when a check is looked up by
+ * name. A static check whose name is in an index is instantiated first when
+ * this name is looked up. A factory is called once, with the environment given
+ * at the construction.
+ * 
+ * If several providers give a check with the same name, the first one found
+ * is kept (static checks first, then the factories, in the order of the
+ * indexes and "META-INF/services" files).
+ * 
+ */
+final class HealthCheckDiscovery {
+
+	/** the logger */
+	private static Logger log = LoggerFactory
+			.getLogger(HealthCheckDiscovery.class.getName());
+
+	/**
+	 * if true (default), the "META-INF/services" files are not read when an
+	 * index is found: the providers which are not annotated are then ignored.
+	 * If false, they are read too, e.g. for the jars built without the index.
+	 */
+	static final String INDEX_ONLY = "healthcheck.discovery.indexOnly";
+
+	private static final String SERVICES = "META-INF/services/";
+
+	private final ClassLoader classLoader;
+
+	private final Map<String, String> environment;
+
+	/** the class names of the static checks not instantiated yet */
+	private Set<String> pendingChecks;
+
+	/** the class names of the factories not called yet */
+	private Set<String> pendingFactories;
+
+	/** the class names of the static checks by check name, from the indexes */
+	private Map<String, String> indexedNames;
+
+	/** the checks found so far by name */
+	private final Map<String, HealthCheck> foundChecks = new HashMap<String, HealthCheck>();
+
+	/** the checks found once all the providers are loaded */
+	private volatile HealthCheckSnapshot allChecks;
+
+	/**
+	 * Constructor, nothing is read before the first call
+	 * 
+	 * @param classLoader
+	 *            the class loader of the providers
+	 * @param environment
+	 *            the environment given to the factories, can be null
+	 */
+	HealthCheckDiscovery(ClassLoader classLoader,
+			Map<String, String> environment) {
+		this.classLoader = classLoader;
+		this.environment = environment;
+	}
+
+	/**
+	 * 
+	 * @return all the available checks, the providers not loaded yet are
+	 *         loaded
+	 */
+	HealthCheckSnapshot getAll() {
+		HealthCheckSnapshot snapshot = allChecks;
+		if (snapshot != null) {
+			return snapshot;
+		}
+		synchronized (this) {
+			if (allChecks == null) {
+				index();
+				while (loadNext()) {
+					// load all the providers
+				}
+				allChecks = HealthCheckSnapshot.of(foundChecks.values());
+				log.debug("[HealthCheck] {} checks found", allChecks.size());
+			}
+			return allChecks;
+		}
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of a check
+	 * @return the check, or null if no provider gives it. The providers are
+	 *         loaded until the check is found
+	 */
+	HealthCheck find(String name) {
+		HealthCheckSnapshot snapshot = allChecks;
+		if (snapshot != null) {
+			return snapshot.get(name);
+		}
+		synchronized (this) {
+			index();
+			HealthCheck healthCheck = foundChecks.get(name);
+			String className = indexedNames.get(name);
+			if (healthCheck == null && className != null
+					&& pendingChecks.remove(className)) {
+				loadCheck(className);
+				healthCheck = foundChecks.get(name);
+			}
+			while (healthCheck == null && loadNext()) {
+				healthCheck = foundChecks.get(name);
+			}
+			return healthCheck;
+		}
+	}
+
+	/**
+	 * Walk the providers again, e.g. to find the datasources deployed since
+	 * the first discovery. The factories are called again, with the current
+	 * content of the environment.
+	 * 
+	 * @return a new discovery with all the checks given now by the providers.
+	 *         The checks already found by this discovery are kept instead of
+	 *         the new instances with the same name
+	 */
+	HealthCheckDiscovery rediscover() {
+		HealthCheckSnapshot previous = getAll();
+		HealthCheckDiscovery next = new HealthCheckDiscovery(classLoader,
+				environment);
+		HealthCheckSnapshot found = next.getAll();
+		List<HealthCheck> checks = new ArrayList<HealthCheck>(found.size());
+		for (int i = 0; i < found.size(); i++) {
+			HealthCheck known = previous.get(found.getName(i));
+			checks.add(known != null ? known : found.getCheck(i));
+		}
+		next.allChecks = HealthCheckSnapshot.of(checks);
+		return next;
+	}
+
+	/**
+	 * read the class names of the providers, once
+	 */
+	private void index() {
+		if (pendingChecks != null) {
+			return;
+		}
+		pendingChecks = new LinkedHashSet<String>();
+		pendingFactories = new LinkedHashSet<String>();
+		indexedNames = new HashMap<String, String>();
+
+		if (readIndexes()
+				&& EnvironmentUtil.getBoolean(environment, INDEX_ONLY, true)) {
+			log.debug(
+					"[HealthCheck] index found, the SPI files are not read ({} is not false)",
+					INDEX_ONLY);
+			return;
+		}
+		// the providers both indexed and in the SPI files are kept once
+		readClassNames(HealthCheck.class, pendingChecks);
+		readClassNames(HealthCheckFactory.class, pendingFactories);
+	}
+
+	/**
+	 * load the next provider
+	 * 
+	 * @return false if all the providers are already loaded
+	 */
+	private boolean loadNext() {
+		if (!pendingChecks.isEmpty()) {
+			loadCheck(removeFirst(pendingChecks));
+			return true;
+		}
+		if (!pendingFactories.isEmpty()) {
+			String className = removeFirst(pendingFactories);
+			HealthCheckFactory factory = newInstance(className,
+					HealthCheckFactory.class);
+			List<HealthCheck> healthchecks = null;
+			if (factory != null) {
+				try {
+					healthchecks = factory.getHealthChecks(environment);
+				} catch (RuntimeException e) {
+					log.error("[HealthCheck] the healthcheck factory "
+							+ className + " failed", e);
+				}
+				if (healthchecks != null) {
+					for (HealthCheck check : healthchecks) {
+						log.debug(
+								"[HealthCheck] found a check {} (classname : {}) given by the healthcheck factory {}",
+								check.getName(), check.getClass(),
+								factory.getClass());
+						add(check);
+					}
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private void loadCheck(String className) {
+		HealthCheck check = newInstance(className, HealthCheck.class);
+		if (check != null) {
+			log.debug("[HealthCheck] found a check {} (classname : {})",
+					check.getName(), check.getClass());
+			add(check);
+		}
+	}
+
+	private static String removeFirst(Set<String> classNames) {
+		Iterator<String> iterator = classNames.iterator();
+		String className = iterator.next();
+		iterator.remove();
+		return className;
+	}
+
+	private void add(HealthCheck check) {
+		HealthCheck previous = foundChecks.get(check.getName());
+		if (previous == null) {
+			foundChecks.put(check.getName(), check);
+		} else {
+			log.warn(
+					"[HealthCheck] the check {} (classname : {}) is ignored, a check with the same name is given by {}",
+					check.getName(), check.getClass(), previous.getClass());
+		}
+	}
+
+	private <T> T newInstance(String className, Class<T> type) {
+		try {
+			Class<?> providerClass = Class.forName(className, true,
+					classLoader);
+			return type.cast(providerClass.getDeclaredConstructor()
+					.newInstance());
+		} catch (Exception e) {
+			log.error("[HealthCheck] cannot instantiate the provider "
+					+ className, e);
+		} catch (LinkageError e) {
+			log.error("[HealthCheck] cannot load the provider " + className, e);
+		}
+		return null;
+	}
+
+	/**
+	 * read the indexes generated by {@link HealthCheckIndexProcessor}
+	 * 
+	 * @return true if an index is found
+	 */
+	private boolean readIndexes() {
+		boolean found = false;
+		try {
+			Enumeration<URL> urls = classLoader
+					.getResources(HealthCheckIndexProcessor.INDEX);
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				log.debug("[HealthCheck] read the index {}", url.getPath());
+				for (String line : readLines(url)) {
+					readIndexLine(url, line);
+				}
+				found = true;
+			}
+		} catch (IOException e) {
+			log.error("[HealthCheck] cannot read the indexes of the checks", e);
+		}
+		return found;
+	}
+
+	private void readIndexLine(URL url, String line) {
+		String[] fields = line.split("\\s+", 3);
+		if (fields.length >= 2 && "check".equals(fields[0])) {
+			pendingChecks.add(fields[1]);
+			if (fields.length == 3 && !indexedNames.containsKey(fields[2])) {
+				indexedNames.put(fields[2], fields[1]);
+			}
+		} else if (fields.length == 2 && "factory".equals(fields[0])) {
+			pendingFactories.add(fields[1]);
+		} else {
+			log.warn("[HealthCheck] invalid line in the index {}: {}",
+					url.getPath(), line);
+		}
+	}
+
+	/**
+	 * read the provider class names of a service, in the format of
+	 * {@link java.util.ServiceLoader}
+	 * 
+	 * @param service
+	 *            the service
+	 * @param classNames
+	 *            the class names read, without duplicates
+	 */
+	private void readClassNames(Class<?> service, Set<String> classNames) {
+		String resource = SERVICES + service.getName();
+		try {
+			Enumeration<URL> urls = classLoader.getResources(resource);
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				log.debug("[HealthCheck] read the SPI file {}", url.getPath());
+				classNames.addAll(readLines(url));
+			}
+		} catch (IOException e) {
+			log.error("[HealthCheck] cannot read the SPI files of "
+					+ service.getName(), e);
+		}
+	}
+
+	/**
+	 * 
+	 * @return the lines of the file, trimmed, without the comments and the
+	 *         empty lines
+	 */
+	private static List<String> readLines(URL url) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		InputStream in = url.openStream();
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					in, "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int comment = line.indexOf('#');
+				if (comment >= 0) {
+					line = line.substring(0, comment);
+				}
+				line = line.trim();
+				if (line.length() > 0) {
+					lines.add(line);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return lines;
+	}
+
+}
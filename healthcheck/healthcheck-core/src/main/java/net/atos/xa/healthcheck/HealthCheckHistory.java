@@ -0,0 +1,104 @@
+package net.atos.xa.healthcheck;
+
+/**
+ * 
+ * The last results of a check, oldest first (see
+ * {@link HealthCheckManager#getHistory(String)}), and whether the check is
+ * flapping, i.e. its status has changed too many times within the flapping
+ * window.
+ * 
+ */
+public final class HealthCheckHistory {
+
+	private final long[] timestamps;
+
+	private final long[] executionTimes;
+
+	private final boolean[] statuses;
+
+	private final int transitions;
+
+	private final boolean flapping;
+
+	HealthCheckHistory(long[] timestamps, long[] executionTimes,
+			boolean[] statuses, int transitions, boolean flapping) {
+		this.timestamps = timestamps;
+		this.executionTimes = executionTimes;
+		this.statuses = statuses;
+		this.transitions = transitions;
+		this.flapping = flapping;
+	}
+
+	/**
+	 * 
+	 * @return the number of results kept
+	 */
+	public int size() {
+		return statuses.length;
+	}
+
+	/**
+	 * 
+	 * @param index
+	 *            the index of the result, 0 for the oldest one
+	 * @return the time of execution in milliseconds since epoch
+	 */
+	public long getTimestamp(int index) {
+		return timestamps[index];
+	}
+
+	/**
+	 * 
+	 * @param index
+	 *            the index of the result, 0 for the oldest one
+	 * @return true if the result is healthy
+	 */
+	public boolean isHealthy(int index) {
+		return statuses[index];
+	}
+
+	/**
+	 * 
+	 * @param index
+	 *            the index of the result, 0 for the oldest one
+	 * @return the execution time in nanoseconds
+	 */
+	public long getExecutionTimeNanos(int index) {
+		return executionTimes[index];
+	}
+
+	/**
+	 * 
+	 * @return the number of status changes within the flapping window
+	 */
+	public int getTransitions() {
+		return transitions;
+	}
+
+	/**
+	 * 
+	 * @return true if the status has changed more times than allowed within
+	 *         the flapping window
+	 */
+	public boolean isFlapping() {
+		return flapping;
+	}
+
+	/**
+	 * 
+	 * @return the statuses, oldest first: '+' for healthy, '-' for unhealthy
+	 */
+	public String getStatuses() {
+		char[] chars = new char[statuses.length];
+		for (int i = 0; i < statuses.length; i++) {
+			chars[i] = statuses[i] ? '+' : '-';
+		}
+		return new String(chars);
+	}
+
+	@Override
+	public String toString() {
+		return getStatuses() + " transitions=" + transitions
+				+ (flapping ? " flapping" : "");
+	}
+}
@@ -0,0 +1,300 @@
+package net.atos.xa.healthcheck;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * 
+ * Produce the healthCheck report in JSON. The results are written to the
+ * writer one by one, in the order of completion of the checks, without
+ * building the report in memory:
+ * 
+ * <pre>
+ * {"results":[
+ * {"name":"check1","healthy":true,"message":null,"executionTime":12,"executionTimeNanos":12345678,"timestamp":1371112131000,"error":null,
+ *  "latency":{"count":60,"p50Nanos":11534335,"p95Nanos":14680063,"p99Nanos":16012345,"maxNanos":16012345},
+ *  "flapping":false,"transitions":0,"history":[{"timestamp":1371112071000,"healthy":true,"executionTimeNanos":11987654},{"timestamp":1371112131000,"healthy":true,"executionTimeNanos":12345678}]},
+ * {"name":"check2","healthy":false,"message":"timed out after 500 ms","executionTime":500,"executionTimeNanos":500000000,"timestamp":1371112131000,"error":null,
+ *  "latency":{"count":60,"p50Nanos":2621439,"p95Nanos":500000000,"p99Nanos":500000000,"maxNanos":500000000},
+ *  "flapping":false,"transitions":1,"history":[{"timestamp":1371112071000,"healthy":true,"executionTimeNanos":2345678},{"timestamp":1371112131000,"healthy":false,"executionTimeNanos":500000000}]}
+ * ],"healthy":false}
+ * </pre>
+ * 
+ * The results are in the order of completion of the checks. "timestamp" is
+ * the time of execution of the check in milliseconds since epoch, "error" is
+ * the class name of the exception thrown by the check. "latency" gives the
+ * percentiles of the execution times over the latency window (see
+ * {@link HealthCheckManager#getLatency(String)}). "history" gives the last
+ * results of the check, oldest first, and "transitions" the number of status
+ * changes within the flapping window (see
+ * {@link HealthCheckManager#getHistory(String)}). "latency" and "history" are
+ * only written for the reports of the runs of the {@link HealthCheckManager}.
+ * 
+ * When the report follows a run ({@link #produceReport(PrintWriter, String)}),
+ * the writer is flushed after each result, so that the client receives the
+ * results as the checks complete, while the slowest checks are still
+ * running. The reports of results already known leave the flushes to the
+ * buffer of the writer.
+ * 
+ */
+public class HealthCheckJsonReport implements HealthCheckListener {
+
+	/** the content type of the report */
+	public static final String CONTENT_TYPE = "application/json";
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final PrintWriter writer;
+
+	/** the registry giving the latency of the checks, can be null */
+	private final CustomHealthCheckRegistry registry;
+
+	private int count;
+
+	private boolean healthy = true;
+
+	private boolean ended;
+
+	/** true to flush the writer after each result */
+	private boolean flushed;
+
+	/**
+	 * Start a report
+	 * 
+	 * @param writer
+	 *            the writer
+	 */
+	public HealthCheckJsonReport(PrintWriter writer) {
+		this(writer, null);
+	}
+
+	HealthCheckJsonReport(PrintWriter writer,
+			CustomHealthCheckRegistry registry) {
+		this.writer = writer;
+		this.registry = registry;
+		writer.write("{\"results\":[");
+	}
+
+	/**
+	 * Produce a JSON report for the registered healthchecks, each result is
+	 * written and flushed as soon as its check completes
+	 * 
+	 * @param writer
+	 *            the writer
+	 * @return the report
+	 */
+	public static HealthCheckJsonReport produceReport(final PrintWriter writer) {
+		return produceReport(writer, (String) null);
+	}
+
+	/**
+	 * Produce a JSON report for the registered healthchecks of a group, each
+	 * result is written and flushed as soon as its check completes
+	 * 
+	 * @param writer
+	 *            the writer
+	 * @param group
+	 *            the group of the checks, null for all the checks
+	 * @return the report
+	 */
+	public static HealthCheckJsonReport produceReport(
+			final PrintWriter writer, final String group) {
+		CustomHealthCheckRegistry registry = HealthCheckManager.getRegistry();
+		HealthCheckJsonReport report = new HealthCheckJsonReport(writer,
+				registry);
+		report.flushed = true;
+		registry.runHealthchecksWithDetailedReport(group, report);
+		report.end();
+		return report;
+	}
+
+	/**
+	 * Produce a JSON report for the healthcheck
+	 * 
+	 * @param writer
+	 *            the writer
+	 * @param results
+	 *            the results
+	 * @return the report
+	 */
+	public static HealthCheckJsonReport produceReport(
+			final PrintWriter writer,
+			final Map<String, HealthCheckResult> results) {
+		HealthCheckJsonReport report = new HealthCheckJsonReport(writer);
+		for (Map.Entry<String, HealthCheckResult> entry : results.entrySet()) {
+			report.onResult(entry.getKey(), entry.getValue());
+		}
+		report.end();
+		return report;
+	}
+
+	/**
+	 * Produce a JSON report for the results of a run of the
+	 * {@link HealthCheckManager}, with the latency and the history of the
+	 * checks
+	 * 
+	 * @param writer
+	 *            the writer
+	 * @param results
+	 *            the results
+	 * @return the report
+	 */
+	public static HealthCheckJsonReport produceDetailedReport(
+			final PrintWriter writer,
+			final Map<String, HealthCheckResult> results) {
+		HealthCheckJsonReport report = new HealthCheckJsonReport(writer,
+				HealthCheckManager.getRegistry());
+		for (Map.Entry<String, HealthCheckResult> entry : results.entrySet()) {
+			report.onResult(entry.getKey(), entry.getValue());
+		}
+		report.end();
+		return report;
+	}
+
+	/**
+	 * Write the result of a check
+	 * 
+	 * @param name
+	 *            the name of the check
+	 * @param result
+	 *            the result of the check
+	 */
+	public synchronized void onResult(String name, HealthCheckResult result) {
+		if (ended) {
+			throw new IllegalStateException("the report is ended");
+		}
+		if (count > 0) {
+			writer.write(',');
+		}
+		count++;
+		healthy &= result.isHealthy();
+
+		writer.write("\n{\"name\":");
+		writeString(name);
+		writer.write(",\"healthy\":");
+		writer.write(result.isHealthy() ? "true" : "false");
+		writer.write(",\"message\":");
+		writeString(result.getMessage());
+		writer.write(",\"executionTime\":");
+		writer.write(Long.toString(result.getExecutionTime()));
+		writer.write(",\"executionTimeNanos\":");
+		writer.write(Long.toString(result.getExecutionTimeNanos()));
+		writer.write(",\"timestamp\":");
+		writer.write(Long.toString(result.getTimestamp()));
+		writer.write(",\"error\":");
+		writeString(result.getError() == null ? null : result.getError()
+				.getClass().getName());
+		HealthCheckLatency latency = registry == null ? null : registry
+				.getLatency(name);
+		if (latency != null) {
+			writer.write(",\"latency\":{\"count\":");
+			writer.write(Long.toString(latency.getCount()));
+			writer.write(",\"p50Nanos\":");
+			writer.write(Long.toString(latency.getP50()));
+			writer.write(",\"p95Nanos\":");
+			writer.write(Long.toString(latency.getP95()));
+			writer.write(",\"p99Nanos\":");
+			writer.write(Long.toString(latency.getP99()));
+			writer.write(",\"maxNanos\":");
+			writer.write(Long.toString(latency.getMax()));
+			writer.write('}');
+		}
+		HealthCheckHistory history = registry == null ? null : registry
+				.getHistory(name);
+		if (history != null) {
+			writer.write(",\"flapping\":");
+			writer.write(history.isFlapping() ? "true" : "false");
+			writer.write(",\"transitions\":");
+			writer.write(Integer.toString(history.getTransitions()));
+			writer.write(",\"history\":[");
+			for (int i = 0; i < history.size(); i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				writer.write("{\"timestamp\":");
+				writer.write(Long.toString(history.getTimestamp(i)));
+				writer.write(",\"healthy\":");
+				writer.write(history.isHealthy(i) ? "true" : "false");
+				writer.write(",\"executionTimeNanos\":");
+				writer.write(Long.toString(history.getExecutionTimeNanos(i)));
+				writer.write('}');
+			}
+			writer.write(']');
+		}
+		writer.write('}');
+		if (flushed) {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * End the report, the writer is neither flushed nor closed
+	 */
+	public synchronized void end() {
+		if (!ended) {
+			ended = true;
+			writer.write("\n],\"healthy\":");
+			writer.write(healthy ? "true" : "false");
+			writer.write("}\n");
+		}
+	}
+
+	/**
+	 * 
+	 * @return the number of results written
+	 */
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * 
+	 * @return true if all the results written are healthy
+	 */
+	public synchronized boolean isHealthy() {
+		return healthy;
+	}
+
+	private void writeString(String value) {
+		if (value == null) {
+			writer.write("null");
+			return;
+		}
+		writer.write('"');
+		// the characters which need no escape are written by segments
+		int segmentStart = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\') {
+				continue;
+			}
+			writer.write(value, segmentStart, i - segmentStart);
+			segmentStart = i + 1;
+			switch (c) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				writer.write("\\u00");
+				writer.write(HEX_DIGITS[c >> 4]);
+				writer.write(HEX_DIGITS[c & 0xF]);
+				break;
+			}
+		}
+		writer.write(value, segmentStart, length - segmentStart);
+		writer.write('"');
+	}
+}
@@ -0,0 +1,77 @@
+package net.atos.xa.healthcheck;
+
+/**
+ * 
+ * The percentiles of the execution times of a check over the latency window
+ * (see {@link HealthCheckManager#getLatency(String)}). The percentiles are
+ * approximated by excess, with a relative error below 12.5%; the maximum is
+ * exact.
+ * 
+ */
+public final class HealthCheckLatency {
+
+	private final long count;
+
+	private final long p50;
+
+	private final long p95;
+
+	private final long p99;
+
+	private final long max;
+
+	HealthCheckLatency(long count, long p50, long p95, long p99, long max) {
+		this.count = count;
+		this.p50 = p50;
+		this.p95 = p95;
+		this.p99 = p99;
+		this.max = max;
+	}
+
+	/**
+	 * 
+	 * @return the number of executions of the check in the window
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 
+	 * @return the median execution time in nanoseconds, 0 if the check has
+	 *         not been executed in the window
+	 */
+	public long getP50() {
+		return p50;
+	}
+
+	/**
+	 * 
+	 * @return the 95th percentile of the execution times in nanoseconds
+	 */
+	public long getP95() {
+		return p95;
+	}
+
+	/**
+	 * 
+	 * @return the 99th percentile of the execution times in nanoseconds
+	 */
+	public long getP99() {
+		return p99;
+	}
+
+	/**
+	 * 
+	 * @return the highest execution time in nanoseconds
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + " p50=" + p50 + "ns p95=" + p95 + "ns p99="
+				+ p99 + "ns max=" + max + "ns";
+	}
+}
@@ -0,0 +1,30 @@
+package net.atos.xa.healthcheck;
+
+/**
+ * 
+ * Receive the results of a run as soon as each check completes, e.g. to
+ * stream a report while the slowest checks are still running.
+ * 
+ * The listener is called once per check, in the order of completion of the
+ * checks. The listener of the caller which starts a run is called by the
+ * thread running the checks, each result being published to the other
+ * callers first. A caller sharing a run in progress receives the results
+ * already known at once, then the next ones as they are published, from its
+ * own thread: its listener (e.g. writing to a slow client) never delays the
+ * run.
+ * 
+ * 
+ */
+public interface HealthCheckListener {
+
+	/**
+	 * Called when the result of a check is known
+	 * 
+	 * @param name
+	 *            the name of the check
+	 * @param result
+	 *            the result of the check
+	 */
+	void onResult(String name, HealthCheckResult result);
+
+}
@@ -1,480 +1,899 @@
-package net.atos.xa.healthcheck;
-
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
-import java.util.ServiceLoader;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
-import net.atos.xa.healthcheck.spi.HealthCheckFactory;
-
-import com.yammer.metrics.HealthChecks;
-import com.yammer.metrics.core.HealthCheck;
-
-/**
- * 
- * <p>
- * API for managing health checks.
- * 
- * <h2>API Usage</h2>
- * 
- * You must first register your checks by one the registerHealthChecks methods
- * 
- * <pre>
- * HealthCheckManager.registerHealthChecks(yourChecks);
- * </pre>
- * 
- * Then, call one of the runHealthChecks methods to launch the checks
- * 
- * <pre>
- * HealthCheckManager.runHealthchecks();
- * </pre>
- * 
- * 
- * <h2>Develop and add your own checks</h2>
- * 
- * HealthCheck manager enhances the <a href="http://metrics.codahale.com/"
- * target="_blank">Metrics framework</a> by providing a SPI mechnanism for
- * registering health checks.
- * 
- * The SPI mechanism is a standard java mechanism for loading service. See
- * {@link ServiceLoader} for details
- * 
- * 
- * With HealthCheck manager, we provide two SPI to make available the checks
- * you've developped
- * 
- * <h2>How to register static check</h2>
- * 
- * A first SPI is used for static check, you must provide a file named
- * 
- * <pre>
- * com.yammer.metrics.core.HealthCheck
- * </pre>
- * 
- * in the
- * 
- * <pre>
- * META-INF/services/
- * </pre>
- * 
- * folder. This file must list all the subclasses of
- * com.yammer.metrics.core.HealthCheck you've developped.
- * 
- * <h2>How to register dynamic check</h2>
- * You may not know in advance how many checks you need to execute. For
- * instance, in a application server, you cannot know in advance how many
- * datasources will be configured for a project.
- * 
- * For that purpose, we provide a SPI for creating checks dynamically. You must
- * provide a file named
- * 
- * <pre>
- * net.atos.xa.healthcheck.spi.HealthCheckFactory
- * </pre>
- * 
- * in the
- * 
- * <pre>
- * META-INF/services/
- * </pre>
- * 
- * folder. This file must list all the implementation of the
- * {@link HealthCheckFactory} interface. This interface exposes one method which
- * allows to create how many HealthCheck as necessary.
- * 
- * 
- * </p>
- * 
- * 
- */
-public class HealthCheckManager {
-	// we delegate calls to HealthCheckManagerUnit class
-	private static volatile CustomHealthCheckRegistry managerInstance = null;
-
-	// lock to synchronize context initialization
-	private static Lock initializationLock = new ReentrantLock();
-
-	private HealthCheckManager() {
-
-	}
-
-	/**
-	 * get all the availbable health checks
-	 * 
-	 * @return
-	 */
-	public static Collection<HealthCheck> getAllHealthChecks() {
-		return getAllHealthChecks(null);
-	}
-
-	/**
-	 * get all the availbable health checks
-	 * 
-	 * @param environment
-	 *            environment variable used for the setup of the checks <br>
-	 *            This is an optional option, it depends on the checks you use.
-	 *            Please consult the javadoc of the checks you use for details
-	 *            about the possible variable environments
-	 * 
-	 * @return
-	 */
-	public static Collection<HealthCheck> getAllHealthChecks(
-			Map<String, String> environment) {
-		if (managerInstance == null) {
-			createManager(environment);
-		}
-		return managerInstance.getAllHealthChecks();
-	}
-
-	/**
-	 * Find all the available healthcheck except those mentionned in parameter
-	 * 
-	 * @param excludeChecks
-	 *            a list of healthcheck names to exclude from the list
-	 * @return
-	 */
-	public static Collection<HealthCheck> getFilteredHealthChecks(
-			List<String> excludeChecks) {
-		return getFilteredHealthChecks(excludeChecks, null);
-	}
-
-	/**
-	 * Find all the available healthcheck except those mentionned in parameter
-	 * 
-	 * @param excludeChecks
-	 *            a list of healthcheck names to exclude from the list
-	 * @param environment
-	 *            environment variable used for the setup of the checks <br>
-	 *            This is an optional option, it depends on the checks you use.
-	 *            Please consult the javadoc of the checks you use for details
-	 *            about the possible variable environments
-	 * @return
-	 */
-	public static Collection<HealthCheck> getFilteredHealthChecks(
-			List<String> excludeChecks, Map<String, String> environment) {
-		if (managerInstance == null) {
-			createManager(environment);
-		}
-		return managerInstance.getFilteredHealthChecks(excludeChecks);
-	}
-
-	/**
-	 * Find all the available healthcheck except those mentionned in parameter
-	 * 
-	 * @param excludeChecks
-	 *            an array of healthcheck names to exclude from the list
-	 * @return
-	 */
-	public static Collection<HealthCheck> getFilteredHealthChecks(
-			String... excludeChecks) {
-		return getFilteredHealthChecks(null, excludeChecks);
-	}
-
-	/**
-	 * Find all the available healthcheck except those mentionned in parameter
-	 * 
-	 * @param environment
-	 *            environment variable used for the setup of the checks <br>
-	 *            This is an optional option, it depends on the checks you use.
-	 *            Please consult the javadoc of the checks you use for details
-	 *            about the possible variable environments
-	 * @param excludeChecks
-	 *            an array of healthcheck names to exclude from the list
-	 * 
-	 * @return
-	 */
-	public static Collection<HealthCheck> getFilteredHealthChecks(
-			Map<String, String> environment, String... excludeChecks) {
-		if (managerInstance == null) {
-			createManager(environment);
-		}
-		return managerInstance.getFilteredHealthChecks(excludeChecks);
-	}
-
-	/**
-	 * get a list of healthcheck <br/>
-	 * 
-	 * Example, if we have the following healthchecks with the names: "check1",
-	 * "check2" and "check3".<br/>
-	 * A call to getFilteredHealthChecksList("check2;check3") will return only
-	 * the "check1" healthcheck<br/>
-	 * <br/>
-	 * 
-	 * Implementations of healthcheck are retrieved thanks to SPI mechanism. @see
-	 * {@link java.util.ServiceLoader}
-	 * 
-	 * @param excludeHealthChecks
-	 *            list of excluded healthchecks (list of names separated by a
-	 *            semicolon
-	 * @return
-	 */
-	public static Collection<HealthCheck> getFilteredHealthChecksList(
-			String excludeHealthChecks) {
-
-		return getFilteredHealthChecksList(excludeHealthChecks, null);
-
-	}
-
-	/**
-	 * get a list of healthcheck <br/>
-	 * 
-	 * Example, if we have the following healthchecks with the names: "check1",
-	 * "check2" and "check3".<br/>
-	 * A call to getFilteredHealthChecksList("check2;check3") will return only
-	 * the "check1" healthcheck<br/>
-	 * <br/>
-	 * 
-	 * Implementations of healthcheck are retrieved thanks to SPI mechanism. @see
-	 * {@link java.util.ServiceLoader}
-	 * 
-	 * @param excludeHealthChecks
-	 *            list of excluded healthchecks (list of names separated by a
-	 *            semicolon
-	 * 
-	 * @param environment
-	 *            environment variable used for the setup of the checks <br>
-	 *            This is an optional option, it depends on the checks you use.
-	 *            Please consult the javadoc of the checks you use for details
-	 *            about the possible variable environments
-	 * @return
-	 */
-	public static Collection<HealthCheck> getFilteredHealthChecksList(
-			String excludeHealthChecks, Map<String, String> environment) {
-
-		if (managerInstance == null) {
-			createManager(environment);
-		}
-		return managerInstance.getFilteredHealthChecksList(excludeHealthChecks);
-
-	}
-
-	/**
-	 * register all the available healthchecks into the {@link HealthChecks}
-	 * class.
-	 * 
-	 */
-	public static void registerAllHealthChecks() {
-		registerAllHealthChecks(null);
-	}
-
-	/**
-	 * register all the available healthchecks into the {@link HealthChecks}
-	 * class.
-	 * 
-	 * @param environment
-	 *            environment variable used for the setup of the checks <br>
-	 *            This is an optional option, it depends on the checks you use.
-	 *            Please consult the javadoc of the checks you use for details
-	 *            about the possible variable environments
-	 * 
-	 */
-	public static void registerAllHealthChecks(Map<String, String> environment) {
-		registerHealthChecks(getAllHealthChecks(environment));
-	}
-
-	/**
-	 * register all the available healthchecks into the {@link HealthChecks}
-	 * except those mentionned in parameter.
-	 * 
-	 * @param excludeChecks
-	 *            a list of healthcheck names to exclude for the registration
-	 * 
-	 */
-	public static void registerFilteredHealthChecks(List<String> excludeChecks) {
-		registerFilteredHealthChecks(excludeChecks, null);
-	}
-
-	/**
-	 * register all the available healthchecks into the {@link HealthChecks}
-	 * except those mentionned in parameter.
-	 * 
-	 * @param excludeChecks
-	 *            a list of healthcheck names to exclude for the registration
-	 * @param environment
-	 *            environment variable used for the setup of the checks <br>
-	 *            This is an optional option, it depends on the checks you use.
-	 *            Please consult the javadoc of the checks you use for details
-	 *            about the possible variable environments
-	 */
-	public static void registerFilteredHealthChecks(List<String> excludeChecks,
-			Map<String, String> environment) {
-		registerHealthChecks(getFilteredHealthChecks(excludeChecks, environment));
-	}
-
-	/**
-	 * register the healthchecks into the {@link HealthChecks} class.
-	 * 
-	 * @param healthChecks
-	 */
-	public static void registerHealthChecks(Collection<HealthCheck> healthChecks) {
-		registerHealthChecks(healthChecks, null);
-
-	}
-
-	/**
-	 * register the healthchecks into the {@link HealthChecks} class.
-	 * 
-	 * @param healthChecks
-	 * @param environment
-	 *            environment variable used for the setup of the checks <br>
-	 *            This is an optional option, it depends on the checks you use.
-	 *            Please consult the javadoc of the checks you use for details
-	 *            about the possible variable environments
-	 */
-	public static void registerHealthChecks(
-			Collection<HealthCheck> healthChecks,
-			Map<String, String> environment) {
-		if (managerInstance == null) {
-			createManager(environment);
-		}
-		managerInstance.registerHealthChecks(healthChecks);
-
-	}
-
-	/**
-	 * register the healthchecks into the {@link HealthChecks} class.
-	 * 
-	 * @param healthChecks
-	 */
-	public static void registerHealthChecks(HealthCheck... healthChecks) {
-		registerHealthChecks(null, healthChecks);
-
-	}
-
-	/**
-	 * register the healthchecks into the {@link HealthChecks} class.
-	 * 
-	 * @param environment
-	 *            environment variable used for the setup of the checks <br>
-	 *            This is an optional option, it depends on the checks you use.
-	 *            Please consult the javadoc of the checks you use for details
-	 *            about the possible variable environments
-	 * @param healthChecks
-	 */
-	public static void registerHealthChecks(Map<String, String> environment,
-			HealthCheck... healthChecks) {
-		if (managerInstance == null) {
-			createManager(environment);
-		}
-		managerInstance.registerHealthChecks(healthChecks);
-
-	}
-
-	/**
-	 * Run all the registered healthchecks<br>
-	 * You must register your checks before running the checks
-	 * 
-	 * @return true if all the results are healthy
-	 */
-	public static boolean runHealthchecks() {
-		if (managerInstance == null) {
-			createManager();
-		}
-		return managerInstance.runHealthchecks();
-	}
-
-	/**
-	 * Run all the registered healthchecks and produce a detailed report
-	 * 
-	 * @return a map with one entry per executed check. For each check, it
-	 *         indicates if it is healthy or not
-	 */
-	public static Map<String, HealthCheckResult> runHealthchecksWithDetailedReport() {
-		if (managerInstance == null) {
-			createManager();
-		}
-		return managerInstance.runHealthchecksWithDetailedReport();
-	}
-
-	/**
-	 * Deactivate a previously registered check
-	 * 
-	 * @param checkName
-	 *            the name of the check; if null, the method does nothing.
-	 */
-	public static void deactivateCheck(String checkName) {
-		if (managerInstance == null) {
-			createManager();
-		}
-		managerInstance.deactivateCheck(checkName);
-	}
-
-	/**
-	 * Deactivate a set of previously registered checks
-	 * 
-	 * @param checkNames
-	 *            the name of the checks; if null, the method does nothing.
-	 */
-	public static void deactivateChecks(String... checkNames) {
-		if (managerInstance == null) {
-			createManager();
-		}
-		managerInstance.deactivateChecks(checkNames);
-	}
-
-	/**
-	 * Deactivate all the registered checks
-	 * 
-	 */
-	public static void deactivateAllChecks() {
-		if (managerInstance == null) {
-			createManager();
-		}
-		managerInstance.deactivateAllChecks();
-	}
-
-	/**
-	 * Activate a previously unregistered check
-	 * 
-	 * @param checkName
-	 *            the name of the check; if null, the method does nothing.
-	 */
-	public static void activateCheck(String checkName) {
-		if (managerInstance == null) {
-			createManager();
-		}
-		managerInstance.activateCheck(checkName);
-	}
-
-	/**
-	 * Activate a set of previously unregistered checks
-	 * 
-	 * @param checkNames
-	 *            the name of the checks; if null, the method does nothing.
-	 */
-	public static void activateChecks(String... checkNames) {
-		if (managerInstance == null) {
-			createManager();
-		}
-		managerInstance.activateChecks(checkNames);
-	}
-
-	/**
-	 * Create our HealthCheckLocatorUnit instance
-	 * 
-	 */
-	private static CustomHealthCheckRegistry createManager() {
-		return createManager(null);
-	}
-
-	/**
-	 * Create our HealthCheckLocatorUnit instance
-	 * 
-	 */
-	private static CustomHealthCheckRegistry createManager(
-			Map<String, String> environment) {
-		// double check locking to be thread safe
-		try {
-			initializationLock.lock();
-			if (managerInstance == null) {
-				managerInstance = new CustomHealthCheckRegistry(environment);
-			}
-		} finally {
-			initializationLock.unlock();
-		}
-		return managerInstance;
-	}
-
-}
+package net.atos.xa.healthcheck;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.atos.xa.healthcheck.checks.AsyncHttpCheck;
+import net.atos.xa.healthcheck.checks.SimpleHttpCheck;
+import net.atos.xa.healthcheck.spi.HealthCheckFactory;
+
+import com.yammer.metrics.HealthChecks;
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * 
+ * <p>
+ * API for managing health checks.
+ * 
+ * <h2>API Usage</h2>
+ * 
+ * You must first register your checks by one the registerHealthChecks methods
+ * 
+ * <pre>
+ * HealthCheckManager.registerHealthChecks(yourChecks);
+ * </pre>
+ * 
+ * Then, call one of the runHealthChecks methods to launch the checks
+ * 
+ * <pre>
+ * HealthCheckManager.runHealthchecks();
+ * </pre>
+ * 
+ * 
+ * <h2>Develop and add your own checks</h2>
+ * 
+ * HealthCheck manager enhances the <a href="http://metrics.codahale.com/"
+ * target="_blank">Metrics framework</a> by providing a SPI mechnanism for
+ * registering health checks.
+ * 
+ * The SPI mechanism is a standard java mechanism for loading service. See
+ * {@link ServiceLoader} for details
+ * 
+ * 
+ * With HealthCheck manager, we provide two SPI to make available the checks
+ * you've developped
+ * 
+ * <h2>How to register static check</h2>
+ * 
+ * A first SPI is used for static check, you must provide a file named
+ * 
+ * <pre>
+ * com.yammer.metrics.core.HealthCheck
+ * </pre>
+ * 
+ * in the
+ * 
+ * <pre>
+ * META-INF/services/
+ * </pre>
+ * 
+ * folder. This file must list all the subclasses of
+ * com.yammer.metrics.core.HealthCheck you've developped.
+ * 
+ * <h2>How to register dynamic check</h2>
+ * You may not know in advance how many checks you need to execute. For
+ * instance, in a application server, you cannot know in advance how many
+ * datasources will be configured for a project.
+ * 
+ * For that purpose, we provide a SPI for creating checks dynamically. You must
+ * provide a file named
+ * 
+ * <pre>
+ * net.atos.xa.healthcheck.spi.HealthCheckFactory
+ * </pre>
+ * 
+ * in the
+ * 
+ * <pre>
+ * META-INF/services/
+ * </pre>
+ * 
+ * folder. This file must list all the implementation of the
+ * {@link HealthCheckFactory} interface. This interface exposes one method which
+ * allows to create how many HealthCheck as necessary.
+ * 
+ * <h2>Discovery of the checks</h2>
+ * 
+ * The checks and the factories are not loaded when the manager is created:
+ * the class names listed in the SPI files are read first, and the classes are
+ * instantiated only when the available checks are listed (e.g.
+ * {@link #getAllHealthChecks()}) or when a check is activated by name (the
+ * providers are then loaded until the check is found). To load them in the
+ * background beforehand, e.g. at the deployment of the application, call
+ * {@link #warmUp()}.
+ * 
+ * The providers annotated with
+ * {@link net.atos.xa.healthcheck.spi.HealthCheckProvider} are listed at build
+ * time in an index of their jar; a check named in the index is instantiated
+ * alone when it is activated by name. The SPI files are only read when no
+ * index is found: on a classpath with indexes, the providers which are not
+ * annotated are ignored unless healthcheck.discovery.indexOnly is false.
+ * 
+ * The factories are called once. To take into account the datasources
+ * deployed or removed afterwards, call {@link #rediscover()} or set the
+ * interval of a periodic rediscovery. The checks which are not given anymore
+ * are deactivated and the new ones are activated, unless
+ * healthcheck.rediscovery.activate is false:
+ * 
+ * <pre>
+ * healthcheck.rediscovery.interval (in milliseconds, 0 by default: on demand only)
+ * healthcheck.rediscovery.activate (true by default)
+ * </pre>
+ * 
+ * <h2>Asynchronous checks</h2>
+ * 
+ * A check extending {@link net.atos.xa.healthcheck.spi.AsyncHealthCheck} is
+ * started from the calling thread and does not hold a thread of the executor
+ * while it runs. Its deadline is enforced as for the other checks.
+ * 
+ * <h2>Parallel execution</h2>
+ * 
+ * By default, the checks are executed one after another. To run them in
+ * parallel on a bounded thread pool, set the environment variable
+ * 
+ * <pre>
+ * healthcheck.executor.threads
+ * </pre>
+ * 
+ * to the size of the pool, or give your own executor with
+ * {@link #setExecutorService(ExecutorService)}. The execution time of a run is
+ * then roughly the one of the slowest check.
+ * 
+ * <h2>Deadline of the checks</h2>
+ * 
+ * A check may be blocked as long as its underlying driver allows it. To bound
+ * the duration of a run, a deadline in milliseconds can be given to the checks
+ * with the environment variables
+ * 
+ * <pre>
+ * healthcheck.timeout (deadline of all the checks)
+ * healthcheck.timeout.&lt;check name&gt; (deadline of one check)
+ * </pre>
+ * 
+ * or at the registration with {@link #registerHealthCheck(HealthCheck, long)}.
+ * A check which runs past its deadline is interrupted, abandoned and reported
+ * as unhealthy with the message "timed out after N ms". A check ignoring the
+ * interruption is not executed again while its abandoned execution is still
+ * running, it is reported as timed out. In sequential mode, the deadlines are
+ * enforced by at most "healthcheck.timeoutExecutor.threads" threads (10 by
+ * default).
+ * 
+ * <h2>Background execution</h2>
+ * 
+ * When the checks are polled frequently, they can be executed in the
+ * background, each one at its own interval, with the environment variables
+ * 
+ * <pre>
+ * healthcheck.schedule.interval (interval in milliseconds of all the checks)
+ * healthcheck.schedule.interval.&lt;check name&gt; (interval of one check)
+ * healthcheck.schedule.threads (number of threads of the scheduler, 1 by default)
+ * </pre>
+ * 
+ * or with {@link #startScheduler(long)}. The runs then return the last known
+ * results without executing anything. Use
+ * {@link HealthCheckResult#getTimestamp()} and
+ * {@link HealthCheckResult#getAge()} to detect stale results.
+ * 
+ * <h2>Concurrent runs</h2>
+ * 
+ * Callers asking for a run while a run of the same checks is in progress share
+ * its results instead of executing the checks again. The results can also be
+ * reused during a short time after the end of the run with the environment
+ * variable
+ * 
+ * <pre>
+ * healthcheck.resultTtl (time in milliseconds)
+ * </pre>
+ * 
+ * or with {@link #setResultTtl(long)}.
+ * 
+ * <h2>Circuit breaker</h2>
+ * 
+ * A check whose dependency is down may block until its timeout at each run
+ * and add load to the dependency. After a number of consecutive failures, the
+ * check can be skipped during a back-off and reported as unhealthy with the
+ * message "circuit open after N consecutive failures, last failure: ...";
+ * once the back-off is elapsed, it is executed again by a single run, and
+ * executed normally if it succeeds. The circuit breaker is set with the
+ * environment variables
+ * 
+ * <pre>
+ * healthcheck.circuitBreaker.failures (number of consecutive failures, 0 or not set: no circuit breaker)
+ * healthcheck.circuitBreaker.failures.&lt;check name&gt; (number of consecutive failures of one check)
+ * healthcheck.circuitBreaker.backoff (back-off in milliseconds, 30 seconds by default)
+ * healthcheck.circuitBreaker.backoff.&lt;check name&gt; (back-off of one check)
+ * </pre>
+ * 
+ * <h2>Groups</h2>
+ * 
+ * A check can belong to groups, so that a probe runs only the checks it
+ * needs: e.g. the group {@value #LIVENESS_GROUP} for the cheap checks of a
+ * liveness probe, and {@value #READINESS_GROUP} for the checks of a readiness
+ * probe. {@link #runGroupWithDetailedReport(String)} runs the checks of
+ * a group, the other methods run all the checks. The groups are declared by a
+ * check implementing {@link net.atos.xa.healthcheck.spi.GroupedHealthCheck},
+ * with {@link #setGroups(String, String...)}, or with the environment
+ * variables
+ * 
+ * <pre>
+ * healthcheck.groups.&lt;check name&gt; (the groups of the check, separated by ';')
+ * </pre>
+ * 
+ * <h2>Dependencies</h2>
+ * 
+ * A check can depend on other checks, e.g. a service check on the database
+ * check: it is then executed after them, and skipped with the unhealthy
+ * message "skipped: upstream &lt;check name&gt; unhealthy" if one of them is
+ * unhealthy. The checks without dependency between them are still executed in
+ * parallel. The dependencies are declared by a check implementing
+ * {@link net.atos.xa.healthcheck.spi.DependentHealthCheck}, with
+ * {@link #setDependencies(String, String...)}, or with the environment
+ * variables
+ * 
+ * <pre>
+ * healthcheck.dependsOn.&lt;check name&gt; (the names of the upstream checks, separated by ';')
+ * </pre>
+ * 
+ * <h2>Metrics</h2>
+ * 
+ * The last result and the execution times of each check are kept, they can be
+ * exposed without executing the checks with
+ * {@link HealthCheckOpenMetricsReport}.
+ * 
+ * The execution times are measured in nanoseconds with a monotonic clock (see
+ * {@link HealthCheckResult#getExecutionTimeNanos()}). The percentiles of the
+ * execution times of a check over a sliding window are given by
+ * {@link #getLatency(String)}, the duration of the window in milliseconds is
+ * set with the environment variable
+ * 
+ * <pre>
+ * healthcheck.latency.window (10 minutes by default)
+ * </pre>
+ * 
+ * The last results of each check (time, status and execution time) are kept
+ * in a fixed-size buffer and given by {@link #getHistory(String)}. A check is
+ * flapping when its status has changed more than a number of times within the
+ * flapping window:
+ * 
+ * <pre>
+ * healthcheck.history.size (the number of results kept per check, 20 by default, 0 for none)
+ * healthcheck.flapping.transitions (5 by default, 0 to disable the detection)
+ * healthcheck.flapping.window (in milliseconds, 10 minutes by default)
+ * </pre>
+ * 
+ * Only the results kept are counted: the flapping window is bounded by the
+ * history size, which must be greater than the number of transitions plus one
+ * for a check to be detected as flapping.
+ * 
+ * </p>
+ * 
+ * 
+ */
+public class HealthCheckManager {
+
+	/** the group of the cheap checks of a liveness probe */
+	public static final String LIVENESS_GROUP = "live";
+
+	/** the group of the checks of a readiness probe */
+	public static final String READINESS_GROUP = "ready";
+
+	// we delegate calls to HealthCheckManagerUnit class
+	private static volatile CustomHealthCheckRegistry managerInstance = null;
+
+	// lock to synchronize context initialization
+	private static Lock initializationLock = new ReentrantLock();
+
+	private HealthCheckManager() {
+
+	}
+
+	/**
+	 * get all the availbable health checks
+	 * 
+	 * @return
+	 */
+	public static Collection<HealthCheck> getAllHealthChecks() {
+		return getAllHealthChecks(null);
+	}
+
+	/**
+	 * get all the availbable health checks
+	 * 
+	 * @param environment
+	 *            environment variable used for the setup of the checks <br>
+	 *            This is an optional option, it depends on the checks you use.
+	 *            Please consult the javadoc of the checks you use for details
+	 *            about the possible variable environments
+	 * 
+	 * @return
+	 */
+	public static Collection<HealthCheck> getAllHealthChecks(
+			Map<String, String> environment) {
+		if (managerInstance == null) {
+			createManager(environment);
+		}
+		return managerInstance.getAllHealthChecks();
+	}
+
+	/**
+	 * Find all the available healthcheck except those mentionned in parameter
+	 * 
+	 * @param excludeChecks
+	 *            a list of healthcheck names to exclude from the list
+	 * @return
+	 */
+	public static Collection<HealthCheck> getFilteredHealthChecks(
+			List<String> excludeChecks) {
+		return getFilteredHealthChecks(excludeChecks, null);
+	}
+
+	/**
+	 * Find all the available healthcheck except those mentionned in parameter
+	 * 
+	 * @param excludeChecks
+	 *            a list of healthcheck names to exclude from the list
+	 * @param environment
+	 *            environment variable used for the setup of the checks <br>
+	 *            This is an optional option, it depends on the checks you use.
+	 *            Please consult the javadoc of the checks you use for details
+	 *            about the possible variable environments
+	 * @return
+	 */
+	public static Collection<HealthCheck> getFilteredHealthChecks(
+			List<String> excludeChecks, Map<String, String> environment) {
+		if (managerInstance == null) {
+			createManager(environment);
+		}
+		return managerInstance.getFilteredHealthChecks(excludeChecks);
+	}
+
+	/**
+	 * Find all the available healthcheck except those mentionned in parameter
+	 * 
+	 * @param excludeChecks
+	 *            an array of healthcheck names to exclude from the list
+	 * @return
+	 */
+	public static Collection<HealthCheck> getFilteredHealthChecks(
+			String... excludeChecks) {
+		return getFilteredHealthChecks(null, excludeChecks);
+	}
+
+	/**
+	 * Find all the available healthcheck except those mentionned in parameter
+	 * 
+	 * @param environment
+	 *            environment variable used for the setup of the checks <br>
+	 *            This is an optional option, it depends on the checks you use.
+	 *            Please consult the javadoc of the checks you use for details
+	 *            about the possible variable environments
+	 * @param excludeChecks
+	 *            an array of healthcheck names to exclude from the list
+	 * 
+	 * @return
+	 */
+	public static Collection<HealthCheck> getFilteredHealthChecks(
+			Map<String, String> environment, String... excludeChecks) {
+		if (managerInstance == null) {
+			createManager(environment);
+		}
+		return managerInstance.getFilteredHealthChecks(excludeChecks);
+	}
+
+	/**
+	 * get a list of healthcheck <br/>
+	 * 
+	 * Example, if we have the following healthchecks with the names: "check1",
+	 * "check2" and "check3".<br/>
+	 * A call to getFilteredHealthChecksList("check2;check3") will return only
+	 * the "check1" healthcheck<br/>
+	 * <br/>
+	 * 
+	 * Implementations of healthcheck are retrieved thanks to SPI mechanism. @see
+	 * {@link java.util.ServiceLoader}
+	 * 
+	 * @param excludeHealthChecks
+	 *            list of excluded healthchecks (list of names separated by a
+	 *            semicolon
+	 * @return
+	 */
+	public static Collection<HealthCheck> getFilteredHealthChecksList(
+			String excludeHealthChecks) {
+
+		return getFilteredHealthChecksList(excludeHealthChecks, null);
+
+	}
+
+	/**
+	 * get a list of healthcheck <br/>
+	 * 
+	 * Example, if we have the following healthchecks with the names: "check1",
+	 * "check2" and "check3".<br/>
+	 * A call to getFilteredHealthChecksList("check2;check3") will return only
+	 * the "check1" healthcheck<br/>
+	 * <br/>
+	 * 
+	 * Implementations of healthcheck are retrieved thanks to SPI mechanism. @see
+	 * {@link java.util.ServiceLoader}
+	 * 
+	 * @param excludeHealthChecks
+	 *            list of excluded healthchecks (list of names separated by a
+	 *            semicolon
+	 * 
+	 * @param environment
+	 *            environment variable used for the setup of the checks <br>
+	 *            This is an optional option, it depends on the checks you use.
+	 *            Please consult the javadoc of the checks you use for details
+	 *            about the possible variable environments
+	 * @return
+	 */
+	public static Collection<HealthCheck> getFilteredHealthChecksList(
+			String excludeHealthChecks, Map<String, String> environment) {
+
+		if (managerInstance == null) {
+			createManager(environment);
+		}
+		return managerInstance.getFilteredHealthChecksList(excludeHealthChecks);
+
+	}
+
+	/**
+	 * register all the available healthchecks into the {@link HealthChecks}
+	 * class.
+	 * 
+	 */
+	public static void registerAllHealthChecks() {
+		registerAllHealthChecks(null);
+	}
+
+	/**
+	 * register all the available healthchecks into the {@link HealthChecks}
+	 * class.
+	 * 
+	 * @param environment
+	 *            environment variable used for the setup of the checks <br>
+	 *            This is an optional option, it depends on the checks you use.
+	 *            Please consult the javadoc of the checks you use for details
+	 *            about the possible variable environments
+	 * 
+	 */
+	public static void registerAllHealthChecks(Map<String, String> environment) {
+		registerHealthChecks(getAllHealthChecks(environment));
+	}
+
+	/**
+	 * register all the available healthchecks into the {@link HealthChecks}
+	 * except those mentionned in parameter.
+	 * 
+	 * @param excludeChecks
+	 *            a list of healthcheck names to exclude for the registration
+	 * 
+	 */
+	public static void registerFilteredHealthChecks(List<String> excludeChecks) {
+		registerFilteredHealthChecks(excludeChecks, null);
+	}
+
+	/**
+	 * register all the available healthchecks into the {@link HealthChecks}
+	 * except those mentionned in parameter.
+	 * 
+	 * @param excludeChecks
+	 *            a list of healthcheck names to exclude for the registration
+	 * @param environment
+	 *            environment variable used for the setup of the checks <br>
+	 *            This is an optional option, it depends on the checks you use.
+	 *            Please consult the javadoc of the checks you use for details
+	 *            about the possible variable environments
+	 */
+	public static void registerFilteredHealthChecks(List<String> excludeChecks,
+			Map<String, String> environment) {
+		registerHealthChecks(getFilteredHealthChecks(excludeChecks, environment));
+	}
+
+	/**
+	 * register the healthchecks into the {@link HealthChecks} class.
+	 * 
+	 * @param healthChecks
+	 */
+	public static void registerHealthChecks(Collection<HealthCheck> healthChecks) {
+		registerHealthChecks(healthChecks, null);
+
+	}
+
+	/**
+	 * register the healthchecks into the {@link HealthChecks} class.
+	 * 
+	 * @param healthChecks
+	 * @param environment
+	 *            environment variable used for the setup of the checks <br>
+	 *            This is an optional option, it depends on the checks you use.
+	 *            Please consult the javadoc of the checks you use for details
+	 *            about the possible variable environments
+	 */
+	public static void registerHealthChecks(
+			Collection<HealthCheck> healthChecks,
+			Map<String, String> environment) {
+		if (managerInstance == null) {
+			createManager(environment);
+		}
+		managerInstance.registerHealthChecks(healthChecks);
+
+	}
+
+	/**
+	 * register the healthchecks into the {@link HealthChecks} class.
+	 * 
+	 * @param healthChecks
+	 */
+	public static void registerHealthChecks(HealthCheck... healthChecks) {
+		registerHealthChecks(null, healthChecks);
+
+	}
+
+	/**
+	 * register the healthchecks into the {@link HealthChecks} class.
+	 * 
+	 * @param environment
+	 *            environment variable used for the setup of the checks <br>
+	 *            This is an optional option, it depends on the checks you use.
+	 *            Please consult the javadoc of the checks you use for details
+	 *            about the possible variable environments
+	 * @param healthChecks
+	 */
+	public static void registerHealthChecks(Map<String, String> environment,
+			HealthCheck... healthChecks) {
+		if (managerInstance == null) {
+			createManager(environment);
+		}
+		managerInstance.registerHealthChecks(healthChecks);
+
+	}
+
+	/**
+	 * register a healthcheck with a deadline
+	 * 
+	 * @param healthCheck
+	 *            the healthcheck
+	 * @param timeout
+	 *            the deadline of the check in milliseconds. If it is exceeded,
+	 *            the check is interrupted and reported as unhealthy. 0 for no
+	 *            deadline
+	 */
+	public static void registerHealthCheck(HealthCheck healthCheck,
+			long timeout) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.registerHealthCheck(healthCheck, timeout);
+	}
+
+	/**
+	 * Run all the registered healthchecks<br>
+	 * You must register your checks before running the checks
+	 * 
+	 * @return true if all the results are healthy
+	 */
+	public static boolean runHealthchecks() {
+		if (managerInstance == null) {
+			createManager();
+		}
+		return managerInstance.runHealthchecks();
+	}
+
+	/**
+	 * Run all the registered healthchecks and produce a detailed report
+	 * 
+	 * @return a map with one entry per executed check. For each check, it
+	 *         indicates if it is healthy or not
+	 */
+	public static Map<String, HealthCheckResult> runHealthchecksWithDetailedReport() {
+		if (managerInstance == null) {
+			createManager();
+		}
+		return managerInstance.runHealthchecksWithDetailedReport();
+	}
+
+	/**
+	 * Run the registered healthchecks of a group and produce a detailed report
+	 * 
+	 * @param group
+	 *            the group of the checks, e.g. {@link #LIVENESS_GROUP}; null
+	 *            to run all the checks
+	 * @return a map with one entry per executed check. For each check, it
+	 *         indicates if it is healthy or not
+	 */
+	public static Map<String, HealthCheckResult> runGroupWithDetailedReport(
+			String group) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		return managerInstance.runHealthchecksWithDetailedReport(group, null);
+	}
+
+	/**
+	 * Run all the registered healthchecks and produce a detailed report. The
+	 * listener is notified of each result as soon as its check completes.
+	 * 
+	 * @param listener
+	 *            the listener of the results, can be null
+	 * @return a map with one entry per executed check. For each check, it
+	 *         indicates if it is healthy or not
+	 */
+	public static Map<String, HealthCheckResult> runHealthchecksWithDetailedReport(
+			HealthCheckListener listener) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		return managerInstance.runHealthchecksWithDetailedReport(listener);
+	}
+
+	/**
+	 * Get the percentiles of the execution times of a check over the latency
+	 * window, without executing it
+	 * 
+	 * @param checkName
+	 *            the name of the check
+	 * @return the latency of the check, or null if it has never been executed
+	 */
+	public static HealthCheckLatency getLatency(String checkName) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		return managerInstance.getLatency(checkName);
+	}
+
+	/**
+	 * Get the last results of a check and whether it is flapping, without
+	 * executing it
+	 * 
+	 * @param checkName
+	 *            the name of the check
+	 * @return the history of the check, or null if it has never been executed
+	 *         or no history is kept
+	 */
+	public static HealthCheckHistory getHistory(String checkName) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		return managerInstance.getHistory(checkName);
+	}
+
+	/**
+	 * Load the available checks (SPI and factories) in the background, so
+	 * that the first call needing them does not wait for their loading
+	 * 
+	 * @return the future available checks
+	 */
+	public static Future<Collection<HealthCheck>> warmUp() {
+		if (managerInstance == null) {
+			createManager();
+		}
+		return managerInstance.warmUp();
+	}
+
+	/**
+	 * Walk the providers again (e.g. the JNDI tree for the datasources) and
+	 * apply the differences: the checks which are not given anymore are
+	 * deactivated, the new ones are activated. The runs in progress are not
+	 * interrupted.
+	 * 
+	 * @return true if the available checks have changed
+	 */
+	public static boolean rediscover() {
+		if (managerInstance == null) {
+			createManager();
+		}
+		return managerInstance.rediscover();
+	}
+
+	/**
+	 * Deactivate a previously registered check
+	 * 
+	 * @param checkName
+	 *            the name of the check; if null, the method does nothing.
+	 */
+	public static void deactivateCheck(String checkName) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.deactivateCheck(checkName);
+	}
+
+	/**
+	 * Deactivate a set of previously registered checks
+	 * 
+	 * @param checkNames
+	 *            the name of the checks; if null, the method does nothing.
+	 */
+	public static void deactivateChecks(String... checkNames) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.deactivateChecks(checkNames);
+	}
+
+	/**
+	 * Deactivate all the registered checks
+	 * 
+	 */
+	public static void deactivateAllChecks() {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.deactivateAllChecks();
+	}
+
+	/**
+	 * Activate a previously unregistered check
+	 * 
+	 * @param checkName
+	 *            the name of the check; if null, the method does nothing.
+	 */
+	public static void activateCheck(String checkName) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.activateCheck(checkName);
+	}
+
+	/**
+	 * Activate a set of previously unregistered checks
+	 * 
+	 * @param checkNames
+	 *            the name of the checks; if null, the method does nothing.
+	 */
+	public static void activateChecks(String... checkNames) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.activateChecks(checkNames);
+	}
+
+	/**
+	 * Run the checks in parallel with the given executor
+	 * 
+	 * @param executorService
+	 *            the executor used to run the checks; if null, the checks are
+	 *            executed sequentially
+	 */
+	public static void setExecutorService(ExecutorService executorService) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.setExecutorService(executorService);
+	}
+
+	/**
+	 * Reuse the results of a run during the given time
+	 * 
+	 * @param ttl
+	 *            the time in milliseconds, 0 to share the results only with
+	 *            the runs started while the checks are executed
+	 */
+	public static void setResultTtl(long ttl) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.setResultTtl(ttl);
+	}
+
+	/**
+	 * 
+	 * @return true if the results are reused by several runs (the scheduler
+	 *         is started or a result TTL is set): successive runs can then
+	 *         return the same results, and produce the same reports
+	 */
+	public static boolean areResultsReused() {
+		if (managerInstance == null) {
+			createManager();
+		}
+		return managerInstance.areResultsReused();
+	}
+
+	/**
+	 * Set the groups of a check, in addition to the ones declared by the check
+	 * itself
+	 * 
+	 * @param checkName
+	 *            the name of the check
+	 * @param groups
+	 *            the groups of the check, none to remove the groups
+	 */
+	public static void setGroups(String checkName, String... groups) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.setGroups(checkName, groups);
+	}
+
+	/**
+	 * Set the checks a check depends on, in addition to the ones declared by
+	 * the check itself
+	 * 
+	 * @param checkName
+	 *            the name of the check
+	 * @param dependencies
+	 *            the names of the upstream checks, none to remove the
+	 *            dependencies
+	 */
+	public static void setDependencies(String checkName,
+			String... dependencies) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.setDependencies(checkName, dependencies);
+	}
+
+	/**
+	 * Execute the registered checks in the background. Afterwards,
+	 * {@link #runHealthchecksWithDetailedReport()} returns the last known
+	 * results without executing the checks.
+	 * 
+	 * @param interval
+	 *            the default interval in milliseconds between two executions
+	 *            of a check
+	 */
+	public static void startScheduler(long interval) {
+		if (managerInstance == null) {
+			createManager();
+		}
+		managerInstance.startScheduler(interval);
+	}
+
+	/**
+	 * Stop the background execution of the checks
+	 * 
+	 */
+	public static void stopScheduler() {
+		if (managerInstance != null) {
+			managerInstance.stopScheduler();
+		}
+	}
+
+	/**
+	 * Release the resources (threads, pooled http connections) held by the
+	 * health check manager. Must be called when the application is undeployed
+	 * 
+	 */
+	public static void shutdown() {
+		if (managerInstance != null) {
+			managerInstance.shutdown();
+		}
+		SimpleHttpCheck.shutdownConnectionPool();
+		AsyncHttpCheck.shutdownClient();
+	}
+
+	/**
+	 * 
+	 * @return the registry of the manager, created if needed
+	 */
+	static CustomHealthCheckRegistry getRegistry() {
+		if (managerInstance == null) {
+			createManager();
+		}
+		return managerInstance;
+	}
+
+	/**
+	 * Create our HealthCheckLocatorUnit instance
+	 * 
+	 */
+	private static CustomHealthCheckRegistry createManager() {
+		return createManager(null);
+	}
+
+	/**
+	 * Create our HealthCheckLocatorUnit instance
+	 * 
+	 */
+	private static CustomHealthCheckRegistry createManager(
+			Map<String, String> environment) {
+		// double check locking to be thread safe
+		try {
+			initializationLock.lock();
+			if (managerInstance == null) {
+				managerInstance = new CustomHealthCheckRegistry(environment);
+			}
+		} finally {
+			initializationLock.unlock();
+		}
+		return managerInstance;
+	}
+
+}
@@ -0,0 +1,125 @@
+package net.atos.xa.healthcheck;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 
+ * The last result of a check, the distribution of its execution times in
+ * fixed buckets since the start, its latency over a sliding window and the
+ * history of its last results. Recording a result does not allocate; only the
+ * history is locked, per check.
+ * 
+ * 
+ */
+final class HealthCheckMetrics {
+
+	/** the upper bounds (inclusive) of the buckets in milliseconds */
+	static final long[] BUCKET_BOUNDS = { 5, 10, 25, 50, 100, 250, 500, 1000,
+			2500, 5000, 10000 };
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private volatile HealthCheckResult lastResult;
+
+	/** the count per bucket, the last one for the times above all the bounds */
+	private final AtomicLongArray buckets = new AtomicLongArray(
+			BUCKET_BOUNDS.length + 1);
+
+	/** the sum of the execution times in nanoseconds */
+	private final AtomicLong sum = new AtomicLong();
+
+	private final LatencyWindow latencyWindow;
+
+	/** the last results, null if no history is kept */
+	private final ResultHistory history;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param latencyWindow
+	 *            the duration in milliseconds of the window of the latency
+	 */
+	HealthCheckMetrics(long latencyWindow) {
+		this(latencyWindow, null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param latencyWindow
+	 *            the duration in milliseconds of the window of the latency
+	 * @param history
+	 *            the history of the last results, can be null
+	 */
+	HealthCheckMetrics(long latencyWindow, ResultHistory history) {
+		this.latencyWindow = new LatencyWindow(latencyWindow);
+		this.history = history;
+	}
+
+	/**
+	 * Record the result of an execution of the check
+	 * 
+	 * @param result
+	 *            the result
+	 * @return true if the check has started flapping with this result
+	 */
+	boolean record(HealthCheckResult result) {
+		long executionTime = Math.max(result.getExecutionTimeNanos(), 0);
+		int index = 0;
+		while (index < BUCKET_BOUNDS.length
+				&& executionTime > BUCKET_BOUNDS[index] * NANOS_PER_MILLI) {
+			index++;
+		}
+		buckets.incrementAndGet(index);
+		sum.addAndGet(executionTime);
+		latencyWindow.record(executionTime);
+		lastResult = result;
+		return history != null && history.record(result);
+	}
+
+	/**
+	 * 
+	 * @return the last result, or null if the check has not been executed yet
+	 */
+	HealthCheckResult getLastResult() {
+		return lastResult;
+	}
+
+	/**
+	 * 
+	 * @param index
+	 *            the index of the bucket, {@link #BUCKET_BOUNDS} length for
+	 *            the times above all the bounds
+	 * @return the number of executions in the bucket (not cumulative)
+	 */
+	long getBucketCount(int index) {
+		return buckets.get(index);
+	}
+
+	/**
+	 * 
+	 * @return the sum of the execution times in nanoseconds
+	 */
+	long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * 
+	 * @return the percentiles of the execution times over the sliding window
+	 */
+	HealthCheckLatency getLatency() {
+		return latencyWindow.getLatency();
+	}
+
+	/**
+	 * 
+	 * @return the last results, or null if no history is kept
+	 */
+	HealthCheckHistory getHistory() {
+		return history == null ? null : history.snapshot(System
+				.currentTimeMillis());
+	}
+
+}
@@ -0,0 +1,202 @@
+package net.atos.xa.healthcheck;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 
+ * Expose the last result and the execution times of the registered checks in
+ * the <a href="https://openmetrics.io">OpenMetrics</a> text format (also read
+ * by Prometheus):
+ * 
+ * <pre>
+ * # TYPE healthcheck_status gauge
+ * # HELP healthcheck_status Result of the last execution of the check, 1 if healthy, 0 otherwise.
+ * healthcheck_status{check="check1"} 1
+ * # TYPE healthcheck_execution_seconds histogram
+ * # UNIT healthcheck_execution_seconds seconds
+ * # HELP healthcheck_execution_seconds Execution time of the check.
+ * healthcheck_execution_seconds_bucket{check="check1",le="0.005"} 0
+ * ...
+ * healthcheck_execution_seconds_bucket{check="check1",le="+Inf"} 3
+ * healthcheck_execution_seconds_sum{check="check1"} 0.036
+ * healthcheck_execution_seconds_count{check="check1"} 3
+ * # EOF
+ * </pre>
+ * 
+ * The checks are not executed: the report is made of the results of the
+ * previous runs (or of the scheduler), a check never executed is not reported.
+ * The report is rendered in a buffer reused from one call to the other, a
+ * single instance should be kept by the caller. The report is rendered under
+ * the lock of the instance, then written by each caller outside of it, so
+ * that a slow scraper does not block the other ones.
+ * 
+ */
+public class HealthCheckOpenMetricsReport {
+
+	/** the content type of the report */
+	public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	private static final String STATUS = "healthcheck_status";
+
+	private static final String EXECUTION = "healthcheck_execution_seconds";
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	/** the "le" label of each bucket, in seconds */
+	private static final String[] BUCKET_LABELS = new String[HealthCheckMetrics.BUCKET_BOUNDS.length];
+
+	static {
+		for (int i = 0; i < BUCKET_LABELS.length; i++) {
+			BUCKET_LABELS[i] = Double
+					.toString(HealthCheckMetrics.BUCKET_BOUNDS[i] / 1000d);
+		}
+	}
+
+	private final StringBuilder buffer = new StringBuilder(4096);
+
+	/** the rendered report of each calling thread, written outside the lock */
+	private final ThreadLocal<char[][]> rendered = new ThreadLocal<char[][]>() {
+		@Override
+		protected char[][] initialValue() {
+			return new char[][] { new char[4096] };
+		}
+	};
+
+	/**
+	 * Write the report of the checks registered in the
+	 * {@link HealthCheckManager}
+	 * 
+	 * @param writer
+	 *            the writer, neither flushed nor closed
+	 * @throws IOException
+	 *             if the report cannot be written
+	 */
+	public void writeTo(Writer writer) throws IOException {
+		writeTo(writer, HealthCheckManager.getRegistry());
+	}
+
+	void writeTo(Writer writer, CustomHealthCheckRegistry registry)
+			throws IOException {
+		char[][] chars = rendered.get();
+		int length = render(registry, chars);
+		writer.write(chars[0], 0, length);
+	}
+
+	/**
+	 * Render the report in the buffer and copy it in the array of the calling
+	 * thread
+	 * 
+	 * @param chars
+	 *            the array of the calling thread, replaced by a larger one if
+	 *            needed
+	 * @return the length of the report
+	 */
+	private synchronized int render(CustomHealthCheckRegistry registry,
+			char[][] chars) {
+		render(registry);
+		int length = buffer.length();
+		if (chars[0].length < length) {
+			chars[0] = new char[Math.max(length, chars[0].length * 2)];
+		}
+		buffer.getChars(0, length, chars[0], 0);
+		return length;
+	}
+
+	private void render(CustomHealthCheckRegistry registry) {
+		buffer.setLength(0);
+		HealthCheckSnapshot checks = registry.getRegisteredHealthChecks();
+
+		buffer.append("# TYPE ").append(STATUS).append(" gauge\n");
+		buffer.append("# HELP ")
+				.append(STATUS)
+				.append(" Result of the last execution of the check, 1 if healthy, 0 otherwise.\n");
+		for (int i = 0; i < checks.size(); i++) {
+			HealthCheckMetrics metrics = registry.getMetrics(checks.getName(i));
+			HealthCheckResult result = metrics == null ? null : metrics
+					.getLastResult();
+			if (result != null) {
+				appendName(STATUS, null, checks.getName(i), null);
+				buffer.append(result.isHealthy() ? " 1\n" : " 0\n");
+			}
+		}
+
+		buffer.append("# TYPE ").append(EXECUTION).append(" histogram\n");
+		buffer.append("# UNIT ").append(EXECUTION).append(" seconds\n");
+		buffer.append("# HELP ").append(EXECUTION)
+				.append(" Execution time of the check.\n");
+		for (int i = 0; i < checks.size(); i++) {
+			String name = checks.getName(i);
+			HealthCheckMetrics metrics = registry.getMetrics(name);
+			if (metrics == null) {
+				continue;
+			}
+			// the count is the sum of the buckets read, so that it is
+			// consistent with them while results are recorded
+			long count = 0;
+			for (int j = 0; j < BUCKET_LABELS.length; j++) {
+				count += metrics.getBucketCount(j);
+				appendName(EXECUTION, "_bucket", name, BUCKET_LABELS[j]);
+				buffer.append(' ').append(count).append('\n');
+			}
+			count += metrics.getBucketCount(BUCKET_LABELS.length);
+			appendName(EXECUTION, "_bucket", name, "+Inf");
+			buffer.append(' ').append(count).append('\n');
+
+			appendName(EXECUTION, "_sum", name, null);
+			buffer.append(' ');
+			appendSeconds(metrics.getSum());
+			buffer.append('\n');
+
+			appendName(EXECUTION, "_count", name, null);
+			buffer.append(' ').append(count).append('\n');
+		}
+
+		buffer.append("# EOF\n");
+	}
+
+	private void appendName(String metric, String suffix, String check,
+			String le) {
+		buffer.append(metric);
+		if (suffix != null) {
+			buffer.append(suffix);
+		}
+		buffer.append("{check=\"");
+		for (int i = 0; i < check.length(); i++) {
+			char c = check.charAt(i);
+			if (c == '\\' || c == '"') {
+				buffer.append('\\').append(c);
+			} else if (c == '\n') {
+				buffer.append("\\n");
+			} else {
+				buffer.append(c);
+			}
+		}
+		buffer.append('"');
+		if (le != null) {
+			buffer.append(",le=\"").append(le).append('"');
+		}
+		buffer.append('}');
+	}
+
+	/**
+	 * append a time in nanoseconds as seconds, without going through a
+	 * floating point number
+	 */
+	private void appendSeconds(long nanos) {
+		buffer.append(nanos / NANOS_PER_SECOND).append('.');
+		long fraction = nanos % NANOS_PER_SECOND;
+		if (fraction == 0) {
+			buffer.append('0');
+			return;
+		}
+		// leading zeros of the 9 digits of the fraction
+		for (long limit = NANOS_PER_SECOND / 10; fraction < limit; limit /= 10) {
+			buffer.append('0');
+		}
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+		}
+		buffer.append(fraction);
+	}
+}
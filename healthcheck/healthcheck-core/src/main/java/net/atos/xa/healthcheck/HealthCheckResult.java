@@ -1,65 +1,137 @@
-package net.atos.xa.healthcheck;
-
-import com.yammer.metrics.core.HealthCheck.Result;
-
-/**
- * Wrap the result from Healthcheck
- * 
- */
-public class HealthCheckResult {
-
-	private Result result;
-
-	private long executionTime;
-
-	public HealthCheckResult(Result result, long executionTime) {
-		this.executionTime = executionTime;
-		this.result = result;
-	}
-
-	public Result getResult() {
-		return result;
-	}
-
-	public void setResult(Result result) {
-		this.result = result;
-	}
-
-	public long getExecutionTime() {
-		return executionTime;
-	}
-
-	public void setExecutionTime(long executionTime) {
-		this.executionTime = executionTime;
-	}
-
-	/**
-	 * Returns {@code true} if the result indicates the component is healthy;
-	 * {@code false} otherwise.
-	 * 
-	 * @return {@code true} if the result indicates the component is healthy
-	 */
-	public boolean isHealthy() {
-		return result.isHealthy();
-	}
-
-	/**
-	 * Returns any additional message for the result, or {@code null} if the
-	 * result has no message.
-	 * 
-	 * @return any additional message for the result, or {@code null}
-	 */
-	public String getMessage() {
-		return result.getMessage();
-	}
-
-	/**
-	 * Returns any exception for the result, or {@code null} if the result has
-	 * no exception.
-	 * 
-	 * @return any exception for the result, or {@code null}
-	 */
-	public Throwable getError() {
-		return result.getError();
-	}
-}
+package net.atos.xa.healthcheck;
+
+import java.util.concurrent.TimeUnit;
+
+import com.yammer.metrics.core.HealthCheck.Result;
+
+/**
+ * Wrap the result from Healthcheck
+ * 
+ */
+public class HealthCheckResult {
+
+	private Result result;
+
+	private long executionTime;
+
+	/** the execution time in nanoseconds, measured with a monotonic clock */
+	private long executionTimeNanos;
+
+	/** the time (in milliseconds since epoch) when the check has been executed */
+	private long timestamp;
+
+	public HealthCheckResult(Result result, long executionTime) {
+		this(result, executionTime, System.currentTimeMillis());
+	}
+
+	public HealthCheckResult(Result result, long executionTime, long timestamp) {
+		this.executionTime = executionTime;
+		this.executionTimeNanos = TimeUnit.MILLISECONDS.toNanos(executionTime);
+		this.result = result;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Create a result from an execution time measured with
+	 * {@link System#nanoTime()}
+	 * 
+	 * @param result
+	 *            the result of the check
+	 * @param executionTimeNanos
+	 *            the execution time in nanoseconds
+	 * @return the result
+	 */
+	static HealthCheckResult ofNanos(Result result, long executionTimeNanos) {
+		HealthCheckResult healthCheckResult = new HealthCheckResult(result,
+				TimeUnit.NANOSECONDS.toMillis(executionTimeNanos));
+		healthCheckResult.executionTimeNanos = executionTimeNanos;
+		return healthCheckResult;
+	}
+
+	public Result getResult() {
+		return result;
+	}
+
+	public void setResult(Result result) {
+		this.result = result;
+	}
+
+	/**
+	 * Returns the execution time of the check, truncated to the millisecond
+	 * 
+	 * @return the execution time in milliseconds
+	 */
+	public long getExecutionTime() {
+		return executionTime;
+	}
+
+	public void setExecutionTime(long executionTime) {
+		this.executionTime = executionTime;
+		this.executionTimeNanos = TimeUnit.MILLISECONDS.toNanos(executionTime);
+	}
+
+	/**
+	 * Returns the execution time of the check measured with a monotonic clock,
+	 * a check faster than one millisecond has an execution time of 0 ms but
+	 * not of 0 ns
+	 * 
+	 * @return the execution time in nanoseconds
+	 */
+	public long getExecutionTimeNanos() {
+		return executionTimeNanos;
+	}
+
+	/**
+	 * Returns the time when the check has been executed
+	 * 
+	 * @return the time in milliseconds since epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Returns the age of this result, useful to detect stale results when the
+	 * checks are executed in the background
+	 * 
+	 * @return the time elapsed in milliseconds since the check has been
+	 *         executed
+	 */
+	public long getAge() {
+		return System.currentTimeMillis() - timestamp;
+	}
+
+	/**
+	 * Returns {@code true} if the result indicates the component is healthy;
+	 * {@code false} otherwise.
+	 * 
+	 * @return {@code true} if the result indicates the component is healthy
+	 */
+	public boolean isHealthy() {
+		return result.isHealthy();
+	}
+
+	/**
+	 * Returns any additional message for the result, or {@code null} if the
+	 * result has no message.
+	 * 
+	 * @return any additional message for the result, or {@code null}
+	 */
+	public String getMessage() {
+		return result.getMessage();
+	}
+
+	/**
+	 * Returns any exception for the result, or {@code null} if the result has
+	 * no exception.
+	 * 
+	 * @return any exception for the result, or {@code null}
+	 */
+	public Throwable getError() {
+		return result.getError();
+	}
+}
@@ -0,0 +1,214 @@
+package net.atos.xa.healthcheck;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ *
+ * Execute the registered checks in the background, each one at its own
+ * interval, and keep the last known result of each check.
+ *
+ *
+ */
+class HealthCheckScheduler {
+
+	/** the logger */
+	private static Logger log = LoggerFactory
+			.getLogger(HealthCheckScheduler.class.getName());
+
+	private final CustomHealthCheckRegistry registry;
+
+	private final ScheduledExecutorService scheduledExecutorService;
+
+	/** the default interval between two executions of a check */
+	private final long defaultInterval;
+
+	/** the interval in milliseconds per check name */
+	private final Map<String, Long> intervals;
+
+	private final ConcurrentMap<String, ScheduledCheck> scheduledChecks = new ConcurrentHashMap<String, ScheduledCheck>();
+
+	private final ConcurrentMap<String, HealthCheckResult> lastResults = new ConcurrentHashMap<String, HealthCheckResult>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param registry
+	 *            the registry used to execute the checks
+	 * @param threads
+	 *            the number of threads of the scheduler
+	 * @param defaultInterval
+	 *            the default interval in milliseconds between two executions
+	 *            of a check
+	 * @param intervals
+	 *            the interval in milliseconds per check name, overrides the
+	 *            default interval
+	 */
+	HealthCheckScheduler(CustomHealthCheckRegistry registry, int threads,
+			long defaultInterval, Map<String, Long> intervals) {
+		this.registry = registry;
+		this.defaultInterval = defaultInterval;
+		this.intervals = intervals;
+		this.scheduledExecutorService = Executors.newScheduledThreadPool(
+				Math.max(threads, 1), new SchedulerThreadFactory());
+	}
+
+	/**
+	 * Execute periodically a check. The first execution is done immediately.
+	 *
+	 * @param healthCheck
+	 *            the check
+	 */
+	void schedule(HealthCheck healthCheck) {
+		String name = healthCheck.getName();
+		Long interval = intervals.get(name);
+		long period = interval == null ? defaultInterval : interval
+				.longValue();
+
+		log.debug("[HealthCheck] schedule the check {} every {} ms", name,
+				period);
+
+		ScheduledCheck scheduledCheck = new ScheduledCheck(name, healthCheck);
+		scheduledCheck.future = scheduledExecutorService.scheduleWithFixedDelay(
+				scheduledCheck, 0, period, TimeUnit.MILLISECONDS);
+
+		ScheduledCheck previous = scheduledChecks.put(name, scheduledCheck);
+		if (previous != null) {
+			previous.cancel();
+		}
+	}
+
+	/**
+	 * Stop the periodic execution of a check and forget its last result
+	 *
+	 * @param name
+	 *            the name of the check
+	 */
+	void cancel(String name) {
+		ScheduledCheck scheduledCheck = scheduledChecks.remove(name);
+		if (scheduledCheck != null) {
+			scheduledCheck.cancel();
+		}
+		lastResults.remove(name);
+	}
+
+	/**
+	 * Stop the periodic execution of all the checks
+	 */
+	void cancelAll() {
+		for (String name : scheduledChecks.keySet()) {
+			cancel(name);
+		}
+	}
+
+	/**
+	 * Get the last known result of a check
+	 *
+	 * @param name
+	 *            the name of the check
+	 * @return the last result, or null if the check has not been executed yet
+	 */
+	HealthCheckResult getLastResult(String name) {
+		return lastResults.get(name);
+	}
+
+	/**
+	 * Store the result of a check executed outside of the scheduler
+	 *
+	 * @param name
+	 *            the name of the check
+	 * @param result
+	 *            the result
+	 */
+	void putLastResult(String name, HealthCheckResult result) {
+		if (scheduledChecks.containsKey(name)
+				&& lastResults.putIfAbsent(name, result) == null
+				&& !scheduledChecks.containsKey(name)) {
+			// cancelled meanwhile
+			lastResults.remove(name, result);
+		}
+	}
+
+	/**
+	 * Stop the scheduler, the checks being executed are interrupted
+	 */
+	void shutdown() {
+		cancelAll();
+		scheduledExecutorService.shutdownNow();
+	}
+
+	/**
+	 * The periodic execution of a check
+	 */
+	private class ScheduledCheck implements Runnable {
+
+		private final String name;
+
+		private final HealthCheck healthCheck;
+
+		private volatile ScheduledFuture<?> future;
+
+		/**
+		 * set before the result of the check is forgotten, a run in progress
+		 * does not keep its result
+		 */
+		private volatile boolean cancelled;
+
+		ScheduledCheck(String name, HealthCheck healthCheck) {
+			this.name = name;
+			this.healthCheck = healthCheck;
+		}
+
+		public void run() {
+			try {
+				HealthCheckResult result = registry.skipIfUpstreamUnhealthy(
+						name, healthCheck, lastResults);
+				if (result == null) {
+					result = registry.runCheck(name, healthCheck);
+				}
+				registry.recordResult(name, result);
+				lastResults.put(name, result);
+				if (cancelled) {
+					// the result has been put after the cancellation
+					lastResults.remove(name, result);
+				}
+			} catch (RuntimeException e) {
+				// never let an exception cancel the next executions
+				log.error("[HealthCheck] error when executing the check "
+						+ name, e);
+			}
+		}
+
+		void cancel() {
+			cancelled = true;
+			ScheduledFuture<?> scheduledFuture = future;
+			if (scheduledFuture != null) {
+				scheduledFuture.cancel(false);
+			}
+		}
+	}
+
+	private static class SchedulerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "healthcheck-scheduler-"
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
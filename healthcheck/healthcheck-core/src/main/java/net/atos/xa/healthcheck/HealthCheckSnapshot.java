@@ -0,0 +1,199 @@
+package net.atos.xa.healthcheck;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * 
+ * An immutable set of checks sorted by name. The registry never modifies a
+ * snapshot: a new one is built and swapped atomically when a check is
+ * registered or deactivated, so that the runs iterate the checks without
+ * locking and without sorting them again.
+ * 
+ * 
+ */
+final class HealthCheckSnapshot {
+
+	/** the snapshot without any check */
+	static final HealthCheckSnapshot EMPTY = new HealthCheckSnapshot(
+			new String[0], new HealthCheck[0]);
+
+	/** the sorted names, must never be modified */
+	private final String[] names;
+
+	/** the checks, in the order of their names */
+	private final HealthCheck[] checks;
+
+	private HealthCheckSnapshot(String[] names, HealthCheck[] checks) {
+		this.names = names;
+		this.checks = checks;
+	}
+
+	/**
+	 * Build a snapshot from a collection of checks. If several checks have the
+	 * same name, the last one is kept.
+	 * 
+	 * @param healthChecks
+	 *            the checks, can be null
+	 * @return the snapshot
+	 */
+	static HealthCheckSnapshot of(Collection<HealthCheck> healthChecks) {
+		if (healthChecks == null || healthChecks.isEmpty()) {
+			return EMPTY;
+		}
+		TreeMap<String, HealthCheck> sorted = new TreeMap<String, HealthCheck>();
+		for (HealthCheck healthCheck : healthChecks) {
+			sorted.put(healthCheck.getName(), healthCheck);
+		}
+		return new HealthCheckSnapshot(
+				sorted.keySet().toArray(new String[sorted.size()]), sorted
+						.values().toArray(new HealthCheck[sorted.size()]));
+	}
+
+	/**
+	 * 
+	 * @return the number of checks
+	 */
+	int size() {
+		return checks.length;
+	}
+
+	/**
+	 * 
+	 * @param index
+	 *            the index of the check
+	 * @return the name of the check at the given index
+	 */
+	String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * 
+	 * @param index
+	 *            the index of the check
+	 * @return the check at the given index
+	 */
+	HealthCheck getCheck(int index) {
+		return checks[index];
+	}
+
+	/**
+	 * 
+	 * @return the sorted names of the checks, the array must not be modified
+	 */
+	String[] getNames() {
+		return names;
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of a check
+	 * @return the check with the given name, or null if not found
+	 */
+	HealthCheck get(String name) {
+		int index = name == null ? -1 : Arrays.binarySearch(names, name);
+		return index < 0 ? null : checks[index];
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of a check
+	 * @return the index of the check with the given name, or a negative
+	 *         value if not found
+	 */
+	int indexOf(String name) {
+		return name == null ? -1 : Arrays.binarySearch(names, name);
+	}
+
+	/**
+	 * 
+	 * @return an unmodifiable list of the checks sorted by name
+	 */
+	List<HealthCheck> asList() {
+		return Collections.unmodifiableList(Arrays.asList(checks));
+	}
+
+	/**
+	 * 
+	 * @param healthCheck
+	 *            the check to add
+	 * @return a snapshot containing the check, or this snapshot if a check
+	 *         with the same name already exists
+	 */
+	HealthCheckSnapshot with(HealthCheck healthCheck) {
+		int index = Arrays.binarySearch(names, healthCheck.getName());
+		if (index >= 0) {
+			return this;
+		}
+		int insertion = -(index + 1);
+
+		String[] newNames = new String[names.length + 1];
+		HealthCheck[] newChecks = new HealthCheck[checks.length + 1];
+		System.arraycopy(names, 0, newNames, 0, insertion);
+		System.arraycopy(checks, 0, newChecks, 0, insertion);
+		newNames[insertion] = healthCheck.getName();
+		newChecks[insertion] = healthCheck;
+		System.arraycopy(names, insertion, newNames, insertion + 1,
+				names.length - insertion);
+		System.arraycopy(checks, insertion, newChecks, insertion + 1,
+				checks.length - insertion);
+		return new HealthCheckSnapshot(newNames, newChecks);
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of the check to remove
+	 * @return a snapshot without the check, or this snapshot if there is no
+	 *         check with this name
+	 */
+	HealthCheckSnapshot without(String name) {
+		int index = name == null ? -1 : Arrays.binarySearch(names, name);
+		if (index < 0) {
+			return this;
+		}
+		if (names.length == 1) {
+			return EMPTY;
+		}
+
+		String[] newNames = new String[names.length - 1];
+		HealthCheck[] newChecks = new HealthCheck[checks.length - 1];
+		System.arraycopy(names, 0, newNames, 0, index);
+		System.arraycopy(checks, 0, newChecks, 0, index);
+		System.arraycopy(names, index + 1, newNames, index, names.length
+				- index - 1);
+		System.arraycopy(checks, index + 1, newChecks, index, checks.length
+				- index - 1);
+		return new HealthCheckSnapshot(newNames, newChecks);
+	}
+
+	/**
+	 * Two snapshots are equal if they contain the same check instances
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof HealthCheckSnapshot)) {
+			return false;
+		}
+		HealthCheckSnapshot other = (HealthCheckSnapshot) obj;
+		return Arrays.equals(names, other.names)
+				&& Arrays.equals(checks, other.checks);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(names);
+	}
+
+}
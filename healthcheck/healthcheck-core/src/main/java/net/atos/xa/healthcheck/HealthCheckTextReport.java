@@ -0,0 +1,198 @@
+package net.atos.xa.healthcheck;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 
+ * Render the textual report of {@link HealthCheckReport} without formatting
+ * it: the report is written in a buffer reused from one call to the other,
+ * the beginning of the line of each check is computed once, and the date of
+ * the execution is rendered once per second. A single instance should be kept
+ * by the caller, e.g. a servlet answering frequent probes: the report is
+ * rendered under the lock of the instance, then written by each caller
+ * outside of it, so that a slow client does not block the other ones.
+ * 
+ * The output is the same as
+ * {@link HealthCheckReport#produceReport(PrintWriter, Map, boolean)}.
+ * 
+ */
+public class HealthCheckTextReport {
+
+	/** the maximum number of check names whose line beginnings are kept */
+	private static final int MAX_PREFIXES = 1024;
+
+	private static final String LINE_SEPARATOR = System
+			.getProperty("line.separator");
+
+	private final StringBuilder buffer = new StringBuilder(4096);
+
+	/** the rendered report of each calling thread, written outside the lock */
+	private final ThreadLocal<RenderedReport> rendered = new ThreadLocal<RenderedReport>() {
+		@Override
+		protected RenderedReport initialValue() {
+			return new RenderedReport();
+		}
+	};
+
+	/** "* &lt;name&gt;=OK (executed at " by check name */
+	private final Map<String, String> healthyPrefixes = new HashMap<String, String>();
+
+	/** "! &lt;name&gt;=ERROR in  " by check name */
+	private final Map<String, String> unhealthyPrefixes = new HashMap<String, String>();
+
+	/** the second of the last date rendered */
+	private long dateSecond = Long.MIN_VALUE;
+
+	/** the last date rendered, as {@link Date#toString()} */
+	private String date;
+
+	/**
+	 * Write the report of the given results
+	 * 
+	 * @param writer
+	 *            the writer, neither flushed nor closed
+	 * @param results
+	 *            the results
+	 * @param history
+	 *            true to add the last statuses of each check kept by the
+	 *            {@link HealthCheckManager}
+	 */
+	public void writeTo(PrintWriter writer,
+			Map<String, HealthCheckResult> results, boolean history) {
+		writeTo(writer, results,
+				history ? HealthCheckManager.getRegistry() : null);
+	}
+
+	/**
+	 * Write the report of the given results
+	 * 
+	 * @param writer
+	 *            the writer, neither flushed nor closed
+	 * @param results
+	 *            the results
+	 * @param registry
+	 *            the registry keeping the history of the checks, null to
+	 *            write the report without history
+	 */
+	void writeTo(PrintWriter writer, Map<String, HealthCheckResult> results,
+			CustomHealthCheckRegistry registry) {
+		if (results.isEmpty()) {
+			writer.println("! No health checks registered.");
+			return;
+		}
+		RenderedReport report = rendered.get();
+		render(results, registry, report);
+		writer.write(report.chars, 0, report.length);
+	}
+
+	/**
+	 * Render the report in the buffer and copy it in the report of the
+	 * calling thread
+	 */
+	private synchronized void render(Map<String, HealthCheckResult> results,
+			CustomHealthCheckRegistry registry, RenderedReport report) {
+		buffer.setLength(0);
+		for (Map.Entry<String, HealthCheckResult> entry : results.entrySet()) {
+			String name = entry.getKey();
+			HealthCheckResult result = entry.getValue();
+			if (result.isHealthy()) {
+				buffer.append(getPrefix(healthyPrefixes, "* ", name,
+						"=OK (executed at "));
+				appendDate(result.getTimestamp());
+				buffer.append(") in ").append(result.getExecutionTime())
+						.append("ms\n");
+				if (result.getMessage() != null) {
+					buffer.append("  ").append(result.getMessage())
+							.append('\n');
+				}
+			} else {
+				if (result.getMessage() != null) {
+					buffer.append(getPrefix(unhealthyPrefixes, "! ", name,
+							"=ERROR in  "));
+					buffer.append(result.getExecutionTime()).append("ms\n!  ")
+							.append(result.getMessage()).append('\n');
+				}
+
+				@SuppressWarnings("ThrowableResultOfMethodCallIgnored")
+				final Throwable error = result.getError();
+				if (error != null) {
+					StringWriter trace = new StringWriter();
+					error.printStackTrace(new PrintWriter(trace));
+					buffer.append(LINE_SEPARATOR).append(trace.getBuffer())
+							.append(LINE_SEPARATOR);
+				}
+			}
+			if (registry != null) {
+				appendHistory(registry.getHistory(name), result.isHealthy());
+			}
+		}
+		report.copy(buffer);
+	}
+
+	private String getPrefix(Map<String, String> prefixes, String start,
+			String name, String end) {
+		String prefix = prefixes.get(name);
+		if (prefix == null) {
+			if (prefixes.size() >= MAX_PREFIXES) {
+				prefixes.clear();
+			}
+			prefix = start + name + end;
+			prefixes.put(name, prefix);
+		}
+		return prefix;
+	}
+
+	/**
+	 * append a date as {@link Date#toString()}, which has no milliseconds
+	 */
+	private void appendDate(long timestamp) {
+		long second = timestamp >= 0 ? timestamp / 1000
+				: (timestamp - 999) / 1000;
+		if (second != dateSecond || date == null) {
+			date = new Date(timestamp).toString();
+			dateSecond = second;
+		}
+		buffer.append(date);
+	}
+
+	private void appendHistory(HealthCheckHistory history, boolean healthy) {
+		if (history == null || history.size() == 0) {
+			return;
+		}
+		if (!healthy) {
+			buffer.append('!');
+		}
+		buffer.append("  history: ");
+		for (int i = 0; i < history.size(); i++) {
+			buffer.append(history.isHealthy(i) ? '+' : '-');
+		}
+		buffer.append(" (").append(history.getTransitions())
+				.append(" status changes");
+		if (history.isFlapping()) {
+			buffer.append(", flapping");
+		}
+		buffer.append(")\n");
+	}
+
+	/**
+	 * A report rendered for a thread, reused by its next reports
+	 */
+	private static final class RenderedReport {
+
+		private char[] chars = new char[4096];
+
+		private int length;
+
+		void copy(StringBuilder buffer) {
+			length = buffer.length();
+			if (chars.length < length) {
+				chars = new char[Math.max(length, chars.length * 2)];
+			}
+			buffer.getChars(0, length, chars, 0);
+		}
+	}
+}
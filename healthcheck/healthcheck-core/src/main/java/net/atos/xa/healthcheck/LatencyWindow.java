@@ -0,0 +1,191 @@
+package net.atos.xa.healthcheck;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 
+ * The distribution of the execution times of a check over a sliding window,
+ * without lock.
+ * 
+ * The window is divided in {@link #SLICES} slices of time, each one has its
+ * own counters; the counters of a slice are reset when the slice is reused
+ * for a new period of time. The execution times are counted in logarithmic
+ * buckets of 8 sub-buckets per power of 2, so that a percentile is known with
+ * a relative error below 12.5% whatever the order of magnitude of the times.
+ * An execution recorded while its slice is reset may be lost, which is
+ * harmless for percentiles.
+ * 
+ * 
+ */
+final class LatencyWindow {
+
+	/** the number of slices of time in the window */
+	static final int SLICES = 6;
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * the highest power of 2 counted with precision (2^39 ns is about 9
+	 * minutes), the longer times are counted in the last bucket
+	 */
+	private static final int MAX_EXPONENT = 39;
+
+	/** the number of buckets of a slice, the last one for the longer times */
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2)
+			* SUB_BUCKETS + 1;
+
+	/** the duration of a slice in nanoseconds */
+	private final long sliceNanos;
+
+	/** the origin of the slice numbers, from {@link System#nanoTime()} */
+	private final long origin;
+
+	/** the number of the period of time counted by each slice, -1 if none */
+	private final AtomicLongArray periods = new AtomicLongArray(SLICES);
+
+	/** the counters of the buckets, slice after slice */
+	private final AtomicLongArray counts = new AtomicLongArray(SLICES
+			* BUCKETS);
+
+	/** the maximum time recorded in each slice */
+	private final AtomicLongArray maximums = new AtomicLongArray(SLICES);
+
+	/**
+	 * Constructor
+	 * 
+	 * @param window
+	 *            the duration of the window in milliseconds
+	 */
+	LatencyWindow(long window) {
+		this.sliceNanos = Math.max(
+				TimeUnit.MILLISECONDS.toNanos(window) / SLICES, 1);
+		this.origin = System.nanoTime();
+		for (int i = 0; i < SLICES; i++) {
+			periods.set(i, -1);
+		}
+	}
+
+	/**
+	 * Record an execution time
+	 * 
+	 * @param nanos
+	 *            the execution time in nanoseconds
+	 */
+	void record(long nanos) {
+		record(nanos, System.nanoTime());
+	}
+
+	void record(long nanos, long now) {
+		long value = Math.max(nanos, 0);
+		long period = (now - origin) / sliceNanos;
+		int slice = (int) (period % SLICES);
+
+		long current = periods.get(slice);
+		if (current < period && periods.compareAndSet(slice, current, period)) {
+			// the slice is reused, forget the previous period
+			int offset = slice * BUCKETS;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts.set(offset + i, 0);
+			}
+			maximums.set(slice, 0);
+		} else if (current > period) {
+			// recorded late, its slice has been reused already
+			return;
+		}
+
+		counts.incrementAndGet(slice * BUCKETS + indexOf(value));
+		long max;
+		do {
+			max = maximums.get(slice);
+		} while (value > max && !maximums.compareAndSet(slice, max, value));
+	}
+
+	/**
+	 * 
+	 * @return the percentiles of the times recorded in the window
+	 */
+	HealthCheckLatency getLatency() {
+		return getLatency(System.nanoTime());
+	}
+
+	HealthCheckLatency getLatency(long now) {
+		long period = (now - origin) / sliceNanos;
+		long[] merged = new long[BUCKETS];
+		long count = 0;
+		long max = 0;
+		for (int slice = 0; slice < SLICES; slice++) {
+			long slicePeriod = periods.get(slice);
+			if (slicePeriod < 0 || period - slicePeriod >= SLICES) {
+				continue;
+			}
+			int offset = slice * BUCKETS;
+			for (int i = 0; i < BUCKETS; i++) {
+				long bucketCount = counts.get(offset + i);
+				merged[i] += bucketCount;
+				count += bucketCount;
+			}
+			max = Math.max(max, maximums.get(slice));
+		}
+		return new HealthCheckLatency(count, percentile(merged, count, 0.50,
+				max), percentile(merged, count, 0.95, max), percentile(merged,
+				count, 0.99, max), max);
+	}
+
+	private static long percentile(long[] buckets, long count,
+			double percentile, long max) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(count * percentile);
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i];
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * 
+	 * @param value
+	 *            a time in nanoseconds, positive
+	 * @return the index of the bucket of the time
+	 */
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * 
+	 * @param index
+	 *            the index of a bucket
+	 * @return the highest time in nanoseconds counted in the bucket
+	 */
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		if (index == BUCKETS - 1) {
+			return Long.MAX_VALUE;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+
+}
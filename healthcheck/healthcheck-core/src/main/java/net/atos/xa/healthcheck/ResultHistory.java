@@ -0,0 +1,131 @@
+package net.atos.xa.healthcheck;
+
+/**
+ * 
+ * The last results of a check in a ring buffer of preallocated primitive
+ * arrays: recording a result neither allocates nor grows the memory, whatever
+ * the number of executions.
+ * 
+ * The check is flapping when its status has changed more than a given number
+ * of times within the flapping window. Only the results kept are counted: the
+ * window is bounded by the capacity, and at most capacity - 1 status changes
+ * can be seen.
+ * 
+ * 
+ */
+final class ResultHistory {
+
+	/** the execution times in milliseconds since epoch */
+	private final long[] timestamps;
+
+	/** the execution durations in nanoseconds */
+	private final long[] executionTimes;
+
+	private final boolean[] statuses;
+
+	/** the number of status changes above which the check is flapping */
+	private final int flappingTransitions;
+
+	/** the duration in milliseconds of the flapping window */
+	private final long flappingWindow;
+
+	/** the index of the next result to record */
+	private int next;
+
+	/** the number of results recorded, up to the capacity */
+	private int size;
+
+	private boolean flapping;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param capacity
+	 *            the number of results kept, at least 1
+	 * @param flappingTransitions
+	 *            the number of status changes within the window above which
+	 *            the check is flapping, 0 to disable the flapping detection
+	 * @param flappingWindow
+	 *            the duration in milliseconds of the flapping window
+	 */
+	ResultHistory(int capacity, int flappingTransitions, long flappingWindow) {
+		int length = Math.max(capacity, 1);
+		this.timestamps = new long[length];
+		this.executionTimes = new long[length];
+		this.statuses = new boolean[length];
+		this.flappingTransitions = flappingTransitions;
+		this.flappingWindow = flappingWindow;
+	}
+
+	/**
+	 * Record a result, the oldest one is dropped when the buffer is full
+	 * 
+	 * @param result
+	 *            the result
+	 * @return true if the check has started flapping with this result
+	 */
+	synchronized boolean record(HealthCheckResult result) {
+		timestamps[next] = result.getTimestamp();
+		executionTimes[next] = Math.max(result.getExecutionTimeNanos(), 0);
+		statuses[next] = result.isHealthy();
+		next = (next + 1) % statuses.length;
+		if (size < statuses.length) {
+			size++;
+		}
+
+		boolean wasFlapping = flapping;
+		flapping = isFlapping(countTransitions(result.getTimestamp()));
+		return flapping && !wasFlapping;
+	}
+
+	/**
+	 * 
+	 * @param now
+	 *            the current time in milliseconds since epoch
+	 * @return a copy of the history, oldest result first
+	 */
+	synchronized HealthCheckHistory snapshot(long now) {
+		long[] copiedTimestamps = new long[size];
+		long[] copiedExecutionTimes = new long[size];
+		boolean[] copiedStatuses = new boolean[size];
+		int oldest = oldest();
+		for (int i = 0; i < size; i++) {
+			int index = (oldest + i) % statuses.length;
+			copiedTimestamps[i] = timestamps[index];
+			copiedExecutionTimes[i] = executionTimes[index];
+			copiedStatuses[i] = statuses[index];
+		}
+		int transitions = countTransitions(now);
+		return new HealthCheckHistory(copiedTimestamps, copiedExecutionTimes,
+				copiedStatuses, transitions, isFlapping(transitions));
+	}
+
+	private boolean isFlapping(int transitions) {
+		return flappingTransitions > 0 && transitions > flappingTransitions;
+	}
+
+	/**
+	 * 
+	 * @return the number of status changes within the flapping window ending
+	 *         at the given time
+	 */
+	private int countTransitions(long now) {
+		long start = now - flappingWindow;
+		int oldest = oldest();
+		int transitions = 0;
+		for (int i = 1; i < size; i++) {
+			int previous = (oldest + i - 1) % statuses.length;
+			int current = (oldest + i) % statuses.length;
+			if (timestamps[previous] >= start
+					&& statuses[previous] != statuses[current]) {
+				transitions++;
+			}
+		}
+		return transitions;
+	}
+
+	private int oldest() {
+		return (next - size + statuses.length) % statuses.length;
+	}
+
+}
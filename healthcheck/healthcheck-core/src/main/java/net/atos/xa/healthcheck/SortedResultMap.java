@@ -0,0 +1,162 @@
+package net.atos.xa.healthcheck;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * 
+ * An immutable map of results backed by two arrays sorted by check name. The
+ * names are shared with the {@link HealthCheckSnapshot} of the run, so that a
+ * run neither sorts its results nor allocates a tree.
+ * 
+ * 
+ */
+final class SortedResultMap extends AbstractMap<String, HealthCheckResult>
+		implements SortedMap<String, HealthCheckResult> {
+
+	/** the sorted names, must never be modified */
+	private final String[] names;
+
+	/** the results, in the order of the names */
+	private final HealthCheckResult[] results;
+
+	/** the first index of this map (inclusive) */
+	private final int from;
+
+	/** the last index of this map (exclusive) */
+	private final int to;
+
+	/**
+	 * 
+	 * @param names
+	 *            the sorted names of the checks, the array must not be
+	 *            modified afterwards
+	 * @param results
+	 *            the results in the order of the names, the array must not be
+	 *            modified afterwards
+	 */
+	SortedResultMap(String[] names, HealthCheckResult[] results) {
+		this(names, results, 0, names.length);
+	}
+
+	private SortedResultMap(String[] names, HealthCheckResult[] results,
+			int from, int to) {
+		this.names = names;
+		this.results = results;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	public int size() {
+		return to - from;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public HealthCheckResult get(Object key) {
+		int index = indexOf(key);
+		return index < 0 ? null : results[index];
+	}
+
+	private int indexOf(Object key) {
+		if (!(key instanceof String)) {
+			return -1;
+		}
+		return Arrays.binarySearch(names, from, to, key);
+	}
+
+	/**
+	 * 
+	 * @param key
+	 *            a name
+	 * @return the index of the first name greater or equal to the key
+	 */
+	private int lowerBound(String key) {
+		int index = Arrays.binarySearch(names, from, to, key);
+		return index >= 0 ? index : -(index + 1);
+	}
+
+	public Comparator<? super String> comparator() {
+		return null;
+	}
+
+	public SortedMap<String, HealthCheckResult> subMap(String fromKey,
+			String toKey) {
+		if (fromKey.compareTo(toKey) > 0) {
+			throw new IllegalArgumentException("fromKey > toKey");
+		}
+		return new SortedResultMap(names, results, lowerBound(fromKey),
+				lowerBound(toKey));
+	}
+
+	public SortedMap<String, HealthCheckResult> headMap(String toKey) {
+		return new SortedResultMap(names, results, from, lowerBound(toKey));
+	}
+
+	public SortedMap<String, HealthCheckResult> tailMap(String fromKey) {
+		return new SortedResultMap(names, results, lowerBound(fromKey), to);
+	}
+
+	public String firstKey() {
+		if (from == to) {
+			throw new NoSuchElementException();
+		}
+		return names[from];
+	}
+
+	public String lastKey() {
+		if (from == to) {
+			throw new NoSuchElementException();
+		}
+		return names[to - 1];
+	}
+
+	@Override
+	public Set<Entry<String, HealthCheckResult>> entrySet() {
+		return new AbstractSet<Entry<String, HealthCheckResult>>() {
+
+			@Override
+			public Iterator<Entry<String, HealthCheckResult>> iterator() {
+				return new Iterator<Entry<String, HealthCheckResult>>() {
+
+					private int index = from;
+
+					public boolean hasNext() {
+						return index < to;
+					}
+
+					public Entry<String, HealthCheckResult> next() {
+						if (index >= to) {
+							throw new NoSuchElementException();
+						}
+						Entry<String, HealthCheckResult> entry = new SimpleImmutableEntry<String, HealthCheckResult>(
+								names[index], results[index]);
+						index++;
+						return entry;
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return to - from;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,288 @@
+package net.atos.xa.healthcheck.checks;
+
+import java.util.concurrent.Future;
+
+import net.atos.xa.healthcheck.spi.AsyncHealthCheck;
+import net.atos.xa.healthcheck.spi.AsyncHealthCheck.CompletionTime;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.params.ConnRoutePNames;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.DefaultedHttpParams;
+import org.apache.http.params.HttpParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * <p>
+ * An asynchronous http check. It returns healthy if the http response code =
+ * 200 else it returns unhealthy. This check uses the non-blocking Apache http
+ * async client: all the checks share a client running on a few I/O threads,
+ * so that hundreds of endpoints can be checked without a thread per check.
+ * </p>
+ *
+ * <p>
+ * The parameters of the {@link HttpParams} given to the check are applied to
+ * its request (e.g. connection and socket timeouts). The shared client is
+ * created with the following parameters of the first check executed:
+ * <ul>
+ * <li>{@link #IO_THREAD_COUNT} : number of I/O threads (default 2)</li>
+ * <li>{@link SimpleHttpCheck#MAX_TOTAL_CONNECTIONS} : maximum number of
+ * connections (default 1000)</li>
+ * <li>{@link SimpleHttpCheck#MAX_CONNECTIONS_PER_ROUTE} : maximum number of
+ * connections per host (default 2)</li>
+ * </ul>
+ * The client must be closed with {@link #shutdownClient()} when the
+ * application is undeployed (done by
+ * {@link net.atos.xa.healthcheck.HealthCheckManager#shutdown()}).
+ * </p>
+ */
+public class AsyncHttpCheck extends AsyncHealthCheck {
+
+	/** the logger */
+	private static Logger log = LoggerFactory.getLogger(AsyncHttpCheck.class
+			.getName());
+
+	private static final String GET_HTTP_METHOD = "GET";
+
+	/**
+	 * name of the {@link HttpParams} parameter giving the number of I/O
+	 * threads of the shared client (Integer)
+	 */
+	public static final String IO_THREAD_COUNT = "healthcheck.http.ioThreadCount";
+
+	private static final int DEFAULT_IO_THREAD_COUNT = 2;
+
+	private static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 1000;
+
+	/** the client shared by all the checks, created on first use */
+	private static DefaultHttpAsyncClient httpClient;
+
+	/**
+	 * the remote host
+	 */
+	private final HttpHost host;
+
+	/**
+	 * the http request to send
+	 */
+	private final HttpRequest request;
+
+	/**
+	 * the additional parameters of the check
+	 */
+	private final HttpParams params;
+
+	/**
+	 * An asynchronous check for an HTTP request (support any kind of HTTP
+	 * request) through a proxy
+	 *
+	 * @param name
+	 *            the name of this check
+	 * @param host
+	 *            the target host (hostname, port, scheme to use)
+	 * @param proxyHost
+	 *            the proxy host (hostname, port, scheme to use)
+	 * @param request
+	 *            the HTTP request (can be any HTTP request)
+	 * @param params
+	 *            the additional parameters (charset, timeout etc..)
+	 */
+	public AsyncHttpCheck(String name, HttpHost host, HttpHost proxyHost,
+			HttpRequest request, HttpParams params) {
+		super("asyncHttpCheck " + name);
+		this.host = host;
+		this.request = request;
+		// the parameters set by the check never change the ones of the
+		// caller, which may be shared with other checks
+		this.params = params == null ? new BasicHttpParams()
+				: new DefaultedHttpParams(new BasicHttpParams(), params);
+
+		// the parameters of the check are given with the request since the
+		// client is shared
+		if (proxyHost != null) {
+			this.params.setParameter(ConnRoutePNames.DEFAULT_PROXY, proxyHost);
+		}
+		this.params.setParameter(ClientPNames.HANDLE_REDIRECTS, false);
+		request.setParams(new DefaultedHttpParams(request.getParams(),
+				this.params));
+	}
+
+	/**
+	 * An asynchronous check for an HTTP request (support any kind of HTTP
+	 * request)
+	 *
+	 * @param name
+	 *            the name of this check
+	 * @param host
+	 *            the target host (hostname, port, scheme to use)
+	 * @param request
+	 *            the HTTP request (can be any HTTP request)
+	 * @param params
+	 *            the additional parameters (charset, timeout etc..)
+	 */
+	public AsyncHttpCheck(String name, HttpHost host, HttpRequest request,
+			HttpParams params) {
+		this(name, host, null, request, params);
+	}
+
+	/**
+	 * An asynchronous check for an HTTP GET request
+	 *
+	 * @param name
+	 *            the name of this check
+	 * @param host
+	 *            the target host (hostname, port, scheme to use)
+	 * @param uri
+	 *            the uri to call on this target host
+	 * @param params
+	 *            the additional parameters (charset, timeout etc..)
+	 */
+	public AsyncHttpCheck(String name, HttpHost host, String uri,
+			HttpParams params) {
+		this(name, host, new BasicHttpRequest(GET_HTTP_METHOD, uri), params);
+	}
+
+	@Override
+	public Future<Result> executeAsync() {
+
+		log.info("[HealthCheck] execute check {}", getName());
+
+		final ResultFuture result = new ResultFuture();
+
+		DefaultHttpAsyncClient client;
+		try {
+			client = getHttpClient(params);
+		} catch (IOReactorException e) {
+			log.error("[HealthCheck] cannot create the http async client", e);
+			result.completed(Result.unhealthy(e));
+			return result;
+		}
+
+		result.request = client.execute(host, request,
+				new FutureCallback<HttpResponse>() {
+
+					public void completed(HttpResponse response) {
+						int statusCode = response.getStatusLine()
+								.getStatusCode();
+						if (statusCode == 200) {
+							log.info("[HealthCheck] check {} is OK", getName());
+							result.completed(Result.healthy());
+						} else {
+							log.info("[HealthCheck] check {} is ERROR",
+									getName());
+							result.completed(Result.unhealthy("HTTP status code "
+									+ statusCode + " for check " + getName()));
+						}
+					}
+
+					public void failed(Exception e) {
+						log.info("[HealthCheck] check {} is ERROR ({})",
+								getName(), e.getMessage());
+						result.completed(Result.unhealthy(e));
+					}
+
+					public void cancelled() {
+						result.cancel(true);
+					}
+				});
+
+		return result;
+	}
+
+	/**
+	 * Close the client shared by the checks. A new client is created if a
+	 * check is executed afterwards.
+	 */
+	public static void shutdownClient() {
+		synchronized (AsyncHttpCheck.class) {
+			if (httpClient != null) {
+				log.debug("[HealthCheck] shutdown the http async client");
+				try {
+					httpClient.shutdown();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				httpClient = null;
+			}
+		}
+	}
+
+	private static DefaultHttpAsyncClient getHttpClient(HttpParams params)
+			throws IOReactorException {
+		synchronized (AsyncHttpCheck.class) {
+			if (httpClient == null) {
+				IOReactorConfig config = new IOReactorConfig();
+				config.setIoThreadCount(params.getIntParameter(
+						IO_THREAD_COUNT, DEFAULT_IO_THREAD_COUNT));
+				DefaultHttpAsyncClient client = new DefaultHttpAsyncClient(
+						config);
+
+				PoolingClientAsyncConnectionManager manager = (PoolingClientAsyncConnectionManager) client
+						.getConnectionManager();
+				manager.setMaxTotal(params.getIntParameter(
+						SimpleHttpCheck.MAX_TOTAL_CONNECTIONS,
+						DEFAULT_MAX_TOTAL_CONNECTIONS));
+				int maxPerRoute = params.getIntParameter(
+						SimpleHttpCheck.MAX_CONNECTIONS_PER_ROUTE, 0);
+				if (maxPerRoute > 0) {
+					manager.setDefaultMaxPerRoute(maxPerRoute);
+				}
+
+				log.debug(
+						"[HealthCheck] create the http async client with {} I/O threads",
+						config.getIoThreadCount());
+				client.start();
+				httpClient = client;
+			}
+			return httpClient;
+		}
+	}
+
+	/**
+	 * The result of the check, cancelling it aborts the http request
+	 */
+	private static class ResultFuture extends BasicFuture<Result> implements
+			CompletionTime {
+
+		private volatile Future<HttpResponse> request;
+
+		private volatile long completionTime;
+
+		ResultFuture() {
+			super(null);
+		}
+
+		@Override
+		public boolean completed(Result result) {
+			// set before the waiting threads are woken up
+			completionTime = System.nanoTime();
+			return super.completed(result);
+		}
+
+		public long getCompletionTime() {
+			return completionTime;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			Future<HttpResponse> current = request;
+			if (current != null) {
+				current.cancel(true);
+			}
+			return cancelled;
+		}
+	}
+}
@@ -1,225 +1,398 @@
-package net.atos.xa.healthcheck.checks;
-
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-
-import javax.sql.DataSource;
-
-import net.atos.xa.healthcheck.util.JdbcUtil;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.yammer.metrics.core.HealthCheck;
-
-/**
- * 
- * <p>
- * A check to test the connection to a DB.
- * 
- * This check requires a datasource on which the connection test is done.
- * Optionnally, a validation SQL query and its associated timeout can be given.
- * 
- * If no validation query is given in parameter, a predefined query will be
- * executed depending on the JDBC driver used
- * </p>
- * <br/>
- * <br/>
- * 
- * List of predefined queries per JDBC driver: <br/>
- * org.hsqldb.jdbcDriver = "select 1 from INFORMATION_SCHEMA.SYSTEM_USERS"<br/>
- * oracle.jdbc.driver.OracleDriver or oracle.jdbc.OracleDriver =
- * "select 1 from dual"<br/>
- * com.mysql.jdbc.Driver or org.gjt.mm.mysql.Driver = "select 1"<br />
- * com.ibm.db2.jcc.DB2Driver = "select 1 from sysibm.sysdummy1" <br/>
- * com.microsoft.jdbc.sqlserver.SQLServerDriver = "select 1" <br/>
- * org.postgresql.Driver = "select version()"<br/>
- * com.ingres.jdbc.IngresDriver = "select 1"<br/>
- * org.apache.derby.jdbc.ClientDriver = "values 1"<br/>
- * org.h2.Driver = "select 1"<br/>
- * 
- * 
- * <p>
- * 
- * <h2>Timeout management</h2>
- * 
- * Be careful to the timeout configuration! With a wrong timeout configuration
- * or if you keep the default configuration, the database check is blocked until
- * it gets a response from the database. This leads to an unefficient
- * monitoring.
- * 
- * Two timeout can be configured:
- * <ul>
- * <li><b>login timeout</b> : configured at the datasource level. Maximum time
- * in seconds that a data source will wait while attempting to connect to a
- * database. A value of zero specifies that the timeout is the default system
- * timeout if there is one; otherwise, it specifies that there is no timeout.</li>
- * <li><b>validation query timeout</b> : the validation query timeout in seconds
- * (if timeout is exceeded, the check fails)</li>
- * </ul>
- * 
- * You may have different configuration for timeout depending on the JDBC driver
- * you use.
- * 
- * Example in MySQL driver, you can configure a connection timeout and a socket
- * timeout
- * 
- * </p>
- * 
- * 
- */
-public class DatabaseCheck extends HealthCheck {
-
-	/** the logger */
-	private static Logger log = LoggerFactory.getLogger(DatabaseCheck.class
-			.getName());
-
-	/**
-	 * the datasource on which the test is done. As a precondition, we consider
-	 * that the login timeout is set up in this datasource
-	 */
-	private DataSource dataSource;
-	/** the validation SQL query for the checking the database connection */
-	private String validationQuery;
-	/**
-	 * the validation query timeout in seconds (if timeout is exceeded, the
-	 * check fails)
-	 */
-	private int validationQueryTimeout;
-
-	/** the classname of the jdbc driver */
-	private String jdbcDriver;
-
-	/**
-	 * 
-	 * @param name
-	 *            a name for this health check
-	 * @param dataSource
-	 *            on which the test is done. As a precondition, we consider that
-	 *            login timeout is set up in this datasource
-	 * @param validationQuery
-	 *            SQL query for the checking the database connection, if null a
-	 *            default SQL query is selected among some predefined ones
-	 * @param validationQueryTimeout
-	 *            validation query timeout in seconds , if timeout is exceeded,
-	 *            the check fails
-	 */
-	public DatabaseCheck(String name, DataSource dataSource,
-			String validationQuery, String jdbcDriver,
-			int validationQueryTimeout) {
-		super("databaseCheck " + name);
-		this.dataSource = dataSource;
-		this.validationQuery = validationQuery;
-		this.validationQueryTimeout = validationQueryTimeout;
-		this.jdbcDriver = jdbcDriver;
-
-	}
-
-	@Override
-	protected Result check() throws Exception {
-
-		log.info("[HealthCheck] execute database check \"{}\"", getName());
-
-		if (dataSource == null) {
-			return Result.unhealthy("no datasource found");
-		}
-
-		Connection connection = null;
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
-
-		try {
-			connection = dataSource.getConnection();
-			if (connection == null) {
-				return Result.unhealthy("connection is null");
-			}
-
-			if (validationQuery == null) {
-				// use of a predefined (can be different depending on the
-				// database used
-				String jdbcDriverUsed = jdbcDriver;
-
-				if (jdbcDriverUsed == null) { // get jdbc driver from url
-					jdbcDriverUsed = JdbcUtil
-							.identifyJdbcDriverFromUrl(connection.getMetaData()
-									.getURL());
-				}
-
-				if (jdbcDriverUsed == null) { // no suitable driver found
-
-					// try to get a jdbc driver from the name
-					jdbcDriverUsed = JdbcUtil
-							.identifyJdbcDriverFromName(connection
-									.getMetaData().getDriverName());
-				}
-
-				if (jdbcDriverUsed != null) {
-					validationQuery = JdbcUtil
-							.getValidationQueryFromJdbcDriver(jdbcDriverUsed);
-				}
-
-				if (validationQuery == null) {
-					log.warn(
-							"[HealthCheck] predefined validation query is null, use the default \"{}\"",
-							JdbcUtil.SELECT_1_QUERY);
-
-					validationQuery = JdbcUtil.SELECT_1_QUERY;
-				}
-
-			}
-
-			log.info(
-					"[HealthCheck] execute validationQuery \"{}\" on database \"{}\" with timeout {} and jdbc driver \"{} v{}\"",
-					validationQuery, connection.getMetaData().getURL(),
-					validationQueryTimeout, connection.getMetaData()
-							.getDriverName(), connection.getMetaData()
-							.getDriverVersion());
-
-			stmt = connection.prepareStatement(validationQuery);
-
-			if (validationQueryTimeout > 0) {
-				stmt.setQueryTimeout(validationQueryTimeout);
-			}
-
-			rs = stmt.executeQuery();
-
-		} catch (SQLException e) {
-			log.error("Cannot access database", e);
-
-			return Result.unhealthy(
-					"Cannot connect to " + getName() + " (" + e.getMessage()
-							+ ")", e);
-		} finally {
-			if (connection != null) {
-				try {
-					connection.close();
-				} catch (Exception e) {
-					log.error("[HealthCheck] Cannot close database connection",
-							e);
-				}
-			}
-			if (stmt != null) {
-				try {
-					stmt.close();
-				} catch (Exception e) {
-					log.error("[HealthCheck] Cannot close statement", e);
-				}
-			}
-			if (rs != null) {
-				try {
-					rs.close();
-				} catch (Exception e) {
-					log.error("[HealthCheck] Cannot close result set", e);
-				}
-			}
-		}
-
-		log.info("[HealthCheck] check {} is OK", getName());
-
-		return Result.healthy();
-
-	}
-
-}
+package net.atos.xa.healthcheck.checks;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+import javax.sql.DataSource;
+
+import net.atos.xa.healthcheck.util.JdbcUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * 
+ * <p>
+ * A check to test the connection to a DB.
+ * 
+ * This check requires a datasource on which the connection test is done.
+ * Optionnally, a validation SQL query and its associated timeout can be given.
+ * 
+ * If no validation query is given in parameter, a predefined query will be
+ * executed depending on the JDBC driver used
+ * </p>
+ * <br/>
+ * <br/>
+ * 
+ * List of predefined queries per JDBC driver: <br/>
+ * org.hsqldb.jdbcDriver = "select 1 from INFORMATION_SCHEMA.SYSTEM_USERS"<br/>
+ * oracle.jdbc.driver.OracleDriver or oracle.jdbc.OracleDriver =
+ * "select 1 from dual"<br/>
+ * com.mysql.jdbc.Driver or org.gjt.mm.mysql.Driver = "select 1"<br />
+ * com.ibm.db2.jcc.DB2Driver = "select 1 from sysibm.sysdummy1" <br/>
+ * com.microsoft.jdbc.sqlserver.SQLServerDriver = "select 1" <br/>
+ * org.postgresql.Driver = "select version()"<br/>
+ * com.ingres.jdbc.IngresDriver = "select 1"<br/>
+ * org.apache.derby.jdbc.ClientDriver = "values 1"<br/>
+ * org.h2.Driver = "select 1"<br/>
+ * 
+ * 
+ * <p>
+ * 
+ * <h2>Timeout management</h2>
+ * 
+ * Be careful to the timeout configuration! With a wrong timeout configuration
+ * or if you keep the default configuration, the database check is blocked until
+ * it gets a response from the database. This leads to an unefficient
+ * monitoring.
+ * 
+ * Two timeout can be configured:
+ * <ul>
+ * <li><b>login timeout</b> : configured at the datasource level. Maximum time
+ * in seconds that a data source will wait while attempting to connect to a
+ * database. A value of zero specifies that the timeout is the default system
+ * timeout if there is one; otherwise, it specifies that there is no timeout.</li>
+ * <li><b>validation query timeout</b> : the validation query timeout in seconds
+ * (if timeout is exceeded, the check fails)</li>
+ * </ul>
+ * 
+ * You may have different configuration for timeout depending on the JDBC driver
+ * you use.
+ * 
+ * Example in MySQL driver, you can configure a connection timeout and a socket
+ * timeout
+ * 
+ * <h2>Metadata caching</h2>
+ * 
+ * The JDBC driver, the validation query and the url of the database are
+ * resolved from the connection metadata at the first run only (these calls
+ * can be network round trips). They are resolved again after a failure of the
+ * check.
+ * 
+ * <h2>Validation strategy</h2>
+ * 
+ * By default the validation query is executed at each run (
+ * {@link ValidationStrategy#QUERY}). With {@link ValidationStrategy#PING} the
+ * connection is validated by {@link Connection#isValid(int)}, which most JDBC
+ * 4 drivers implement as a protocol level ping (no parsing nor planning on the
+ * database side). With {@link ValidationStrategy#QUERY_THEN_PING} the query is
+ * executed at the first run and after a failure, and the ping is used while
+ * the database is healthy. If the driver does not support
+ * {@link Connection#isValid(int)}, the validation query is executed.
+ * 
+ * </p>
+ * 
+ * 
+ */
+public class DatabaseCheck extends HealthCheck {
+
+	/** the logger */
+	private static Logger log = LoggerFactory.getLogger(DatabaseCheck.class
+			.getName());
+
+	/**
+	 * the datasource on which the test is done. As a precondition, we consider
+	 * that the login timeout is set up in this datasource
+	 */
+	private DataSource dataSource;
+	/** the validation SQL query for the checking the database connection */
+	private String validationQuery;
+	/**
+	 * the validation query timeout in seconds (if timeout is exceeded, the
+	 * check fails)
+	 */
+	private int validationQueryTimeout;
+
+	/** the classname of the jdbc driver */
+	private String jdbcDriver;
+
+	/**
+	 * the validation query, url and driver resolved at the first run, null
+	 * until then or after a failure
+	 */
+	private volatile ConnectionInfo connectionInfo;
+
+	/** the way the connection is validated */
+	private final ValidationStrategy validationStrategy;
+
+	/** false once the driver has shown it does not support isValid */
+	private volatile boolean pingSupported = true;
+
+	/**
+	 * 
+	 * @param name
+	 *            a name for this health check
+	 * @param dataSource
+	 *            on which the test is done. As a precondition, we consider that
+	 *            login timeout is set up in this datasource
+	 * @param validationQuery
+	 *            SQL query for the checking the database connection, if null a
+	 *            default SQL query is selected among some predefined ones
+	 * @param validationQueryTimeout
+	 *            validation query timeout in seconds , if timeout is exceeded,
+	 *            the check fails
+	 */
+	public DatabaseCheck(String name, DataSource dataSource,
+			String validationQuery, String jdbcDriver,
+			int validationQueryTimeout) {
+		this(name, dataSource, validationQuery, jdbcDriver,
+				validationQueryTimeout, ValidationStrategy.QUERY);
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            a name for this health check
+	 * @param dataSource
+	 *            on which the test is done. As a precondition, we consider that
+	 *            login timeout is set up in this datasource
+	 * @param validationQuery
+	 *            SQL query for the checking the database connection, if null a
+	 *            default SQL query is selected among some predefined ones
+	 * @param validationQueryTimeout
+	 *            validation query timeout in seconds , if timeout is exceeded,
+	 *            the check fails (also used as the ping timeout)
+	 * @param validationStrategy
+	 *            the way the connection is validated, if null the validation
+	 *            query is executed
+	 */
+	public DatabaseCheck(String name, DataSource dataSource,
+			String validationQuery, String jdbcDriver,
+			int validationQueryTimeout, ValidationStrategy validationStrategy) {
+		super("databaseCheck " + name);
+		this.dataSource = dataSource;
+		this.validationQuery = validationQuery;
+		this.validationQueryTimeout = validationQueryTimeout;
+		this.jdbcDriver = jdbcDriver;
+		this.validationStrategy = validationStrategy == null ? ValidationStrategy.QUERY
+				: validationStrategy;
+
+	}
+
+	@Override
+	protected Result check() throws Exception {
+
+		log.info("[HealthCheck] execute database check \"{}\"", getName());
+
+		if (dataSource == null) {
+			return Result.unhealthy("no datasource found");
+		}
+
+		Connection connection = null;
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+
+		try {
+			connection = dataSource.getConnection();
+			if (connection == null) {
+				return Result.unhealthy("connection is null");
+			}
+
+			// the ping is used with QUERY_THEN_PING only once the query has
+			// succeeded
+			boolean firstRun = connectionInfo == null;
+			ConnectionInfo info = getConnectionInfo(connection);
+
+			if (isPingUsed(firstRun)) {
+
+				log.info(
+						"[HealthCheck] ping database \"{}\" with timeout {} and jdbc driver \"{} v{}\"",
+						info.url, validationQueryTimeout, info.driverName,
+						info.driverVersion);
+
+				Boolean valid = ping(connection);
+				if (valid != null) {
+					if (!valid.booleanValue()) {
+						log.info("[HealthCheck] check {} is ERROR", getName());
+						connectionInfo = null;
+						return Result.unhealthy("Cannot connect to "
+								+ getName() + " (connection is not valid)");
+					}
+
+					log.info("[HealthCheck] check {} is OK", getName());
+					return Result.healthy();
+				}
+			}
+
+			log.info(
+					"[HealthCheck] execute validationQuery \"{}\" on database \"{}\" with timeout {} and jdbc driver \"{} v{}\"",
+					info.validationQuery, info.url, validationQueryTimeout,
+					info.driverName, info.driverVersion);
+
+			stmt = connection.prepareStatement(info.validationQuery);
+
+			if (validationQueryTimeout > 0) {
+				stmt.setQueryTimeout(validationQueryTimeout);
+			}
+
+			rs = stmt.executeQuery();
+
+		} catch (SQLException e) {
+			log.error("Cannot access database", e);
+
+			// the database may have changed, resolve again at next run
+			connectionInfo = null;
+
+			return Result.unhealthy(
+					"Cannot connect to " + getName() + " (" + e.getMessage()
+							+ ")", e);
+		} finally {
+			if (connection != null) {
+				try {
+					connection.close();
+				} catch (Exception e) {
+					log.error("[HealthCheck] Cannot close database connection",
+							e);
+				}
+			}
+			if (stmt != null) {
+				try {
+					stmt.close();
+				} catch (Exception e) {
+					log.error("[HealthCheck] Cannot close statement", e);
+				}
+			}
+			if (rs != null) {
+				try {
+					rs.close();
+				} catch (Exception e) {
+					log.error("[HealthCheck] Cannot close result set", e);
+				}
+			}
+		}
+
+		log.info("[HealthCheck] check {} is OK", getName());
+
+		return Result.healthy();
+
+	}
+
+	/**
+	 * @param firstRun
+	 *            true if the database has not been validated yet (first run or
+	 *            last run failed)
+	 * @return true if the connection must be validated by a ping
+	 */
+	private boolean isPingUsed(boolean firstRun) {
+		switch (validationStrategy) {
+		case PING:
+			return pingSupported;
+		case QUERY_THEN_PING:
+			return pingSupported && !firstRun;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * validate the connection with {@link Connection#isValid(int)}
+	 * 
+	 * @param connection
+	 *            the connection to validate
+	 * @return the validity of the connection, or null if the driver does not
+	 *         support this method
+	 * @throws SQLException
+	 *             if the validation fails
+	 */
+	private Boolean ping(Connection connection) throws SQLException {
+		try {
+			return Boolean.valueOf(connection.isValid(validationQueryTimeout));
+		} catch (SQLFeatureNotSupportedException e) {
+			log.warn(
+					"[HealthCheck] the jdbc driver of {} does not support the ping, use the validation query",
+					getName());
+		} catch (AbstractMethodError e) {
+			// driver compiled against JDBC 3
+			log.warn(
+					"[HealthCheck] the jdbc driver of {} does not support the ping, use the validation query",
+					getName());
+		}
+		pingSupported = false;
+		return null;
+	}
+
+	/**
+	 * get the information about the database, resolved once from the
+	 * connection metadata and kept until the check fails
+	 * 
+	 * @param connection
+	 *            a connection to the database
+	 * @return the information about the database
+	 * @throws SQLException
+	 *             if the metadata cannot be read
+	 */
+	private ConnectionInfo getConnectionInfo(Connection connection)
+			throws SQLException {
+
+		ConnectionInfo info = connectionInfo;
+		if (info != null) {
+			return info;
+		}
+
+		DatabaseMetaData metaData = connection.getMetaData();
+		String url = metaData.getURL();
+		String driverName = metaData.getDriverName();
+		String query = validationQuery;
+
+		if (query == null) {
+			// use of a predefined (can be different depending on the
+			// database used
+			String jdbcDriverUsed = jdbcDriver;
+
+			if (jdbcDriverUsed == null) { // get jdbc driver from url
+				jdbcDriverUsed = JdbcUtil.identifyJdbcDriverFromUrl(url);
+			}
+
+			if (jdbcDriverUsed == null) { // no suitable driver found
+
+				// try to get a jdbc driver from the name
+				jdbcDriverUsed = JdbcUtil.identifyJdbcDriverFromName(driverName);
+			}
+
+			if (jdbcDriverUsed != null) {
+				query = JdbcUtil.getValidationQueryFromJdbcDriver(jdbcDriverUsed);
+			}
+
+			if (query == null) {
+				log.warn(
+						"[HealthCheck] predefined validation query is null, use the default \"{}\"",
+						JdbcUtil.SELECT_1_QUERY);
+
+				query = JdbcUtil.SELECT_1_QUERY;
+			}
+
+		}
+
+		info = new ConnectionInfo(query, url, driverName,
+				metaData.getDriverVersion());
+		connectionInfo = info;
+		return info;
+	}
+
+	/**
+	 * The information about the database resolved from the connection
+	 * metadata
+	 */
+	private static class ConnectionInfo {
+
+		private final String validationQuery;
+		private final String url;
+		private final String driverName;
+		private final String driverVersion;
+
+		ConnectionInfo(String validationQuery, String url, String driverName,
+				String driverVersion) {
+			this.validationQuery = validationQuery;
+			this.url = url;
+			this.driverName = driverName;
+			this.driverVersion = driverVersion;
+		}
+	}
+
+}
@@ -1,77 +1,126 @@
-package net.atos.xa.healthcheck.checks;
-
-import javax.naming.Context;
-import javax.naming.NamingException;
-import javax.sql.DataSource;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.yammer.metrics.core.HealthCheck;
-
-/**
- * 
- * <p>
- * A check to test the connection to a DB referenced by using JNDI
- * 
- * Require :
- * <ul>
- * <li>A JNDI context</li>
- * <li>A JNDI name which references the datasource</li>
- * <li>A query timeout in seconds. If timeout is exceeded, the checks fails.</li>
- * </ul>
- * </p>
- */
-public class JndiDataSourceCheck extends HealthCheck {
-
-	/** the logger */
-	private static Logger log = LoggerFactory.getLogger(DatabaseCheck.class
-			.getName());
-
-	private Context jndiContext;
-
-	private String jndiName;
-
-	private int queryTimeout;
-
-	/**
-	 * 
-	 * @param jndiContext
-	 *            the JNDI context
-	 * @param jndiName
-	 *            the JNDI name
-	 * @param queryTimeout
-	 *            query timeout in seconds , if timeout is exceeded, the check
-	 *            fails
-	 */
-	public JndiDataSourceCheck(Context jndiContext, String jndiName,
-			int queryTimeout) {
-		super("databaseCheck " + jndiName);
-		this.jndiContext = jndiContext;
-		this.jndiName = jndiName;
-		this.queryTimeout = queryTimeout;
-	}
-
-	@Override
-	protected Result check() throws Exception {
-		return getHealthCheck(jndiContext, jndiName, queryTimeout).execute();
-	}
-
-	private HealthCheck getHealthCheck(Context context, String jndi,
-			int queryTimeout) {
-
-		log.debug("[HealthCheck] create database check for jndi name {}", jndi);
-
-		try {
-			DataSource ds = (DataSource) context.lookup(jndi);
-
-			return new DatabaseCheck(jndi, ds, null, null, queryTimeout);
-
-		} catch (NamingException e) {
-			log.warn("[HealthCheck] the JNDI name " + jndi + " cannot be found");
-			return new DatabaseCheck(jndi, null, null, null, queryTimeout);
-		}
-
-	}
-
-}
+package net.atos.xa.healthcheck.checks;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * 
+ * <p>
+ * A check to test the connection to a DB referenced by using JNDI
+ * 
+ * Require :
+ * <ul>
+ * <li>A JNDI context</li>
+ * <li>A JNDI name which references the datasource</li>
+ * <li>A query timeout in seconds. If timeout is exceeded, the checks fails.</li>
+ * </ul>
+ * Optionally, the {@link ValidationStrategy} of the connection can be given.
+ * </p>
+ * <p>
+ * The datasource is looked up at the first run, then the {@link DatabaseCheck}
+ * built for it is reused by the next runs. The datasource is looked up again
+ * after a failure (the name not bound, or the check unhealthy) or after a call
+ * to {@link #refresh()}.
+ * </p>
+ */
+public class JndiDataSourceCheck extends HealthCheck {
+
+	/** the logger */
+	private static Logger log = LoggerFactory.getLogger(DatabaseCheck.class
+			.getName());
+
+	private Context jndiContext;
+
+	private String jndiName;
+
+	private int queryTimeout;
+
+	private ValidationStrategy validationStrategy;
+
+	/** the check of the datasource looked up, null until resolved */
+	private volatile HealthCheck databaseCheck;
+
+	/**
+	 * 
+	 * @param jndiContext
+	 *            the JNDI context
+	 * @param jndiName
+	 *            the JNDI name
+	 * @param queryTimeout
+	 *            query timeout in seconds , if timeout is exceeded, the check
+	 *            fails
+	 */
+	public JndiDataSourceCheck(Context jndiContext, String jndiName,
+			int queryTimeout) {
+		this(jndiContext, jndiName, queryTimeout, ValidationStrategy.QUERY);
+	}
+
+	/**
+	 * 
+	 * @param jndiContext
+	 *            the JNDI context
+	 * @param jndiName
+	 *            the JNDI name
+	 * @param queryTimeout
+	 *            query timeout in seconds , if timeout is exceeded, the check
+	 *            fails
+	 * @param validationStrategy
+	 *            the way the connection is validated
+	 */
+	public JndiDataSourceCheck(Context jndiContext, String jndiName,
+			int queryTimeout, ValidationStrategy validationStrategy) {
+		super("databaseCheck " + jndiName);
+		this.jndiContext = jndiContext;
+		this.jndiName = jndiName;
+		this.queryTimeout = queryTimeout;
+		this.validationStrategy = validationStrategy;
+	}
+
+	@Override
+	protected Result check() throws Exception {
+		HealthCheck check = databaseCheck;
+		if (check == null) {
+			check = getHealthCheck(jndiContext, jndiName, queryTimeout);
+		}
+		Result result = check.execute();
+		if (!result.isHealthy()) {
+			// the datasource may have been redeployed, look it up again
+			databaseCheck = null;
+		}
+		return result;
+	}
+
+	/**
+	 * Force a new lookup of the datasource at the next run
+	 */
+	public void refresh() {
+		databaseCheck = null;
+	}
+
+	private HealthCheck getHealthCheck(Context context, String jndi,
+			int queryTimeout) {
+
+		log.debug("[HealthCheck] create database check for jndi name {}", jndi);
+
+		try {
+			DataSource ds = (DataSource) context.lookup(jndi);
+
+			HealthCheck check = new DatabaseCheck(jndi, ds, null, null,
+					queryTimeout, validationStrategy);
+			databaseCheck = check;
+			return check;
+
+		} catch (NamingException e) {
+			log.warn("[HealthCheck] the JNDI name " + jndi + " cannot be found");
+			return new DatabaseCheck(jndi, null, null, null, queryTimeout);
+		}
+
+	}
+
+}
@@ -1,267 +1,367 @@
-package net.atos.xa.healthcheck.checks;
-
-import java.io.IOException;
-
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
-import org.apache.http.HttpRequest;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.conn.params.ConnRoutePNames;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.message.BasicHttpRequest;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.protocol.BasicHttpContext;
-import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.yammer.metrics.core.HealthCheck;
-
-/**
- * 
- * <p>
- * A simple http check. It returns healthy if the http response code = 200 else
- * it returns unhealthy This check uses Apache http client
- * </p>
- */
-public class SimpleHttpCheck extends HealthCheck {
-
-	/** the logger */
-	private static Logger log = LoggerFactory.getLogger(SimpleHttpCheck.class
-			.getName());
-
-	private static final String GET_HTTP_METHOD = "GET";
-
-	/**
-	 * the remote host
-	 */
-	private final HttpHost host;
-
-	/**
-	 * the proxy host
-	 */
-	private final HttpHost proxyHost;
-
-	/**
-	 * the http request to send
-	 */
-	private final HttpRequest request;
-
-	/**
-	 * 
-	 * The following parameters can be used to customize the behavior of this
-	 * class:
-	 * <ul>
-	 * <li>{@link org.apache.http.params.CoreProtocolPNames#PROTOCOL_VERSION}</li>
-	 * <li>
-	 * {@link org.apache.http.params.CoreProtocolPNames#STRICT_TRANSFER_ENCODING}
-	 * </li>
-	 * <li>
-	 * {@link org.apache.http.params.CoreProtocolPNames#HTTP_ELEMENT_CHARSET}</li>
-	 * <li>{@link org.apache.http.params.CoreProtocolPNames#USE_EXPECT_CONTINUE}
-	 * </li>
-	 * <li>{@link org.apache.http.params.CoreProtocolPNames#WAIT_FOR_CONTINUE}</li>
-	 * <li>{@link org.apache.http.params.CoreProtocolPNames#USER_AGENT}</li>
-	 * <li>{@link org.apache.http.params.CoreConnectionPNames#TCP_NODELAY}</li>
-	 * <li>{@link org.apache.http.params.CoreConnectionPNames#SO_TIMEOUT}</li>
-	 * <li>{@link org.apache.http.params.CoreConnectionPNames#SO_LINGER}</li>
-	 * <li>{@link org.apache.http.params.CoreConnectionPNames#SO_REUSEADDR}</li>
-	 * <li>
-	 * {@link org.apache.http.params.CoreConnectionPNames#SOCKET_BUFFER_SIZE}</li>
-	 * <li>
-	 * {@link org.apache.http.params.CoreConnectionPNames#CONNECTION_TIMEOUT}</li>
-	 * <li>{@link org.apache.http.params.CoreConnectionPNames#MAX_LINE_LENGTH}</li>
-	 * <li>{@link org.apache.http.params.CoreConnectionPNames#MAX_HEADER_COUNT}</li>
-	 * <li>
-	 * {@link org.apache.http.params.CoreConnectionPNames#STALE_CONNECTION_CHECK}
-	 * </li>
-	 * <li>{@link org.apache.http.conn.params.ConnRoutePNames#FORCED_ROUTE}</li>
-	 * <li>{@link org.apache.http.conn.params.ConnRoutePNames#LOCAL_ADDRESS}</li>
-	 * <li>{@link org.apache.http.conn.params.ConnRoutePNames#DEFAULT_PROXY}</li>
-	 * <li>{@link org.apache.http.cookie.params.CookieSpecPNames#DATE_PATTERNS}</li>
-	 * <li>
-	 * {@link org.apache.http.cookie.params.CookieSpecPNames#SINGLE_COOKIE_HEADER}
-	 * </li>
-	 * <li>{@link org.apache.http.auth.params.AuthPNames#CREDENTIAL_CHARSET}</li>
-	 * <li>{@link org.apache.http.client.params.ClientPNames#COOKIE_POLICY}</li>
-	 * <li>
-	 * {@link org.apache.http.client.params.ClientPNames#HANDLE_AUTHENTICATION}</li>
-	 * <li>{@link org.apache.http.client.params.ClientPNames#HANDLE_REDIRECTS}</li>
-	 * <li>{@link org.apache.http.client.params.ClientPNames#MAX_REDIRECTS}</li>
-	 * <li>
-	 * {@link org.apache.http.client.params.ClientPNames#ALLOW_CIRCULAR_REDIRECTS}
-	 * </li>
-	 * <li>{@link org.apache.http.client.params.ClientPNames#VIRTUAL_HOST}</li>
-	 * <li>{@link org.apache.http.client.params.ClientPNames#DEFAULT_HOST}</li>
-	 * <li>{@link org.apache.http.client.params.ClientPNames#DEFAULT_HEADERS}</li>
-	 * <li>
-	 * {@link org.apache.http.client.params.ClientPNames#CONN_MANAGER_TIMEOUT}</li>
-	 * </ul>
-	 * 
-	 */
-	private final HttpParams params;
-
-	/**
-	 * A simple check for an HTTP request (support any kind of HTTP request)
-	 * through a proxy
-	 * 
-	 * @param name
-	 *            the name of this check
-	 * @param host
-	 *            the target host (hostname, port, scheme to use)
-	 * @param proxyHost
-	 *            the proxy host (hostname, port, scheme to use)
-	 * @param request
-	 *            the HTTP request (can be any HTTP request)
-	 * @param params
-	 *            the additional parameters (charset, timeout etc..)
-	 */
-	public SimpleHttpCheck(String name, HttpHost host, HttpHost proxyHost,
-			HttpRequest request, HttpParams params) {
-		super("simpleHttpCheck " + name);
-		this.host = host;
-		this.proxyHost = proxyHost;
-		this.request = request;
-		if (params == null) {
-			this.params = new BasicHttpParams();
-		} else {
-			this.params = params;
-		}
-
-	}
-
-	/**
-	 * A simple check for an HTTP request (support any kind of HTTP request)
-	 * 
-	 * @param name
-	 *            the name of this check
-	 * @param host
-	 *            the target host (hostname, port, scheme to use)
-	 * @param request
-	 *            the HTTP request (can be any HTTP request)
-	 * @param params
-	 *            the additional parameters (charset, timeout etc..)
-	 */
-	public SimpleHttpCheck(String name, HttpHost host, HttpRequest request,
-			HttpParams params) {
-		this(name, host, null, request, params);
-	}
-
-	/**
-	 * A simple check for an HTTP GET request
-	 * 
-	 * @param name
-	 *            the name of this check
-	 * @param hostname
-	 *            the target host name
-	 * @param port
-	 *            the target post
-	 * @param uri
-	 *            the uri to call on this target host
-	 * @param params
-	 *            the additional parameters (charset, timeout etc..)
-	 */
-	public SimpleHttpCheck(String name, String hostname, int port, String uri,
-			HttpParams params) {
-		this(name, new HttpHost(hostname, port), new BasicHttpRequest(
-				GET_HTTP_METHOD, uri), params);
-	}
-
-	/**
-	 * A simple check for an HTTP GET request
-	 * 
-	 * @param name
-	 *            the name of this check
-	 * @param host
-	 *            the target host (hostname, port, scheme to use)
-	 * @param uri
-	 *            the uri to call on this target host
-	 * @param params
-	 *            the additional parameters (charset, timeout etc..)
-	 */
-	public SimpleHttpCheck(String name, HttpHost host, String uri,
-			HttpParams params) {
-		this(name, host, new BasicHttpRequest(GET_HTTP_METHOD, uri), params);
-	}
-
-	/**
-	 * A simple check for an HTTP GET request (use default parameters)
-	 * 
-	 * @param name
-	 *            the name of this check
-	 * @param host
-	 *            the target host (hostname, port, scheme to use)
-	 * @param uri
-	 *            the uri to call on this target host
-	 */
-	public SimpleHttpCheck(String name, HttpHost host, String uri) {
-		this(name, host, new BasicHttpRequest(GET_HTTP_METHOD, uri), null);
-	}
-
-	/**
-	 * A simple check for an HTTP GET request with uri "/"
-	 * 
-	 * @param name
-	 *            the name of this check
-	 * @param host
-	 *            the target host (hostname, port, scheme to use)
-	 * @param params
-	 *            the additional parameters (charset, timeout etc..)
-	 */
-	public SimpleHttpCheck(String name, HttpHost host, HttpParams params) {
-		this(name, host, new BasicHttpRequest(GET_HTTP_METHOD, "/"), params);
-	}
-
-	@Override
-	protected Result check() throws Exception {
-
-		log.info("[HealthCheck] execute check {}", getName());
-
-		HttpClient httpclient = new DefaultHttpClient(params);
-
-		HttpContext context = new BasicHttpContext(null);
-		if (proxyHost != null) {
-
-			httpclient.getParams().setParameter(ConnRoutePNames.DEFAULT_PROXY,
-					proxyHost);
-		}
-
-		httpclient.getParams().setParameter(ClientPNames.HANDLE_REDIRECTS,
-				false);
-
-		log.info(
-				"[HealthCheck] use execute HTTP request {} on host {} through the proxy {}",
-				request, host, proxyHost);
-		HttpResponse response = httpclient.execute(host, request, context);
-
-		if (log.isDebugEnabled()) {
-			log.debug("[HealthCheck] Response body for check {} : \n {} \n {}",
-					getName(), response.getStatusLine(),
-					getResponseBody(response));
-		}
-
-		if (response.getStatusLine().getStatusCode() == 200) {
-			log.info("[HealthCheck] check {} is OK", getName());
-
-			return Result.healthy();
-		}
-
-		else {
-			log.info("[HealthCheck] check {} is ERROR", getName());
-			return Result.unhealthy("HTTP status code "
-					+ response.getStatusLine().getStatusCode() + " for check "
-					+ getName());
-		}
-
-	}
-
-	private String getResponseBody(final HttpResponse response)
-			throws IOException {
-		HttpEntity entity = response.getEntity();
-		return entity == null ? null : EntityUtils.toString(entity);
-	}
-}
+package net.atos.xa.healthcheck.checks;
+
+import java.io.IOException;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.conn.params.ConnRoutePNames;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * 
+ * <p>
+ * A simple http check. It returns healthy if the http response code = 200 else
+ * it returns unhealthy This check uses Apache http client
+ * </p>
+ * 
+ * <p>
+ * All the checks share a pool of keep-alive connections, so that a check does
+ * not pay a new TCP (and TLS) handshake at each execution. The pool can be
+ * tuned with the following parameters of the {@link HttpParams}:
+ * <ul>
+ * <li>{@link #MAX_CONNECTIONS_PER_ROUTE} : maximum number of connections to
+ * the host of the check (default 2)</li>
+ * <li>{@link #MAX_TOTAL_CONNECTIONS} : maximum number of connections of the
+ * pool, the highest value given by the checks is used (default 20)</li>
+ * </ul>
+ * The pool must be closed with {@link #shutdownConnectionPool()} when the
+ * application is undeployed (done by {@link net.atos.xa.healthcheck.HealthCheckManager#shutdown()}).
+ * </p>
+ */
+public class SimpleHttpCheck extends HealthCheck {
+
+	/** the logger */
+	private static Logger log = LoggerFactory.getLogger(SimpleHttpCheck.class
+			.getName());
+
+	private static final String GET_HTTP_METHOD = "GET";
+
+	/**
+	 * name of the {@link HttpParams} parameter giving the maximum number of
+	 * pooled connections to the host of the check (Integer)
+	 */
+	public static final String MAX_CONNECTIONS_PER_ROUTE = "healthcheck.http.maxConnectionsPerRoute";
+
+	/**
+	 * name of the {@link HttpParams} parameter giving the maximum number of
+	 * connections of the pool shared by all the checks (Integer)
+	 */
+	public static final String MAX_TOTAL_CONNECTIONS = "healthcheck.http.maxTotalConnections";
+
+	/** the connection pool shared by all the checks, created on first use */
+	private static PoolingClientConnectionManager connectionManager;
+
+	/**
+	 * the remote host
+	 */
+	private final HttpHost host;
+
+	/**
+	 * the proxy host
+	 */
+	private final HttpHost proxyHost;
+
+	/**
+	 * the http request to send
+	 */
+	private final HttpRequest request;
+
+	/**
+	 * 
+	 * The following parameters can be used to customize the behavior of this
+	 * class:
+	 * <ul>
+	 * <li>{@link org.apache.http.params.CoreProtocolPNames#PROTOCOL_VERSION}</li>
+	 * <li>
+	 * {@link org.apache.http.params.CoreProtocolPNames#STRICT_TRANSFER_ENCODING}
+	 * </li>
+	 * <li>
+	 * {@link org.apache.http.params.CoreProtocolPNames#HTTP_ELEMENT_CHARSET}</li>
+	 * <li>{@link org.apache.http.params.CoreProtocolPNames#USE_EXPECT_CONTINUE}
+	 * </li>
+	 * <li>{@link org.apache.http.params.CoreProtocolPNames#WAIT_FOR_CONTINUE}</li>
+	 * <li>{@link org.apache.http.params.CoreProtocolPNames#USER_AGENT}</li>
+	 * <li>{@link org.apache.http.params.CoreConnectionPNames#TCP_NODELAY}</li>
+	 * <li>{@link org.apache.http.params.CoreConnectionPNames#SO_TIMEOUT}</li>
+	 * <li>{@link org.apache.http.params.CoreConnectionPNames#SO_LINGER}</li>
+	 * <li>{@link org.apache.http.params.CoreConnectionPNames#SO_REUSEADDR}</li>
+	 * <li>
+	 * {@link org.apache.http.params.CoreConnectionPNames#SOCKET_BUFFER_SIZE}</li>
+	 * <li>
+	 * {@link org.apache.http.params.CoreConnectionPNames#CONNECTION_TIMEOUT}</li>
+	 * <li>{@link org.apache.http.params.CoreConnectionPNames#MAX_LINE_LENGTH}</li>
+	 * <li>{@link org.apache.http.params.CoreConnectionPNames#MAX_HEADER_COUNT}</li>
+	 * <li>
+	 * {@link org.apache.http.params.CoreConnectionPNames#STALE_CONNECTION_CHECK}
+	 * </li>
+	 * <li>{@link org.apache.http.conn.params.ConnRoutePNames#FORCED_ROUTE}</li>
+	 * <li>{@link org.apache.http.conn.params.ConnRoutePNames#LOCAL_ADDRESS}</li>
+	 * <li>{@link org.apache.http.conn.params.ConnRoutePNames#DEFAULT_PROXY}</li>
+	 * <li>{@link org.apache.http.cookie.params.CookieSpecPNames#DATE_PATTERNS}</li>
+	 * <li>
+	 * {@link org.apache.http.cookie.params.CookieSpecPNames#SINGLE_COOKIE_HEADER}
+	 * </li>
+	 * <li>{@link org.apache.http.auth.params.AuthPNames#CREDENTIAL_CHARSET}</li>
+	 * <li>{@link org.apache.http.client.params.ClientPNames#COOKIE_POLICY}</li>
+	 * <li>
+	 * {@link org.apache.http.client.params.ClientPNames#HANDLE_AUTHENTICATION}</li>
+	 * <li>{@link org.apache.http.client.params.ClientPNames#HANDLE_REDIRECTS}</li>
+	 * <li>{@link org.apache.http.client.params.ClientPNames#MAX_REDIRECTS}</li>
+	 * <li>
+	 * {@link org.apache.http.client.params.ClientPNames#ALLOW_CIRCULAR_REDIRECTS}
+	 * </li>
+	 * <li>{@link org.apache.http.client.params.ClientPNames#VIRTUAL_HOST}</li>
+	 * <li>{@link org.apache.http.client.params.ClientPNames#DEFAULT_HOST}</li>
+	 * <li>{@link org.apache.http.client.params.ClientPNames#DEFAULT_HEADERS}</li>
+	 * <li>
+	 * {@link org.apache.http.client.params.ClientPNames#CONN_MANAGER_TIMEOUT}</li>
+	 * </ul>
+	 * 
+	 */
+	private final HttpParams params;
+
+	/** the client of this check, bound to the shared connection pool */
+	private volatile DefaultHttpClient httpClient;
+
+	/**
+	 * A simple check for an HTTP request (support any kind of HTTP request)
+	 * through a proxy
+	 * 
+	 * @param name
+	 *            the name of this check
+	 * @param host
+	 *            the target host (hostname, port, scheme to use)
+	 * @param proxyHost
+	 *            the proxy host (hostname, port, scheme to use)
+	 * @param request
+	 *            the HTTP request (can be any HTTP request)
+	 * @param params
+	 *            the additional parameters (charset, timeout etc..)
+	 */
+	public SimpleHttpCheck(String name, HttpHost host, HttpHost proxyHost,
+			HttpRequest request, HttpParams params) {
+		super("simpleHttpCheck " + name);
+		this.host = host;
+		this.proxyHost = proxyHost;
+		this.request = request;
+		if (params == null) {
+			this.params = new BasicHttpParams();
+		} else {
+			this.params = params;
+		}
+
+	}
+
+	/**
+	 * A simple check for an HTTP request (support any kind of HTTP request)
+	 * 
+	 * @param name
+	 *            the name of this check
+	 * @param host
+	 *            the target host (hostname, port, scheme to use)
+	 * @param request
+	 *            the HTTP request (can be any HTTP request)
+	 * @param params
+	 *            the additional parameters (charset, timeout etc..)
+	 */
+	public SimpleHttpCheck(String name, HttpHost host, HttpRequest request,
+			HttpParams params) {
+		this(name, host, null, request, params);
+	}
+
+	/**
+	 * A simple check for an HTTP GET request
+	 * 
+	 * @param name
+	 *            the name of this check
+	 * @param hostname
+	 *            the target host name
+	 * @param port
+	 *            the target post
+	 * @param uri
+	 *            the uri to call on this target host
+	 * @param params
+	 *            the additional parameters (charset, timeout etc..)
+	 */
+	public SimpleHttpCheck(String name, String hostname, int port, String uri,
+			HttpParams params) {
+		this(name, new HttpHost(hostname, port), new BasicHttpRequest(
+				GET_HTTP_METHOD, uri), params);
+	}
+
+	/**
+	 * A simple check for an HTTP GET request
+	 * 
+	 * @param name
+	 *            the name of this check
+	 * @param host
+	 *            the target host (hostname, port, scheme to use)
+	 * @param uri
+	 *            the uri to call on this target host
+	 * @param params
+	 *            the additional parameters (charset, timeout etc..)
+	 */
+	public SimpleHttpCheck(String name, HttpHost host, String uri,
+			HttpParams params) {
+		this(name, host, new BasicHttpRequest(GET_HTTP_METHOD, uri), params);
+	}
+
+	/**
+	 * A simple check for an HTTP GET request (use default parameters)
+	 * 
+	 * @param name
+	 *            the name of this check
+	 * @param host
+	 *            the target host (hostname, port, scheme to use)
+	 * @param uri
+	 *            the uri to call on this target host
+	 */
+	public SimpleHttpCheck(String name, HttpHost host, String uri) {
+		this(name, host, new BasicHttpRequest(GET_HTTP_METHOD, uri), null);
+	}
+
+	/**
+	 * A simple check for an HTTP GET request with uri "/"
+	 * 
+	 * @param name
+	 *            the name of this check
+	 * @param host
+	 *            the target host (hostname, port, scheme to use)
+	 * @param params
+	 *            the additional parameters (charset, timeout etc..)
+	 */
+	public SimpleHttpCheck(String name, HttpHost host, HttpParams params) {
+		this(name, host, new BasicHttpRequest(GET_HTTP_METHOD, "/"), params);
+	}
+
+	@Override
+	protected Result check() throws Exception {
+
+		log.info("[HealthCheck] execute check {}", getName());
+
+		HttpClient httpclient = getHttpClient();
+
+		HttpContext context = new BasicHttpContext(null);
+
+		log.info(
+				"[HealthCheck] use execute HTTP request {} on host {} through the proxy {}",
+				request, host, proxyHost);
+		HttpResponse response = httpclient.execute(host, request, context);
+
+		try {
+			if (log.isDebugEnabled()) {
+				log.debug(
+						"[HealthCheck] Response body for check {} : \n {} \n {}",
+						getName(), response.getStatusLine(),
+						getResponseBody(response));
+			}
+
+			if (response.getStatusLine().getStatusCode() == 200) {
+				log.info("[HealthCheck] check {} is OK", getName());
+
+				return Result.healthy();
+			}
+
+			else {
+				log.info("[HealthCheck] check {} is ERROR", getName());
+				return Result.unhealthy("HTTP status code "
+						+ response.getStatusLine().getStatusCode()
+						+ " for check " + getName());
+			}
+		} finally {
+			// consume the body to give the connection back to the pool
+			EntityUtils.consume(response.getEntity());
+		}
+
+	}
+
+	/**
+	 * Close the connection pool shared by the checks. A new pool is created if
+	 * a check is executed afterwards.
+	 */
+	public static void shutdownConnectionPool() {
+		synchronized (SimpleHttpCheck.class) {
+			if (connectionManager != null) {
+				log.debug("[HealthCheck] shutdown the http connection pool");
+				connectionManager.shutdown();
+				connectionManager = null;
+			}
+		}
+	}
+
+	/**
+	 * get the client of this check, bound to the shared connection pool
+	 * 
+	 * @return the client
+	 */
+	private HttpClient getHttpClient() {
+		PoolingClientConnectionManager manager = getConnectionManager();
+		DefaultHttpClient client = httpClient;
+		if (client == null || client.getConnectionManager() != manager) {
+			client = new DefaultHttpClient(manager, params);
+			if (proxyHost != null) {
+				client.getParams().setParameter(
+						ConnRoutePNames.DEFAULT_PROXY, proxyHost);
+			}
+			client.getParams().setParameter(ClientPNames.HANDLE_REDIRECTS,
+					false);
+			configureRoute(manager);
+			httpClient = client;
+		}
+		return client;
+	}
+
+	private static PoolingClientConnectionManager getConnectionManager() {
+		synchronized (SimpleHttpCheck.class) {
+			if (connectionManager == null) {
+				log.debug("[HealthCheck] create the http connection pool");
+				connectionManager = new PoolingClientConnectionManager();
+			}
+			connectionManager.closeExpiredConnections();
+			return connectionManager;
+		}
+	}
+
+	/**
+	 * apply the pool limits given in the parameters of this check
+	 * 
+	 * @param manager
+	 *            the connection pool
+	 */
+	private void configureRoute(PoolingClientConnectionManager manager) {
+		int maxTotal = params.getIntParameter(MAX_TOTAL_CONNECTIONS, 0);
+		if (maxTotal > manager.getMaxTotal()) {
+			manager.setMaxTotal(maxTotal);
+		}
+
+		int maxPerRoute = params.getIntParameter(MAX_CONNECTIONS_PER_ROUTE, 0);
+		if (maxPerRoute > 0) {
+			HttpRoute route = proxyHost == null ? new HttpRoute(host)
+					: new HttpRoute(host, null, proxyHost,
+							"https".equalsIgnoreCase(host.getSchemeName()));
+			manager.setMaxPerRoute(route, maxPerRoute);
+		}
+	}
+
+	private String getResponseBody(final HttpResponse response)
+			throws IOException {
+		HttpEntity entity = response.getEntity();
+		return entity == null ? null : EntityUtils.toString(entity);
+	}
+}
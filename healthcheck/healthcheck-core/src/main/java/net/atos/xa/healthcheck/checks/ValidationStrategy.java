@@ -0,0 +1,30 @@
+package net.atos.xa.healthcheck.checks;
+
+/**
+ * 
+ * The way a {@link DatabaseCheck} validates the connection to the database
+ * 
+ */
+public enum ValidationStrategy {
+
+	/**
+	 * execute the validation query at each run (default)
+	 */
+	QUERY,
+
+	/**
+	 * call {@link java.sql.Connection#isValid(int)} at each run. Most JDBC 4
+	 * drivers implement it with a protocol level ping, without parsing nor
+	 * planning a statement on the database. The validation query is executed
+	 * if the driver does not support it.
+	 */
+	PING,
+
+	/**
+	 * execute the validation query at the first run and after a failure, then
+	 * call {@link java.sql.Connection#isValid(int)} while the database is
+	 * healthy
+	 */
+	QUERY_THEN_PING
+
+}
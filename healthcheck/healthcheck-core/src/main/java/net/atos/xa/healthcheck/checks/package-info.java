@@ -1,4 +1,4 @@
-/**
- * A set of ready-to-use standard checks 
- */
+/**
+ * A set of ready-to-use standard checks 
+ */
 package net.atos.xa.healthcheck.checks;
\ No newline at end of file
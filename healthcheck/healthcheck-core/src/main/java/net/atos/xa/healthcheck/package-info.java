@@ -1,4 +1,4 @@
-/**
- * Healthcheck API 
- */
+/**
+ * Healthcheck API 
+ */
 package net.atos.xa.healthcheck;
\ No newline at end of file
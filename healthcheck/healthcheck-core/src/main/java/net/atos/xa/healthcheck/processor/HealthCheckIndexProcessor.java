@@ -0,0 +1,229 @@
+package net.atos.xa.healthcheck.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import net.atos.xa.healthcheck.spi.HealthCheckFactory;
+import net.atos.xa.healthcheck.spi.HealthCheckProvider;
+
+/**
+ * 
+ * Generate at build time the index of the checks and factories annotated with
+ * {@link HealthCheckProvider}, in the file {@value #INDEX} of the compiled
+ * classes. The processor is registered as a service, it runs when the module
+ * is compiled with healthcheck-core in its classpath.
+ * 
+ * The index has one line per provider:
+ * 
+ * <pre>
+ * check &lt;class name&gt; [&lt;check name&gt;]
+ * factory &lt;class name&gt;
+ * </pre>
+ * 
+ * When only some classes are compiled (incremental build), the index is
+ * merged with the one already in the compiled classes: the providers of the
+ * classes not compiled again are kept if the classes still exist.
+ * 
+ */
+@SupportedAnnotationTypes("net.atos.xa.healthcheck.spi.HealthCheckProvider")
+public class HealthCheckIndexProcessor extends AbstractProcessor {
+
+	/** the location of the index in a jar */
+	public static final String INDEX = "META-INF/healthcheck/index";
+
+	private static final String HEALTH_CHECK = "com.yammer.metrics.core.HealthCheck";
+
+	/** the check names by class name, empty if not given */
+	private final Map<String, String> checks = new TreeMap<String, String>();
+
+	private final Set<String> factories = new TreeSet<String>();
+
+	/** the binary names of the top level classes compiled */
+	private final Set<String> compiled = new HashSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment roundEnv) {
+
+		if (roundEnv.processingOver()) {
+			if (mergeIndex() || !checks.isEmpty() || !factories.isEmpty()) {
+				writeIndex();
+			}
+			return false;
+		}
+
+		Elements elements = processingEnv.getElementUtils();
+		for (Element element : roundEnv.getRootElements()) {
+			if (element instanceof TypeElement) {
+				compiled.add(elements.getBinaryName((TypeElement) element)
+						.toString());
+			}
+		}
+		Types types = processingEnv.getTypeUtils();
+		TypeElement checkType = elements.getTypeElement(HEALTH_CHECK);
+		TypeElement factoryType = elements
+				.getTypeElement(HealthCheckFactory.class.getName());
+
+		for (Element element : roundEnv
+				.getElementsAnnotatedWith(HealthCheckProvider.class)) {
+			if (element.getKind() != ElementKind.CLASS) {
+				error(element, "@HealthCheckProvider must annotate a class");
+				continue;
+			}
+			TypeElement type = (TypeElement) element;
+			if (!isInstantiable(type)) {
+				error(element,
+						"a @HealthCheckProvider class must be public, concrete, static if nested, with a public constructor without argument");
+				continue;
+			}
+
+			String className = elements.getBinaryName(type).toString();
+			if (checkType != null
+					&& types.isAssignable(type.asType(),
+							types.erasure(checkType.asType()))) {
+				checks.put(className, type.getAnnotation(HealthCheckProvider.class)
+						.name().trim());
+			} else if (factoryType != null
+					&& types.isAssignable(type.asType(),
+							types.erasure(factoryType.asType()))) {
+				factories.add(className);
+			} else {
+				error(element, "a @HealthCheckProvider class must extend "
+						+ HEALTH_CHECK + " or implement "
+						+ HealthCheckFactory.class.getName());
+			}
+		}
+		return false;
+	}
+
+	private static boolean isInstantiable(TypeElement type) {
+		Set<Modifier> modifiers = type.getModifiers();
+		if (!modifiers.contains(Modifier.PUBLIC)
+				|| modifiers.contains(Modifier.ABSTRACT)) {
+			return false;
+		}
+		if (type.getNestingKind() == NestingKind.MEMBER
+				&& !modifiers.contains(Modifier.STATIC)) {
+			return false;
+		}
+		if (type.getNestingKind() == NestingKind.LOCAL
+				|| type.getNestingKind() == NestingKind.ANONYMOUS) {
+			return false;
+		}
+		for (ExecutableElement constructor : ElementFilter
+				.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty()
+					&& constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add the providers of the existing index whose classes are not compiled
+	 * again and still exist
+	 * 
+	 * @return true if an index exists
+	 */
+	private boolean mergeIndex() {
+		Elements elements = processingEnv.getElementUtils();
+		try {
+			FileObject file = processingEnv.getFiler().getResource(
+					StandardLocation.CLASS_OUTPUT, "", INDEX);
+			BufferedReader reader = new BufferedReader(file.openReader(true));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = line.trim().split("\\s+", 3);
+					if (fields.length < 2 || line.startsWith("#")) {
+						continue;
+					}
+					String className = fields[1];
+					int nested = className.indexOf('$');
+					if (compiled.contains(nested < 0 ? className : className
+							.substring(0, nested))
+							|| elements.getTypeElement(className.replace('$',
+									'.')) == null) {
+						// annotated again if still a provider, or removed
+						continue;
+					}
+					if ("check".equals(fields[0])
+							&& !checks.containsKey(className)) {
+						checks.put(className, fields.length == 3 ? fields[2]
+								: "");
+					} else if ("factory".equals(fields[0])) {
+						factories.add(className);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			return true;
+		} catch (IOException e) {
+			// no index yet
+			return false;
+		}
+	}
+
+	private void writeIndex() {
+		try {
+			FileObject file = processingEnv.getFiler().createResource(
+					StandardLocation.CLASS_OUTPUT, "", INDEX);
+			Writer writer = file.openWriter();
+			try {
+				writer.write("# index of the healthchecks, generated by "
+						+ getClass().getName() + "\n");
+				for (Map.Entry<String, String> check : checks.entrySet()) {
+					writer.write("check " + check.getKey());
+					if (check.getValue().length() > 0) {
+						writer.write(" " + check.getValue());
+					}
+					writer.write("\n");
+				}
+				for (String factory : factories) {
+					writer.write("factory " + factory + "\n");
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"cannot write " + INDEX + ": " + e.getMessage());
+		}
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+				message, element);
+	}
+
+}
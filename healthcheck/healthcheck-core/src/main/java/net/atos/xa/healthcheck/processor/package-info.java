@@ -0,0 +1,4 @@
+/**
+ * Annotation processor generating the index of the checks at build time
+ */
+package net.atos.xa.healthcheck.processor;
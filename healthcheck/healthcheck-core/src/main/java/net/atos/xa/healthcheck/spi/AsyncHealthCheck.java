@@ -0,0 +1,65 @@
+package net.atos.xa.healthcheck.spi;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * A health check which does not hold a thread while it waits for its result
+ *
+ * Extend this class when the check can be done with non-blocking I/O. The
+ * health check registry starts the asynchronous checks from the calling thread
+ * and then waits for their futures, so that hundreds of checks can be in
+ * flight without a thread per check.<br/>
+ * When the check is executed synchronously (e.g. through
+ * {@link HealthCheck#execute()}), the calling thread waits for the future.
+ *
+ *
+ */
+public abstract class AsyncHealthCheck extends HealthCheck {
+
+	/**
+	 *
+	 * @param name
+	 *            the name of the health check
+	 */
+	protected AsyncHealthCheck(String name) {
+		super(name);
+	}
+
+	/**
+	 * Start the check without blocking
+	 *
+	 * @return a future completed with the result of the check. Cancelling the
+	 *         future must abort the check. When the future implements
+	 *         {@link CompletionTime}, the execution time of the check ends at
+	 *         its completion rather than when the registry collects it
+	 */
+	public abstract Future<Result> executeAsync();
+
+	@Override
+	protected Result check() throws Exception {
+		try {
+			return executeAsync().get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * A future result which knows when the check completed
+	 */
+	public interface CompletionTime {
+
+		/**
+		 *
+		 * @return the {@link System#nanoTime()} at which the future was
+		 *         completed, only read once the future is done
+		 */
+		long getCompletionTime();
+	}
+}
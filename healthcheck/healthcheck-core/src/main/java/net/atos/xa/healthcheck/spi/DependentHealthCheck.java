@@ -0,0 +1,27 @@
+package net.atos.xa.healthcheck.spi;
+
+import java.util.Collection;
+
+/**
+ * A health check depending on other checks, e.g. the checks of the databases
+ * of a host depending on the check of the network.
+ * 
+ * Implement this interface in a check to declare its dependencies (they can
+ * also be given by the environment variable "healthcheck.dependsOn.&lt;check
+ * name&gt;"). The registry executes the checks a check depends on first, and
+ * does not execute the check when one of them is unhealthy: the check is
+ * reported as unhealthy with the message "skipped: upstream &lt;name&gt;
+ * unhealthy".
+ * 
+ * 
+ */
+public interface DependentHealthCheck {
+
+	/**
+	 * 
+	 * @return the names of the checks this check depends on, the checks which
+	 *         are not registered are ignored
+	 */
+	Collection<String> getDependencies();
+
+}
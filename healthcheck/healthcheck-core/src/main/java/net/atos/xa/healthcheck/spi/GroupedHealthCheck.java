@@ -0,0 +1,24 @@
+package net.atos.xa.healthcheck.spi;
+
+import java.util.Collection;
+
+/**
+ * A health check belonging to groups, e.g. "live" for the cheap checks of a
+ * liveness probe or "ready" for the checks of a readiness probe.
+ * 
+ * Implement this interface in a check to declare its groups (they can also be
+ * given by the environment variable "healthcheck.groups.&lt;check name&gt;").
+ * A run for a group executes only the checks of this group, a run without
+ * group executes all the checks.
+ * 
+ * 
+ */
+public interface GroupedHealthCheck {
+
+	/**
+	 * 
+	 * @return the names of the groups of this check
+	 */
+	Collection<String> getGroups();
+
+}
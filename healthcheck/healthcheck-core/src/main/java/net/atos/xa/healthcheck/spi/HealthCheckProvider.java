@@ -0,0 +1,46 @@
+package net.atos.xa.healthcheck.spi;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Mark a check or a {@link HealthCheckFactory} to list it in the index of the
+ * checks generated at build time by
+ * {@link net.atos.xa.healthcheck.processor.HealthCheckIndexProcessor}.
+ * 
+ * The annotated class must be public, concrete, with a public constructor
+ * without argument, and extend {@link com.yammer.metrics.core.HealthCheck} or
+ * implement {@link HealthCheckFactory}. The index is read at runtime; once
+ * an index is found, the "META-INF/services" files are not read unless
+ * "healthcheck.discovery.indexOnly" is false, so that the providers of a jar
+ * must all be annotated.
+ * 
+ * Example:
+ * 
+ * <pre>
+ * &#064;HealthCheckProvider(name = &quot;myCheck&quot;)
+ * public class MyCheck extends HealthCheck {
+ * 
+ * 	public MyCheck() {
+ * 		super(&quot;myCheck&quot;);
+ * 	}
+ * 	...
+ * }
+ * </pre>
+ * 
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface HealthCheckProvider {
+
+	/**
+	 * The name of the check, so that the check can be activated by name
+	 * without instantiating the other checks. Ignored for a factory.
+	 */
+	String name() default "";
+
+}
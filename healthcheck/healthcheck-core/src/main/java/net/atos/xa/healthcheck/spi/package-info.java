@@ -1,4 +1,4 @@
-/**
- * SPI for creating dynamic healthchecks
- */
+/**
+ * SPI for creating dynamic healthchecks
+ */
 package net.atos.xa.healthcheck.spi;
\ No newline at end of file
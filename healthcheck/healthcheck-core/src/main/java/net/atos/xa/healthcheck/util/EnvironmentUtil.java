@@ -0,0 +1,133 @@
+package net.atos.xa.healthcheck.util;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility class for reading the environment variables given to the registry
+ * and to the healthcheck factories
+ *
+ *
+ */
+public final class EnvironmentUtil {
+
+	/** the logger */
+	private static Logger log = LoggerFactory.getLogger(EnvironmentUtil.class
+			.getName());
+
+	private EnvironmentUtil() {
+
+	}
+
+	/**
+	 * get a trimmed value from the environment
+	 *
+	 * @param environment
+	 *            the environment, can be null
+	 * @param key
+	 *            the key of the environment variable
+	 * @return the trimmed value, or null if the variable is not set or empty
+	 */
+	public static String getString(Map<String, String> environment, String key) {
+		if (environment == null || environment.get(key) == null) {
+			return null;
+		}
+		String value = environment.get(key).trim();
+		return value.isEmpty() ? null : value;
+	}
+
+	/**
+	 * get an integer value from the environment
+	 *
+	 * @param environment
+	 *            the environment, can be null
+	 * @param key
+	 *            the key of the environment variable
+	 * @param defaultValue
+	 *            the value returned if the variable is not set or invalid
+	 * @return the integer value
+	 */
+	public static int getInt(Map<String, String> environment, String key,
+			int defaultValue) {
+		return (int) getLong(environment, key, defaultValue);
+	}
+
+	/**
+	 * get a long value from the environment
+	 *
+	 * @param environment
+	 *            the environment, can be null
+	 * @param key
+	 *            the key of the environment variable
+	 * @param defaultValue
+	 *            the value returned if the variable is not set or invalid
+	 * @return the long value
+	 */
+	public static long getLong(Map<String, String> environment, String key,
+			long defaultValue) {
+		String value = getString(environment, key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			log.error(
+					"[HealthCheck] error when parsing the \"{}\" variable (value found \"{}\") - use {}",
+					key, value, defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * get a boolean value from the environment
+	 *
+	 * @param environment
+	 *            the environment, can be null
+	 * @param key
+	 *            the key of the environment variable
+	 * @param defaultValue
+	 *            the value returned if the variable is not set
+	 * @return the boolean value
+	 */
+	public static boolean getBoolean(Map<String, String> environment,
+			String key, boolean defaultValue) {
+		String value = getString(environment, key);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+
+	/**
+	 * get an enum constant from the environment, the value is not case
+	 * sensitive
+	 * 
+	 * @param environment
+	 *            the environment, can be null
+	 * @param key
+	 *            the key of the environment variable
+	 * @param enumType
+	 *            the class of the enum
+	 * @param defaultValue
+	 *            the value returned if the variable is not set or invalid
+	 * @return the enum constant
+	 */
+	public static <E extends Enum<E>> E getEnum(
+			Map<String, String> environment, String key, Class<E> enumType,
+			E defaultValue) {
+		String value = getString(environment, key);
+		if (value == null) {
+			return defaultValue;
+		}
+		for (E constant : enumType.getEnumConstants()) {
+			if (constant.name().equalsIgnoreCase(value)) {
+				return constant;
+			}
+		}
+		log.error(
+				"[HealthCheck] error when parsing the \"{}\" variable (value found \"{}\") - use {}",
+				key, value, defaultValue);
+		return defaultValue;
+	}
+
+}
@@ -1,4 +1,4 @@
-/**
- * Utility classes
- */
+/**
+ * Utility classes
+ */
 package net.atos.xa.healthcheck.util;
\ No newline at end of file
@@ -0,0 +1,886 @@
+package net.atos.xa.healthcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.atos.xa.healthcheck.spi.AsyncHealthCheck;
+import net.atos.xa.healthcheck.spi.AsyncHealthCheck.CompletionTime;
+import net.atos.xa.healthcheck.spi.DependentHealthCheck;
+import net.atos.xa.healthcheck.spi.GroupedHealthCheck;
+
+import org.apache.http.concurrent.BasicFuture;
+import org.junit.Test;
+
+import com.yammer.metrics.core.HealthCheck;
+import com.yammer.metrics.core.HealthCheck.Result;
+
+public class CustomHealthCheckRegistryTestCase {
+
+	@Test
+	public void testParallelExecution() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.executor.threads", "4");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+
+		try {
+			registry.registerHealthChecks(new SleepCheck("sleep1", 300),
+					new SleepCheck("sleep2", 300), new SleepCheck("sleep3",
+							300), new FailingCheck("failing"));
+
+			long start = System.currentTimeMillis();
+			SortedMap<String, HealthCheckResult> results = registry
+					.runHealthchecksWithDetailedReport();
+			long duration = System.currentTimeMillis() - start;
+
+			assertEquals(4, results.size());
+			assertEquals("failing", results.firstKey());
+			assertFalse(results.get("failing").isHealthy());
+			assertTrue(results.get("sleep2").isHealthy());
+			assertTrue("checks must run in parallel (" + duration + " ms)",
+					duration < 900);
+		} finally {
+			registry.shutdown();
+		}
+
+	}
+
+	@Test
+	public void testSequentialExecution() {
+
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry();
+		registry.registerHealthChecks(new SleepCheck("sleep1", 100),
+				new SleepCheck("sleep2", 100));
+
+		long start = System.currentTimeMillis();
+		SortedMap<String, HealthCheckResult> results = registry
+				.runHealthchecksWithDetailedReport();
+		long duration = System.currentTimeMillis() - start;
+
+		assertEquals(2, results.size());
+		assertTrue(duration >= 200);
+
+	}
+
+	@Test
+	public void testTimeoutInSequentialMode() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.timeout.slow", "200");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+
+		try {
+			registry.registerHealthChecks(new SleepCheck("slow", 10000),
+					new SleepCheck("fast", 10));
+
+			long start = System.currentTimeMillis();
+			SortedMap<String, HealthCheckResult> results = registry
+					.runHealthchecksWithDetailedReport();
+			long duration = System.currentTimeMillis() - start;
+
+			assertTrue(results.get("fast").isHealthy());
+			assertFalse(results.get("slow").isHealthy());
+			assertEquals("timed out after 200 ms", results.get("slow")
+					.getMessage());
+			assertTrue("deadline must be enforced (" + duration + " ms)",
+					duration < 2000);
+		} finally {
+			registry.shutdown();
+		}
+	}
+
+	@Test
+	public void testTimeoutInParallelMode() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.executor.threads", "2");
+		environment.put("healthcheck.timeout", "200");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+
+		try {
+			registry.registerHealthChecks(new SleepCheck("slow1", 10000),
+					new SleepCheck("fast", 10));
+			registry.registerHealthCheck(new SleepCheck("slow2", 10000), 300);
+
+			long start = System.currentTimeMillis();
+			SortedMap<String, HealthCheckResult> results = registry
+					.runHealthchecksWithDetailedReport();
+			long duration = System.currentTimeMillis() - start;
+
+			assertTrue(results.get("fast").isHealthy());
+			assertEquals("timed out after 200 ms", results.get("slow1")
+					.getMessage());
+			assertEquals("timed out after 300 ms", results.get("slow2")
+					.getMessage());
+			assertTrue("deadline must be enforced (" + duration + " ms)",
+					duration < 2000);
+		} finally {
+			registry.shutdown();
+		}
+	}
+
+	@Test
+	public void testStuckCheckIsNotExecutedAgain() throws Exception {
+
+		for (String threads : new String[] { "0", "2" }) {
+			Map<String, String> environment = new HashMap<String, String>();
+			environment.put("healthcheck.executor.threads", threads);
+			environment.put("healthcheck.timeout", "100");
+			CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+					environment);
+			StuckCheck stuck = new StuckCheck("stuck");
+			registry.registerHealthChecks(stuck);
+
+			try {
+				assertEquals("timed out after 100 ms", registry
+						.runHealthchecksWithDetailedReport().get("stuck")
+						.getMessage());
+				// the thread of the first execution is still held
+				assertEquals(
+						"timed out after 100 ms, the previous execution is still running",
+						registry.runHealthchecksWithDetailedReport()
+								.get("stuck").getMessage());
+				assertEquals(1, stuck.count.get());
+
+				stuck.release.countDown();
+				Thread.sleep(100);
+				assertTrue(registry.runHealthchecksWithDetailedReport()
+						.get("stuck").isHealthy());
+				assertEquals(2, stuck.count.get());
+			} finally {
+				stuck.release.countDown();
+				registry.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void testScheduledExecution() throws Exception {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.schedule.interval", "60000");
+		environment.put("healthcheck.schedule.interval.fastCounter", "50");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+
+		try {
+			CountingCheck slowCounter = new CountingCheck("slowCounter");
+			CountingCheck fastCounter = new CountingCheck("fastCounter");
+			registry.registerHealthChecks(slowCounter, fastCounter);
+
+			Thread.sleep(500);
+
+			SortedMap<String, HealthCheckResult> results = registry
+					.runHealthchecksWithDetailedReport();
+			results = registry.runHealthchecksWithDetailedReport();
+
+			assertEquals(2, results.size());
+			assertTrue(results.get("slowCounter").isHealthy());
+			// the runs do not execute the checks
+			assertEquals(1, slowCounter.count.get());
+			assertTrue(fastCounter.count.get() > 2);
+			assertTrue(results.get("slowCounter").getAge() >= 400);
+			assertTrue(results.get("fastCounter").getTimestamp() > results
+					.get("slowCounter").getTimestamp());
+
+			registry.deactivateCheck("fastCounter");
+			assertEquals(1, registry.runHealthchecksWithDetailedReport()
+					.size());
+
+			registry.stopScheduler();
+			registry.runHealthchecksWithDetailedReport();
+			assertEquals(2, slowCounter.count.get());
+		} finally {
+			registry.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentRunsAreShared() throws Exception {
+
+		final CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry();
+		CountingCheck counter = new CountingCheck("counter", 300);
+		registry.registerHealthChecks(counter);
+
+		Thread[] threads = new Thread[5];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					registry.runHealthchecksWithDetailedReport();
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+
+		assertEquals(1, counter.count.get());
+
+		// no result ttl : the next run executes the check again
+		registry.runHealthchecksWithDetailedReport();
+		assertEquals(2, counter.count.get());
+
+	}
+
+	@Test
+	public void testSlowListenerDoesNotBlockSharedRun() throws Exception {
+
+		final CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry();
+		CountingCheck counter = new CountingCheck("counter", 300);
+		registry.registerHealthChecks(counter);
+
+		final CountDownLatch notified = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread slowClient = new Thread() {
+			@Override
+			public void run() {
+				registry.runHealthchecksWithDetailedReport(new HealthCheckListener() {
+					public void onResult(String name, HealthCheckResult result) {
+						notified.countDown();
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+		};
+		slowClient.start();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Thread.sleep(100);
+			// shares the run of the slow client
+			Future<SortedMap<String, HealthCheckResult>> other = executor
+					.submit(new Callable<SortedMap<String, HealthCheckResult>>() {
+						public SortedMap<String, HealthCheckResult> call() {
+							return registry.runHealthchecksWithDetailedReport();
+						}
+					});
+			assertEquals(1, other.get(5, TimeUnit.SECONDS).size());
+			assertTrue(notified.await(5, TimeUnit.SECONDS));
+			assertEquals(1, counter.count.get());
+		} finally {
+			release.countDown();
+			slowClient.join();
+			executor.shutdownNow();
+		}
+
+	}
+
+	@Test
+	public void testResultTtl() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.resultTtl", "60000");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+		CountingCheck counter = new CountingCheck("counter", 0);
+		registry.registerHealthChecks(counter);
+
+		registry.runHealthchecksWithDetailedReport();
+		registry.runHealthchecksWithDetailedReport();
+		assertEquals(1, counter.count.get());
+
+		// another set of checks is executed
+		registry.registerHealthChecks(new CountingCheck("other", 0));
+		assertEquals(2, registry.runHealthchecksWithDetailedReport().size());
+		assertEquals(2, counter.count.get());
+
+		registry.setResultTtl(0);
+		registry.runHealthchecksWithDetailedReport();
+		assertEquals(3, counter.count.get());
+	}
+
+	@Test
+	public void testInterruptedRunIsNotRecorded() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.executor.threads", "1");
+		environment.put("healthcheck.resultTtl", "60000");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+		CountingCheck counter = new CountingCheck("counter", 200);
+		registry.registerHealthChecks(counter);
+
+		try {
+			Thread.currentThread().interrupt();
+			assertEquals("interrupted while waiting for the check", registry
+					.runHealthchecksWithDetailedReport().get("counter")
+					.getMessage());
+			assertTrue(Thread.interrupted());
+			assertNull(registry.getLatency("counter"));
+
+			// the interrupted results are not reused
+			assertTrue(registry.runHealthchecksWithDetailedReport()
+					.get("counter").isHealthy());
+			assertEquals(1, registry.getLatency("counter").getCount());
+		} finally {
+			Thread.interrupted();
+			registry.shutdown();
+		}
+	}
+
+	@Test
+	public void testAsyncChecks() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.timeout.neverCompleted", "200");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+
+		try {
+			PendingAsyncCheck neverCompleted = new PendingAsyncCheck(
+					"neverCompleted");
+			PendingAsyncCheck completed = new PendingAsyncCheck("completed");
+			completed.future.completed(Result.healthy());
+			registry.registerHealthChecks(neverCompleted, completed,
+					new SleepCheck("sync", 10));
+
+			SortedMap<String, HealthCheckResult> results = registry
+					.runHealthchecksWithDetailedReport();
+
+			assertEquals(3, results.size());
+			assertTrue(results.get("completed").isHealthy());
+			assertTrue(results.get("sync").isHealthy());
+			assertEquals("timed out after 200 ms",
+					results.get("neverCompleted").getMessage());
+			// the pending check is aborted
+			assertTrue(neverCompleted.future.isCancelled());
+		} finally {
+			registry.shutdown();
+		}
+	}
+
+	@Test
+	public void testAsyncExecutionTimeEndsAtCompletion() {
+
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry();
+		try {
+			registry.registerHealthChecks(new LateCollectedCheck("late", 100));
+
+			HealthCheckResult result = registry
+					.runHealthchecksWithDetailedReport().get("late");
+
+			// the check completes at once, its future is seen done 100 ms
+			// later
+			assertTrue(result.isHealthy());
+			assertTrue(String.valueOf(result.getExecutionTime()),
+					result.getExecutionTime() < 100);
+		} finally {
+			registry.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentActivation() throws Exception {
+
+		final CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry();
+		registry.registerHealthChecks(new CountingCheck("stable"));
+
+		final AtomicInteger errors = new AtomicInteger();
+		Thread toggler = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 2000; i++) {
+					registry.registerHealthChecks(new CountingCheck("toggled"
+							+ (i % 10)));
+					registry.deactivateCheck("toggled" + ((i + 5) % 10));
+				}
+			}
+		};
+		toggler.start();
+
+		while (toggler.isAlive()) {
+			SortedMap<String, HealthCheckResult> results = registry
+					.runHealthchecksWithDetailedReport();
+			String previous = null;
+			for (Map.Entry<String, HealthCheckResult> entry : results
+					.entrySet()) {
+				if (entry.getValue() == null
+						|| (previous != null && previous.compareTo(entry
+								.getKey()) >= 0)) {
+					errors.incrementAndGet();
+				}
+				previous = entry.getKey();
+			}
+			if (!results.containsKey("stable")) {
+				errors.incrementAndGet();
+			}
+		}
+
+		assertEquals(0, errors.get());
+
+	}
+
+	@Test
+	public void testListenerInCompletionOrder() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.executor.threads", "4");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+
+		try {
+			registry.registerHealthChecks(new SleepCheck("a slow", 400),
+					new SleepCheck("b medium", 200), new FailingCheck(
+							"c failing"));
+
+			final List<String> notified = new ArrayList<String>();
+			final Thread caller = Thread.currentThread();
+			SortedMap<String, HealthCheckResult> results = registry
+					.runHealthchecksWithDetailedReport(new HealthCheckListener() {
+						public void onResult(String name,
+								HealthCheckResult result) {
+							assertSame(caller, Thread.currentThread());
+							notified.add(name);
+						}
+					});
+
+			assertEquals(3, results.size());
+			assertEquals("[c failing, b medium, a slow]", notified.toString());
+		} finally {
+			registry.shutdown();
+		}
+
+	}
+
+	@Test
+	public void testListenersAreNotifiedDuringSharedRun() throws Exception {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.executor.threads", "2");
+		final CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+		registry.registerHealthChecks(new SleepCheck("fast", 10),
+				new SleepCheck("slow", 1000));
+
+		final CountDownLatch starterNotified = new CountDownLatch(1);
+		final CountDownLatch followerNotified = new CountDownLatch(1);
+		Thread starter = new Thread() {
+			@Override
+			public void run() {
+				registry.runHealthchecksWithDetailedReport(new HealthCheckListener() {
+					public void onResult(String name, HealthCheckResult result) {
+						starterNotified.countDown();
+					}
+				});
+			}
+		};
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			starter.start();
+			Thread.sleep(100);
+			// joins the run after the completion of the fast check
+			final List<String> notified = Collections
+					.synchronizedList(new ArrayList<String>());
+			Future<SortedMap<String, HealthCheckResult>> follower = executor
+					.submit(new Callable<SortedMap<String, HealthCheckResult>>() {
+						public SortedMap<String, HealthCheckResult> call() {
+							return registry
+									.runHealthchecksWithDetailedReport(new HealthCheckListener() {
+										public void onResult(String name,
+												HealthCheckResult result) {
+											notified.add(name);
+											followerNotified.countDown();
+										}
+									});
+						}
+					});
+
+			// the results are notified before the end of the run
+			assertTrue(starterNotified.await(500, TimeUnit.MILLISECONDS));
+			assertTrue(followerNotified.await(500, TimeUnit.MILLISECONDS));
+			assertEquals("[fast]", notified.toString());
+
+			assertEquals(2, follower.get(5, TimeUnit.SECONDS).size());
+			assertEquals("[fast, slow]", notified.toString());
+		} finally {
+			starter.join();
+			executor.shutdownNow();
+			registry.shutdown();
+		}
+
+	}
+
+	@Test
+	public void testCircuitBreaker() throws Exception {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.circuitBreaker.failures", "5");
+		environment.put("healthcheck.circuitBreaker.failures.flaky", "2");
+		environment.put("healthcheck.circuitBreaker.backoff.flaky", "200");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+		FlakyCheck flaky = new FlakyCheck("flaky");
+		registry.registerHealthChecks(flaky);
+
+		assertFalse(registry.runHealthchecks());
+		assertFalse(registry.runHealthchecks());
+		assertEquals(2, flaky.count.get());
+
+		// the circuit is open, the check is not executed
+		HealthCheckResult result = registry.runHealthchecksWithDetailedReport()
+				.get("flaky");
+		assertFalse(result.isHealthy());
+		assertEquals(
+				"circuit open after 2 consecutive failures, last failure: failure 2",
+				result.getMessage());
+		assertEquals(2, flaky.count.get());
+
+		// a failed trial opens the circuit again
+		Thread.sleep(250);
+		assertFalse(registry.runHealthchecks());
+		assertEquals(3, flaky.count.get());
+		assertFalse(registry.runHealthchecks());
+		assertEquals(3, flaky.count.get());
+
+		// a successful trial closes the circuit
+		flaky.healthy = true;
+		Thread.sleep(250);
+		assertTrue(registry.runHealthchecks());
+		assertTrue(registry.runHealthchecks());
+		assertEquals(5, flaky.count.get());
+
+		// the results of the open circuit are not in the latency
+		assertEquals(5, registry.getLatency("flaky").getCount());
+
+	}
+
+	@Test
+	public void testCircuitBreakerTrialWithoutResult() throws Exception {
+
+		CircuitBreaker circuitBreaker = new CircuitBreaker(1, 200);
+		assertTrue(circuitBreaker.onResult(new HealthCheckResult(Result
+				.unhealthy("failure"), 0)));
+		assertFalse(circuitBreaker.tryExecute() == null);
+
+		// the result of the trial is never recorded
+		Thread.sleep(250);
+		assertNull(circuitBreaker.tryExecute());
+		assertFalse(circuitBreaker.tryExecute() == null);
+
+		// another trial after the back-off
+		Thread.sleep(250);
+		assertNull(circuitBreaker.tryExecute());
+		assertFalse(circuitBreaker.onResult(new HealthCheckResult(Result
+				.healthy(), 0)));
+		assertNull(circuitBreaker.tryExecute());
+
+	}
+
+	@Test
+	public void testDependencies() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.executor.threads", "4");
+		environment.put("healthcheck.dependsOn.service", "database; network");
+		// no dependency
+		environment.put("healthcheck.dependsOn.network", " ");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+
+		try {
+			FlakyCheck network = new FlakyCheck("network");
+			network.healthy = true;
+			FlakyCheck database = new FlakyCheck("database");
+			CountingCheck service = new CountingCheck("service");
+			DependentCheck page = new DependentCheck("page", "service");
+			registry.registerHealthChecks(network, database, service, page);
+
+			// the dependents of the unhealthy database are skipped
+			SortedMap<String, HealthCheckResult> results = registry
+					.runHealthchecksWithDetailedReport();
+			assertEquals(4, results.size());
+			assertTrue(results.get("network").isHealthy());
+			assertFalse(results.get("database").isHealthy());
+			assertEquals("skipped: upstream database unhealthy",
+					results.get("service").getMessage());
+			assertEquals("skipped: upstream service unhealthy",
+					results.get("page").getMessage());
+			assertEquals(0, service.count.get());
+			assertEquals(0, page.count.get());
+			assertNull(registry.getLatency("service"));
+
+			database.healthy = true;
+			results = registry.runHealthchecksWithDetailedReport();
+			assertTrue(results.get("service").isHealthy());
+			assertTrue(results.get("page").isHealthy());
+			assertEquals(1, service.count.get());
+
+			// without dependencies, the checks are not skipped
+			registry.setDependencies("service");
+			database.healthy = false;
+			results = registry.runHealthchecksWithDetailedReport();
+			assertTrue(results.get("service").isHealthy());
+			assertEquals(2, service.count.get());
+		} finally {
+			registry.shutdown();
+		}
+
+	}
+
+	@Test
+	public void testDependencyCycle() {
+
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry();
+		registry.registerHealthChecks(new DependentCheck("a", "b"),
+				new DependentCheck("b", "a"), new DependentCheck("c", "d"));
+
+		// the checks of the cycle and the unknown upstreams do not block
+		SortedMap<String, HealthCheckResult> results = registry
+				.runHealthchecksWithDetailedReport();
+		assertEquals(3, results.size());
+		assertTrue(results.get("a").isHealthy());
+		assertTrue(results.get("b").isHealthy());
+		assertTrue(results.get("c").isHealthy());
+
+	}
+
+	@Test
+	public void testGroups() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.groups.database", "ready ; deep");
+		// no group
+		environment.put("healthcheck.groups.backend", "");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+		CountingCheck ping = new GroupCheck("ping", "live", "ready");
+		CountingCheck database = new CountingCheck("database");
+		CountingCheck backend = new CountingCheck("backend");
+		registry.registerHealthChecks(ping, database, backend);
+
+		SortedMap<String, HealthCheckResult> results = registry
+				.runHealthchecksWithDetailedReport("live", null);
+		assertEquals(1, results.size());
+		assertTrue(results.containsKey("ping"));
+
+		results = registry.runHealthchecksWithDetailedReport("ready", null);
+		assertEquals(2, results.size());
+		assertTrue(results.containsKey("ping"));
+		assertTrue(results.containsKey("database"));
+		assertEquals(0, backend.count.get());
+
+		// all the checks without group
+		results = registry.runHealthchecksWithDetailedReport();
+		assertEquals(3, results.size());
+		assertEquals(1, backend.count.get());
+
+		// the groups set later are taken into account
+		registry.setGroups("backend", "live");
+		results = registry.runHealthchecksWithDetailedReport("live", null);
+		assertEquals(2, results.size());
+		assertTrue(results.containsKey("backend"));
+		assertTrue(registry.runHealthchecksWithDetailedReport("unknown", null)
+				.isEmpty());
+
+	}
+
+	static class GroupCheck extends CountingCheck implements
+			GroupedHealthCheck {
+
+		private final List<String> groups;
+
+		GroupCheck(String name, String... groups) {
+			super(name);
+			this.groups = Arrays.asList(groups);
+		}
+
+		public Collection<String> getGroups() {
+			return groups;
+		}
+	}
+
+	static class DependentCheck extends CountingCheck implements
+			DependentHealthCheck {
+
+		private final String upstream;
+
+		DependentCheck(String name, String upstream) {
+			super(name);
+			this.upstream = upstream;
+		}
+
+		public Collection<String> getDependencies() {
+			return Collections.singletonList(upstream);
+		}
+	}
+
+	static class PendingAsyncCheck extends AsyncHealthCheck {
+
+		private BasicFuture<Result> future = new BasicFuture<Result>(null);
+
+		PendingAsyncCheck(String name) {
+			super(name);
+		}
+
+		@Override
+		public Future<Result> executeAsync() {
+			return future;
+		}
+	}
+
+	static class LateCollectedCheck extends AsyncHealthCheck {
+
+		private final long delay;
+
+		LateCollectedCheck(String name, long delay) {
+			super(name);
+			this.delay = delay;
+		}
+
+		@Override
+		public Future<Result> executeAsync() {
+			return new LateFuture(delay);
+		}
+	}
+
+	/**
+	 * A future completed at its creation, but seen done only after a delay
+	 */
+	static class LateFuture extends BasicFuture<Result> implements
+			CompletionTime {
+
+		private final long completionTime = System.nanoTime();
+
+		private final long doneTime;
+
+		LateFuture(long delay) {
+			super(null);
+			doneTime = completionTime + TimeUnit.MILLISECONDS.toNanos(delay);
+			completed(Result.healthy());
+		}
+
+		@Override
+		public boolean isDone() {
+			return System.nanoTime() >= doneTime;
+		}
+
+		public long getCompletionTime() {
+			return completionTime;
+		}
+	}
+
+	static class CountingCheck extends HealthCheck {
+
+		final AtomicInteger count = new AtomicInteger();
+
+		private final long sleepTime;
+
+		CountingCheck(String name) {
+			this(name, 0);
+		}
+
+		CountingCheck(String name, long sleepTime) {
+			super(name);
+			this.sleepTime = sleepTime;
+		}
+
+		@Override
+		protected Result check() throws Exception {
+			count.incrementAndGet();
+			if (sleepTime > 0) {
+				Thread.sleep(sleepTime);
+			}
+			return Result.healthy();
+		}
+	}
+
+	static class FlakyCheck extends HealthCheck {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		private volatile boolean healthy;
+
+		FlakyCheck(String name) {
+			super(name);
+		}
+
+		@Override
+		protected Result check() throws Exception {
+			int execution = count.incrementAndGet();
+			return healthy ? Result.healthy() : Result.unhealthy("failure "
+					+ execution);
+		}
+	}
+
+	static class SleepCheck extends HealthCheck {
+
+		private final long sleepTime;
+
+		SleepCheck(String name, long sleepTime) {
+			super(name);
+			this.sleepTime = sleepTime;
+		}
+
+		@Override
+		protected Result check() throws Exception {
+			Thread.sleep(sleepTime);
+			return Result.healthy();
+		}
+	}
+
+	/**
+	 * A check ignoring the interruptions until it is released
+	 */
+	static class StuckCheck extends HealthCheck {
+
+		final AtomicInteger count = new AtomicInteger();
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		StuckCheck(String name) {
+			super(name);
+		}
+
+		@Override
+		protected Result check() throws Exception {
+			count.incrementAndGet();
+			while (true) {
+				try {
+					release.await();
+					return Result.healthy();
+				} catch (InterruptedException e) {
+					// ignored
+				}
+			}
+		}
+	}
+
+	static class FailingCheck extends HealthCheck {
+
+		FailingCheck(String name) {
+			super(name);
+		}
+
+		@Override
+		protected Result check() throws Exception {
+			throw new IllegalStateException("failure of " + getName());
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package net.atos.xa.healthcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.atos.xa.healthcheck.processor.HealthCheckIndexProcessor;
+import net.atos.xa.healthcheck.testcheck.TestCheck1;
+import net.atos.xa.healthcheck.testcheck.TestCheck2;
+import net.atos.xa.healthcheck.testcheck.TestDynamicCheck;
+import net.atos.xa.healthcheck.testcheck.TestIndexedCheck;
+
+import org.junit.Test;
+
+public class HealthCheckDiscoveryTestCase {
+
+	@Test
+	public void testLazyDiscovery() {
+
+		RecordingClassLoader classLoader = new RecordingClassLoader();
+		HealthCheckDiscovery discovery = new HealthCheckDiscovery(classLoader,
+				null);
+		assertTrue(classLoader.loaded.isEmpty());
+
+		// the providers are loaded until the check is found
+		assertNotNull(discovery.find("testCheck1"));
+		assertTrue(classLoader.loaded.contains(TestCheck1.class.getName()));
+		assertFalse(classLoader.loaded.contains(TestCheck2.class.getName()));
+		assertFalse(classLoader.loaded.contains(TestDynamicCheck.class
+				.getName()));
+
+		assertNotNull(discovery.find("testCheck5"));
+		assertTrue(classLoader.loaded.contains(TestDynamicCheck.class
+				.getName()));
+
+		assertNull(discovery.find("unknown"));
+		assertEquals(5, discovery.getAll().size());
+		assertEquals(1, count(classLoader.loaded, TestCheck1.class.getName()));
+
+	}
+
+	@Test
+	public void testIndex() {
+
+		// generated when the test checks are compiled
+		assertNotNull(getClass().getClassLoader().getResource(
+				HealthCheckIndexProcessor.INDEX));
+
+		RecordingClassLoader classLoader = new RecordingClassLoader();
+		HealthCheckDiscovery discovery = new HealthCheckDiscovery(classLoader,
+				null);
+
+		// the check named in the index is loaded alone
+		assertNotNull(discovery.find("testIndexedCheck"));
+		assertEquals(1, classLoader.loaded.size());
+		assertTrue(classLoader.loaded.contains(TestIndexedCheck.class
+				.getName()));
+
+		// the SPI files are not read once an index is found
+		assertEquals(5, discovery.getAll().size());
+		assertEquals("[" + HealthCheckIndexProcessor.INDEX + "]",
+				classLoader.resources.toString());
+
+	}
+
+	@Test
+	public void testServicesWithIndex() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put(HealthCheckDiscovery.INDEX_ONLY, "false");
+		RecordingClassLoader classLoader = new RecordingClassLoader();
+		HealthCheckDiscovery discovery = new HealthCheckDiscovery(classLoader,
+				environment);
+
+		// the providers both indexed and declared as services are loaded once
+		assertEquals(5, discovery.getAll().size());
+		assertEquals(3, classLoader.resources.size());
+		assertEquals(1, count(classLoader.loaded, TestCheck1.class.getName()));
+
+	}
+
+	@Test
+	public void testRediscovery() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put(TestDynamicCheck.NAMES_KEY, "ds1,ds2");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+		registry.registerHealthChecks(registry.getAllHealthChecks());
+		registry.registerHealthChecks(new CustomHealthCheckRegistryTestCase.SleepCheck(
+				"direct", 0));
+		registry.deactivateCheck("testCheck1");
+		HealthCheckSnapshot registered = registry.getRegisteredHealthChecks();
+		assertEquals(7, registered.size());
+
+		assertFalse(registry.rediscover());
+		assertSame(registered, registry.getRegisteredHealthChecks());
+
+		environment.put(TestDynamicCheck.NAMES_KEY, "ds1,ds3");
+		assertTrue(registry.rediscover());
+		assertEquals(7, registry.getAllHealthChecks().size());
+
+		HealthCheckSnapshot rediscovered = registry.getRegisteredHealthChecks();
+		assertEquals(7, rediscovered.size());
+		// the known checks are kept, the deactivated ones stay deactivated
+		assertSame(registered.get("ds1"), rediscovered.get("ds1"));
+		assertSame(registered.get("direct"), rediscovered.get("direct"));
+		assertNull(rediscovered.get("testCheck1"));
+		assertNull(rediscovered.get("ds2"));
+		assertNotNull(rediscovered.get("ds3"));
+		assertTrue(registry.runHealthchecksWithDetailedReport().containsKey(
+				"ds3"));
+
+	}
+
+	@Test
+	public void testWarmUp() throws Exception {
+
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry();
+		assertEquals(5, registry.warmUp().get(10, TimeUnit.SECONDS).size());
+
+	}
+
+	private static int count(List<String> list, String value) {
+		int count = 0;
+		for (String element : list) {
+			if (element.equals(value)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Record the classes of the checks loaded through it
+	 */
+	static class RecordingClassLoader extends ClassLoader {
+
+		private final List<String> loaded = new ArrayList<String>();
+
+		/** the names of the resources looked up */
+		private final List<String> resources = new ArrayList<String>();
+
+		RecordingClassLoader() {
+			super(HealthCheckDiscoveryTestCase.class.getClassLoader());
+		}
+
+		@Override
+		protected synchronized Class<?> loadClass(String name, boolean resolve)
+				throws ClassNotFoundException {
+			if (name.startsWith("net.atos.xa.healthcheck.testcheck.")) {
+				loaded.add(name);
+			}
+			return super.loadClass(name, resolve);
+		}
+
+		@Override
+		public Enumeration<URL> getResources(String name) throws IOException {
+			resources.add(name);
+			return super.getResources(name);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package net.atos.xa.healthcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.yammer.metrics.core.HealthCheck.Result;
+
+public class HealthCheckJsonReportTestCase {
+
+	@Test
+	public void testReport() {
+
+		Map<String, HealthCheckResult> results = new LinkedHashMap<String, HealthCheckResult>();
+		results.put("check \"1\"", new HealthCheckResult(Result.healthy(), 12,
+				1000));
+		results.put("check2", new HealthCheckResult(Result
+				.unhealthy(new IllegalStateException("line1\nline2\t\\")), 500,
+				2000));
+		results.put("check3", new HealthCheckResult(Result.unhealthy("\u0001"),
+				1, 3000));
+
+		StringWriter out = new StringWriter();
+		HealthCheckJsonReport report = HealthCheckJsonReport.produceReport(
+				new PrintWriter(out), results);
+
+		assertEquals(3, report.getCount());
+		assertFalse(report.isHealthy());
+		assertEquals(
+				"{\"results\":[\n"
+						+ "{\"name\":\"check \\\"1\\\"\",\"healthy\":true,\"message\":null,\"executionTime\":12,\"executionTimeNanos\":12000000,\"timestamp\":1000,\"error\":null},\n"
+						+ "{\"name\":\"check2\",\"healthy\":false,\"message\":\"line1\\nline2\\t\\\\\",\"executionTime\":500,\"executionTimeNanos\":500000000,\"timestamp\":2000,\"error\":\"java.lang.IllegalStateException\"},\n"
+						+ "{\"name\":\"check3\",\"healthy\":false,\"message\":\"\\u0001\",\"executionTime\":1,\"executionTimeNanos\":1000000,\"timestamp\":3000,\"error\":null}\n"
+						+ "],\"healthy\":false}\n", out.toString());
+	}
+
+	@Test
+	public void testEmptyReport() {
+
+		StringWriter out = new StringWriter();
+		HealthCheckJsonReport report = HealthCheckJsonReport.produceReport(
+				new PrintWriter(out), new LinkedHashMap<String, HealthCheckResult>());
+
+		assertEquals(0, report.getCount());
+		assertTrue(report.isHealthy());
+		assertEquals("{\"results\":[\n],\"healthy\":true}\n", out.toString());
+	}
+
+}
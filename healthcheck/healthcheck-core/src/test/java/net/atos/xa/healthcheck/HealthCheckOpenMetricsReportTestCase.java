@@ -0,0 +1,128 @@
+package net.atos.xa.healthcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class HealthCheckOpenMetricsReportTestCase {
+
+	@Test
+	public void testReport() throws Exception {
+
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry();
+		registry.registerHealthChecks(
+				new CustomHealthCheckRegistryTestCase.SleepCheck(
+						"slow \"check\"", 30),
+				new CustomHealthCheckRegistryTestCase.FailingCheck("failing"));
+		registry.runHealthchecksWithDetailedReport();
+		registry.runHealthchecksWithDetailedReport();
+		// registered after the runs
+		registry.registerHealthChecks(new CustomHealthCheckRegistryTestCase.SleepCheck(
+				"never run", 0));
+
+		HealthCheckOpenMetricsReport report = new HealthCheckOpenMetricsReport();
+		StringWriter out = new StringWriter();
+		report.writeTo(out, registry);
+		String text = out.toString();
+
+		assertTrue(text, text.startsWith("# TYPE healthcheck_status gauge\n"));
+		assertTrue(text, text.endsWith("# EOF\n"));
+		assertTrue(text,
+				text.contains("\nhealthcheck_status{check=\"failing\"} 0\n"));
+		assertTrue(text, text
+				.contains("\nhealthcheck_status{check=\"slow \\\"check\\\"\"} 1\n"));
+		assertTrue(text, !text.contains("never run"));
+
+		assertTrue(text, text
+				.contains("\nhealthcheck_execution_seconds_bucket{check=\"failing\",le=\"0.005\"} 2\n"));
+		assertTrue(text, text
+				.contains("\nhealthcheck_execution_seconds_bucket{check=\"slow \\\"check\\\"\",le=\"0.025\"} 0\n"));
+		assertTrue(text, text
+				.contains("\nhealthcheck_execution_seconds_bucket{check=\"slow \\\"check\\\"\",le=\"+Inf\"} 2\n"));
+		assertTrue(text, text
+				.contains("\nhealthcheck_execution_seconds_count{check=\"failing\"} 2\n"));
+
+		// the buffer is reused and the checks are not executed again
+		StringWriter again = new StringWriter();
+		report.writeTo(again, registry);
+		assertEquals(text, again.toString());
+
+	}
+
+	@Test
+	public void testSlowScraperDoesNotBlockTheOtherScrapes() throws Exception {
+
+		final CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry();
+		registry.registerHealthChecks(new CustomHealthCheckRegistryTestCase.SleepCheck(
+				"check", 0));
+		registry.runHealthchecksWithDetailedReport();
+		final HealthCheckOpenMetricsReport report = new HealthCheckOpenMetricsReport();
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread slowScraper = new Thread() {
+			@Override
+			public void run() {
+				try {
+					report.writeTo(new Writer() {
+
+						@Override
+						public void write(char[] cbuf, int off, int len)
+								throws IOException {
+							writing.countDown();
+							try {
+								release.await();
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+
+						@Override
+						public void flush() {
+						}
+
+						@Override
+						public void close() {
+						}
+					}, registry);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		slowScraper.start();
+		try {
+			assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+			// rendered while the slow scraper is still reading its report
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			try {
+				Future<String> other = executor.submit(new Callable<String>() {
+					public String call() throws IOException {
+						StringWriter out = new StringWriter();
+						report.writeTo(out, registry);
+						return out.toString();
+					}
+				});
+				assertTrue(other.get(5, TimeUnit.SECONDS).endsWith("# EOF\n"));
+			} finally {
+				executor.shutdownNow();
+			}
+		} finally {
+			release.countDown();
+			slowScraper.join();
+		}
+
+	}
+
+}
@@ -0,0 +1,162 @@
+package net.atos.xa.healthcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.yammer.metrics.core.HealthCheck.Result;
+
+public class HealthCheckTextReportTestCase {
+
+	@Test
+	public void testSameOutputAsFormattedReport() {
+
+		long now = System.currentTimeMillis();
+		Map<String, HealthCheckResult> results = new TreeMap<String, HealthCheckResult>();
+		results.put("healthy", new HealthCheckResult(Result.healthy(), 12, now));
+		results.put("healthyWithMessage", new HealthCheckResult(
+				Result.healthy("connected to db1"), 0, now + 1));
+		results.put("previousSecond", new HealthCheckResult(Result.healthy(),
+				3, now - 1500));
+		results.put("unhealthy", new HealthCheckResult(
+				Result.unhealthy("connection refused"), 3005, now));
+		results.put("failed", new HealthCheckResult(
+				Result.unhealthy(new IllegalStateException("failure")), 7, now));
+		results.put("neverExecuted", new HealthCheckResult(Result.healthy(),
+				-1, 0));
+
+		HealthCheckTextReport report = new HealthCheckTextReport();
+		// the buffer and the caches are reused by the second call
+		for (int i = 0; i < 2; i++) {
+			assertEquals(formatted(results), rendered(report, results));
+		}
+
+		Map<String, HealthCheckResult> empty = new TreeMap<String, HealthCheckResult>();
+		assertEquals(formatted(empty), rendered(report, empty));
+
+	}
+
+	@Test
+	public void testSlowWriterDoesNotBlockTheOtherReports() throws Exception {
+
+		final Map<String, HealthCheckResult> results = new TreeMap<String, HealthCheckResult>();
+		results.put("healthy", new HealthCheckResult(Result.healthy(), 12,
+				System.currentTimeMillis()));
+		final HealthCheckTextReport report = new HealthCheckTextReport();
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final PrintWriter slowWriter = new PrintWriter(new Writer() {
+
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+				writing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		Thread slowClient = new Thread() {
+			@Override
+			public void run() {
+				report.writeTo(slowWriter, results, false);
+				slowWriter.flush();
+			}
+		};
+		slowClient.start();
+		try {
+			assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+			// rendered while the slow client is still writing its report
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			try {
+				Future<String> other = executor.submit(new Callable<String>() {
+					public String call() {
+						return rendered(report, results);
+					}
+				});
+				assertEquals(formatted(results), other.get(5, TimeUnit.SECONDS));
+			} finally {
+				executor.shutdownNow();
+			}
+		} finally {
+			release.countDown();
+			slowClient.join();
+		}
+
+	}
+
+	@Test
+	public void testHistory() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.history.size", "3");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+		registry.registerHealthChecks(
+				new CustomHealthCheckRegistryTestCase.SleepCheck("ok", 0),
+				new CustomHealthCheckRegistryTestCase.FailingCheck("failing"));
+		SortedMap<String, HealthCheckResult> results = null;
+		for (int i = 0; i < 2; i++) {
+			results = registry.runHealthchecksWithDetailedReport();
+		}
+
+		StringWriter out = new StringWriter();
+		PrintWriter writer = new PrintWriter(out);
+		new HealthCheckTextReport().writeTo(writer, results, registry);
+		writer.flush();
+
+		assertTrue(out.toString(), out.toString().contains(
+				String.format("%s  history: %s (%s status changes%s)\n", "!",
+						"--", 0, "")));
+		assertTrue(out.toString(), out.toString().endsWith(
+				String.format("%s  history: %s (%s status changes%s)\n", "",
+						"++", 0, "")));
+
+	}
+
+	private static String rendered(HealthCheckTextReport report,
+			Map<String, HealthCheckResult> results) {
+		StringWriter out = new StringWriter();
+		PrintWriter writer = new PrintWriter(out);
+		report.writeTo(writer, results, false);
+		writer.flush();
+		return out.toString();
+	}
+
+	/**
+	 * the report formatted by {@link HealthCheckReport}
+	 */
+	private static String formatted(Map<String, HealthCheckResult> results) {
+		StringWriter out = new StringWriter();
+		PrintWriter writer = new PrintWriter(out);
+		HealthCheckReport.produceReport(writer, results);
+		writer.flush();
+		return out.toString();
+	}
+
+}
@@ -0,0 +1,110 @@
+package net.atos.xa.healthcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.yammer.metrics.core.HealthCheck;
+import com.yammer.metrics.core.HealthCheck.Result;
+
+public class LatencyWindowTestCase {
+
+	@Test
+	public void testBuckets() {
+
+		for (long value = 0; value < 100000; value++) {
+			int index = LatencyWindow.indexOf(value);
+			assertTrue(value + " above its bucket",
+					value <= LatencyWindow.upperBoundOf(index));
+			assertTrue(value + " below its bucket", index == 0
+					|| value > LatencyWindow.upperBoundOf(index - 1));
+		}
+		assertEquals(LatencyWindow.BUCKETS - 1,
+				LatencyWindow.indexOf(TimeUnit.HOURS.toNanos(1)));
+		assertEquals(LatencyWindow.BUCKETS - 1,
+				LatencyWindow.indexOf(Long.MAX_VALUE));
+
+	}
+
+	@Test
+	public void testPercentiles() {
+
+		LatencyWindow window = new LatencyWindow(60000);
+		long now = System.nanoTime();
+		for (int i = 1; i <= 1000; i++) {
+			window.record(TimeUnit.MICROSECONDS.toNanos(i), now);
+		}
+
+		HealthCheckLatency latency = window.getLatency(now);
+		assertEquals(1000, latency.getCount());
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), latency.getMax());
+		assertApproximately(TimeUnit.MICROSECONDS.toNanos(500),
+				latency.getP50());
+		assertApproximately(TimeUnit.MICROSECONDS.toNanos(950),
+				latency.getP95());
+		assertApproximately(TimeUnit.MICROSECONDS.toNanos(990),
+				latency.getP99());
+
+	}
+
+	@Test
+	public void testSlidingWindow() {
+
+		LatencyWindow window = new LatencyWindow(60000);
+		long now = System.nanoTime();
+		window.record(TimeUnit.SECONDS.toNanos(5), now);
+		window.record(TimeUnit.MILLISECONDS.toNanos(1), now);
+
+		long later = now + TimeUnit.SECONDS.toNanos(30);
+		window.record(TimeUnit.MILLISECONDS.toNanos(2), later);
+		assertEquals(3, window.getLatency(later).getCount());
+		assertEquals(TimeUnit.SECONDS.toNanos(5), window.getLatency(later)
+				.getMax());
+
+		// the first executions are out of the window
+		long end = now + TimeUnit.SECONDS.toNanos(65);
+		HealthCheckLatency latency = window.getLatency(end);
+		assertEquals(1, latency.getCount());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(2), latency.getMax());
+
+		// their slice is reused
+		window.record(TimeUnit.MILLISECONDS.toNanos(3), end);
+		assertEquals(2, window.getLatency(end).getCount());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(3), window.getLatency(end)
+				.getMax());
+
+	}
+
+	@Test
+	public void testSubMillisecondExecution() {
+
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry();
+		registry.registerHealthChecks(new HealthCheck("fast") {
+			@Override
+			protected Result check() throws Exception {
+				return Result.healthy();
+			}
+		});
+
+		HealthCheckResult result = registry.runHealthchecksWithDetailedReport()
+				.get("fast");
+		assertTrue(result.getExecutionTimeNanos() > 0);
+		assertEquals(
+				TimeUnit.NANOSECONDS.toMillis(result.getExecutionTimeNanos()),
+				result.getExecutionTime());
+
+		HealthCheckLatency latency = registry.getLatency("fast");
+		assertEquals(1, latency.getCount());
+		assertEquals(result.getExecutionTimeNanos(), latency.getMax());
+
+	}
+
+	private static void assertApproximately(long expected, long actual) {
+		assertTrue("expected about " + expected + " but was " + actual,
+				actual >= expected && actual <= expected * 1.125);
+	}
+
+}
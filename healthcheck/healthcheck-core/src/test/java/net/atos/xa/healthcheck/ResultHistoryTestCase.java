@@ -0,0 +1,104 @@
+package net.atos.xa.healthcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.yammer.metrics.core.HealthCheck.Result;
+
+public class ResultHistoryTestCase {
+
+	@Test
+	public void testRingBuffer() {
+
+		ResultHistory history = new ResultHistory(3, 0, 60000);
+		assertEquals(0, history.snapshot(0).size());
+
+		for (int i = 1; i <= 5; i++) {
+			history.record(new HealthCheckResult(i % 2 == 0 ? Result.healthy()
+					: Result.unhealthy("failed"), i, 1000 * i));
+		}
+		HealthCheckHistory snapshot = history.snapshot(5000);
+		// the 3 last results, oldest first
+		assertEquals(3, snapshot.size());
+		assertEquals(3000, snapshot.getTimestamp(0));
+		assertEquals(5000, snapshot.getTimestamp(2));
+		assertEquals(4000000, snapshot.getExecutionTimeNanos(1));
+		assertEquals("-+-", snapshot.getStatuses());
+		assertEquals(2, snapshot.getTransitions());
+		assertFalse(snapshot.isFlapping());
+
+	}
+
+	@Test
+	public void testFlapping() {
+
+		ResultHistory history = new ResultHistory(20, 3, 10000);
+		long now = 100000;
+		// stable, then flapping
+		for (int i = 0; i < 5; i++) {
+			assertFalse(history.record(new HealthCheckResult(Result.healthy(),
+					1, now + i)));
+		}
+		boolean started = false;
+		for (int i = 0; i < 4; i++) {
+			started |= history.record(new HealthCheckResult(
+					i % 2 == 0 ? Result.unhealthy("failed") : Result.healthy(),
+					1, now + 10 + i));
+		}
+		assertTrue(started);
+		assertTrue(history.snapshot(now + 20).isFlapping());
+		assertEquals(4, history.snapshot(now + 20).getTransitions());
+
+		// the changes are out of the window afterwards
+		assertFalse(history.snapshot(now + 20000).isFlapping());
+		assertEquals(0, history.snapshot(now + 20000).getTransitions());
+
+	}
+
+	@Test
+	public void testRegistryHistory() {
+
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put("healthcheck.history.size", "2");
+		CustomHealthCheckRegistry registry = new CustomHealthCheckRegistry(
+				environment);
+		registry.registerHealthChecks(
+				new CustomHealthCheckRegistryTestCase.SleepCheck("ok", 0),
+				new CustomHealthCheckRegistryTestCase.FailingCheck("failing"));
+		assertNull(registry.getHistory("ok"));
+		for (int i = 0; i < 3; i++) {
+			registry.runHealthchecksWithDetailedReport();
+		}
+		assertEquals("++", registry.getHistory("ok").getStatuses());
+		assertEquals("--", registry.getHistory("failing").getStatuses());
+
+		StringWriter out = new StringWriter();
+		HealthCheckJsonReport report = new HealthCheckJsonReport(
+				new PrintWriter(out), registry);
+		registry.runHealthchecksWithDetailedReport(report);
+		report.end();
+		assertTrue(out.toString(), out.toString().contains(
+				"\"flapping\":false,\"transitions\":0,\"history\":[{"));
+
+		environment.put("healthcheck.history.size", "0");
+		CustomHealthCheckRegistry withoutHistory = new CustomHealthCheckRegistry(
+				environment);
+		withoutHistory.registerHealthChecks(new CustomHealthCheckRegistryTestCase.SleepCheck(
+				"ok", 0));
+		withoutHistory.runHealthchecksWithDetailedReport();
+		assertNotNull(withoutHistory.getLatency("ok"));
+		assertNull(withoutHistory.getHistory("ok"));
+
+	}
+
+}
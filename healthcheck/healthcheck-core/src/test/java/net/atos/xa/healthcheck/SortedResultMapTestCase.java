@@ -0,0 +1,79 @@
+package net.atos.xa.healthcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.yammer.metrics.core.HealthCheck;
+import com.yammer.metrics.core.HealthCheck.Result;
+
+public class SortedResultMapTestCase {
+
+	@Test
+	public void testSortedMap() {
+
+		HealthCheckSnapshot snapshot = HealthCheckSnapshot.of(Arrays
+				.<HealthCheck> asList(new NamedCheck("c"), new NamedCheck("a"),
+						new NamedCheck("d"), new NamedCheck("b")));
+		assertEquals(4, snapshot.size());
+
+		HealthCheckResult[] results = new HealthCheckResult[snapshot.size()];
+		TreeMap<String, HealthCheckResult> expected = new TreeMap<String, HealthCheckResult>();
+		for (int i = 0; i < results.length; i++) {
+			results[i] = new HealthCheckResult(Result.healthy(), i);
+			expected.put(snapshot.getName(i), results[i]);
+		}
+
+		SortedMap<String, HealthCheckResult> map = new SortedResultMap(
+				snapshot.getNames(), results);
+
+		assertEquals(expected, map);
+		assertEquals(expected.hashCode(), map.hashCode());
+		assertEquals("a", map.firstKey());
+		assertEquals("d", map.lastKey());
+		assertSame(results[2], map.get("c"));
+		assertNull(map.get("e"));
+		assertFalse(map.containsKey(null));
+
+		assertEquals(expected.headMap("c"), map.headMap("c"));
+		assertEquals(expected.tailMap("bb"), map.tailMap("bb"));
+		assertEquals(expected.subMap("b", "d"), map.subMap("b", "d"));
+		assertTrue(map.subMap("b", "b").isEmpty());
+		assertEquals("[b, c]", map.subMap("b", "d").keySet().toString());
+
+	}
+
+	@Test
+	public void testSnapshotUpdates() {
+
+		HealthCheckSnapshot snapshot = HealthCheckSnapshot.EMPTY.with(
+				new NamedCheck("b")).with(new NamedCheck("a"));
+		assertEquals("[a, b]", Arrays.toString(snapshot.getNames()));
+		assertSame(snapshot, snapshot.with(new NamedCheck("a")));
+		assertSame(snapshot, snapshot.without("c"));
+		assertEquals("[b]", Arrays.toString(snapshot.without("a").getNames()));
+		assertSame(HealthCheckSnapshot.EMPTY, snapshot.without("a").without(
+				"b"));
+
+	}
+
+	static class NamedCheck extends HealthCheck {
+
+		NamedCheck(String name) {
+			super(name);
+		}
+
+		@Override
+		protected Result check() throws Exception {
+			return Result.healthy();
+		}
+	}
+}
@@ -1,45 +1,175 @@
-package net.atos.xa.healthcheck.checks;
-
-import junit.framework.Assert;
-
-import org.h2.jdbcx.JdbcDataSource;
-import org.junit.Test;
-
-import com.mysql.jdbc.jdbc2.optional.MysqlDataSource;
-import com.yammer.metrics.core.HealthCheck.Result;
-
-public class DatabaseCheckTestCase {
-
-	@Test
-	public void testWithNullParam() {
-		DatabaseCheck check = new DatabaseCheck("name", null, null, null, 0);
-		Assert.assertFalse(check.execute().isHealthy());
-	}
-
-	@Test
-	public void testExecuteCheck() {
-
-		JdbcDataSource ds = new JdbcDataSource();
-		ds.setURL("jdbc:h2:mem:activiti");
-		ds.setUser("sa");
-		ds.setPassword("sa");
-
-		DatabaseCheck check = new DatabaseCheck("name", ds, null, null, 0);
-		Result result = check.execute();
-		Assert.assertEquals(Result.healthy(), result);
-
-	}
-
-	@Test
-	public void testDatabaseConnectionKO() {
-
-		MysqlDataSource mysql = new MysqlDataSource();
-		mysql.setUrl("jdbc:mysql://localhost:3306/dummy");
-		mysql.setUser("dummy");
-		mysql.setPassword("dummy");
-		DatabaseCheck check = new DatabaseCheck("name", mysql, null, null, 0);
-		Assert.assertFalse("Must be unhealthy", check.execute().isHealthy());
-
-	}
-
-}
+package net.atos.xa.healthcheck.checks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import junit.framework.Assert;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import com.mysql.jdbc.jdbc2.optional.MysqlDataSource;
+import com.yammer.metrics.core.HealthCheck.Result;
+
+public class DatabaseCheckTestCase {
+
+	@Test
+	public void testWithNullParam() {
+		DatabaseCheck check = new DatabaseCheck("name", null, null, null, 0);
+		Assert.assertFalse(check.execute().isHealthy());
+	}
+
+	@Test
+	public void testExecuteCheck() {
+
+		JdbcDataSource ds = new JdbcDataSource();
+		ds.setURL("jdbc:h2:mem:activiti");
+		ds.setUser("sa");
+		ds.setPassword("sa");
+
+		DatabaseCheck check = new DatabaseCheck("name", ds, null, null, 0);
+		Result result = check.execute();
+		Assert.assertEquals(Result.healthy(), result);
+
+	}
+
+	@Test
+	public void testDatabaseConnectionKO() {
+
+		MysqlDataSource mysql = new MysqlDataSource();
+		mysql.setUrl("jdbc:mysql://localhost:3306/dummy");
+		mysql.setUser("dummy");
+		mysql.setPassword("dummy");
+		DatabaseCheck check = new DatabaseCheck("name", mysql, null, null, 0);
+		Assert.assertFalse("Must be unhealthy", check.execute().isHealthy());
+
+	}
+
+	@Test
+	public void testMetadataIsResolvedOnce() {
+
+		JdbcDataSource ds = new JdbcDataSource();
+		ds.setURL("jdbc:h2:mem:metadata");
+		ds.setUser("sa");
+		ds.setPassword("sa");
+		CountingDataSource counter = new CountingDataSource(
+				ds);
+		DataSource countingDs = counter.getDataSource();
+
+		DatabaseCheck check = new DatabaseCheck("name", countingDs, null,
+				null, 0);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertTrue(check.execute().isHealthy());
+		}
+		Assert.assertEquals(1, counter.metadataCalls.get());
+
+		// resolved again after each failure
+		DatabaseCheck failingCheck = new DatabaseCheck("name", countingDs,
+				"select * from unknown_table", null, 0);
+		Assert.assertFalse(failingCheck.execute().isHealthy());
+		Assert.assertFalse(failingCheck.execute().isHealthy());
+		Assert.assertEquals(3, counter.metadataCalls.get());
+
+	}
+
+	@Test
+	public void testValidationStrategies() {
+
+		JdbcDataSource ds = new JdbcDataSource();
+		ds.setURL("jdbc:h2:mem:validation");
+		ds.setUser("sa");
+		ds.setPassword("sa");
+
+		CountingDataSource counter = new CountingDataSource(ds);
+		DatabaseCheck check = new DatabaseCheck("name",
+				counter.getDataSource(), null, null, 1, ValidationStrategy.PING);
+		Assert.assertTrue(check.execute().isHealthy());
+		Assert.assertTrue(check.execute().isHealthy());
+		Assert.assertEquals(2, counter.pingCalls.get());
+		Assert.assertEquals(0, counter.queryCalls.get());
+
+		counter = new CountingDataSource(ds);
+		check = new DatabaseCheck("name", counter.getDataSource(), null, null,
+				1, ValidationStrategy.QUERY_THEN_PING);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertTrue(check.execute().isHealthy());
+		}
+		Assert.assertEquals(1, counter.queryCalls.get());
+		Assert.assertEquals(2, counter.pingCalls.get());
+
+		counter = new CountingDataSource(ds);
+		check = new DatabaseCheck("name", counter.getDataSource(), null, null,
+				1, ValidationStrategy.QUERY);
+		Assert.assertTrue(check.execute().isHealthy());
+		Assert.assertEquals(1, counter.queryCalls.get());
+		Assert.assertEquals(0, counter.pingCalls.get());
+
+	}
+
+	/**
+	 * Count the calls to {@link Connection#getMetaData()},
+	 * {@link Connection#isValid(int)} and
+	 * {@link Connection#prepareStatement(String)}
+	 */
+	static class CountingDataSource implements InvocationHandler {
+
+		private final DataSource dataSource;
+
+		final AtomicInteger metadataCalls = new AtomicInteger();
+
+		final AtomicInteger pingCalls = new AtomicInteger();
+
+		final AtomicInteger queryCalls = new AtomicInteger();
+
+		CountingDataSource(DataSource dataSource) {
+			this.dataSource = dataSource;
+		}
+
+		DataSource getDataSource() {
+			return (DataSource) Proxy.newProxyInstance(getClass()
+					.getClassLoader(), new Class<?>[] { DataSource.class }, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			Object result = invokeTarget(dataSource, method, args);
+			if (result instanceof Connection) {
+				final Connection connection = (Connection) result;
+				return Proxy.newProxyInstance(getClass().getClassLoader(),
+						new Class<?>[] { Connection.class },
+						new InvocationHandler() {
+							public Object invoke(Object proxy, Method method,
+									Object[] args) throws Throwable {
+								if (method.getName().equals("getMetaData")) {
+									metadataCalls.incrementAndGet();
+								} else if (method.getName().equals("isValid")) {
+									pingCalls.incrementAndGet();
+								} else if (method.getName().equals(
+										"prepareStatement")) {
+									queryCalls.incrementAndGet();
+								}
+								return invokeTarget(
+										connection, method, args);
+							}
+						});
+			}
+			return result;
+		}
+
+		private static Object invokeTarget(Object target, Method method,
+				Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+package net.atos.xa.healthcheck.checks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.InitialContext;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import junit.framework.Assert;
+import net.atos.xa.healthcheck.checks.DatabaseCheckTestCase.CountingDataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+public class JndiDataSourceCheckTestCase {
+
+	@Test
+	public void testLookupIsReused() throws Exception {
+
+		JdbcDataSource ds = new JdbcDataSource();
+		ds.setURL("jdbc:h2:mem:jndi");
+		ds.setUser("sa");
+		ds.setPassword("sa");
+		CountingDataSource counter = new CountingDataSource(ds);
+		CountingContext context = new CountingContext(counter.getDataSource());
+
+		JndiDataSourceCheck check = new JndiDataSourceCheck(context,
+				"jdbc/test", 0);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertTrue(check.execute().isHealthy());
+		}
+		Assert.assertEquals(1, context.lookups.get());
+		Assert.assertEquals(1, counter.metadataCalls.get());
+
+		check.refresh();
+		Assert.assertTrue(check.execute().isHealthy());
+		Assert.assertEquals(2, context.lookups.get());
+
+	}
+
+	@Test
+	public void testLookupAfterFailure() throws Exception {
+
+		CountingContext context = new CountingContext(null);
+		JndiDataSourceCheck check = new JndiDataSourceCheck(context,
+				"jdbc/test", 0);
+		Assert.assertFalse(check.execute().isHealthy());
+		Assert.assertFalse(check.execute().isHealthy());
+		Assert.assertEquals(2, context.lookups.get());
+
+		// bound afterwards
+		JdbcDataSource ds = new JdbcDataSource();
+		ds.setURL("jdbc:h2:mem:jndi");
+		ds.setUser("sa");
+		ds.setPassword("sa");
+		context.dataSource = ds;
+		Assert.assertTrue(check.execute().isHealthy());
+		Assert.assertTrue(check.execute().isHealthy());
+		Assert.assertEquals(3, context.lookups.get());
+
+	}
+
+	/**
+	 * A context binding a single datasource and counting the lookups
+	 */
+	static class CountingContext extends InitialContext {
+
+		volatile DataSource dataSource;
+
+		final AtomicInteger lookups = new AtomicInteger();
+
+		CountingContext(DataSource dataSource) throws NamingException {
+			super(true);
+			this.dataSource = dataSource;
+		}
+
+		@Override
+		public Object lookup(String name) throws NamingException {
+			lookups.incrementAndGet();
+			if (dataSource == null) {
+				throw new NameNotFoundException(name);
+			}
+			return dataSource;
+		}
+	}
+}
@@ -1,33 +1,57 @@
-package net.atos.xa.healthcheck.testcheck;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-
-import net.atos.xa.healthcheck.spi.HealthCheckFactory;
-
-import com.yammer.metrics.core.HealthCheck;
-
-public class TestDynamicCheck implements HealthCheckFactory {
-
-	public List<HealthCheck> getHealthChecks(Map<String, String> environment) {
-
-		List<HealthCheck> results = new ArrayList<HealthCheck>();
-		results.add(new TestCheck5());
-		return results;
-	}
-
-	public class TestCheck5 extends HealthCheck {
-
-		public TestCheck5() {
-			super("testCheck5");
-		}
-
-		@Override
-		protected Result check() throws Exception {
-			// TODO Auto-generated method stub
-			return Result.healthy();
-		}
-
-	}
-}
+package net.atos.xa.healthcheck.testcheck;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.atos.xa.healthcheck.spi.HealthCheckFactory;
+import net.atos.xa.healthcheck.spi.HealthCheckProvider;
+
+import com.yammer.metrics.core.HealthCheck;
+
+@HealthCheckProvider
+public class TestDynamicCheck implements HealthCheckFactory {
+
+	/** the names of the additional checks, separated by commas */
+	public static final String NAMES_KEY = "testDynamicCheck.names";
+
+	public List<HealthCheck> getHealthChecks(Map<String, String> environment) {
+
+		List<HealthCheck> results = new ArrayList<HealthCheck>();
+		results.add(new TestCheck5());
+		// more checks to test the rediscovery
+		if (environment != null && environment.get(NAMES_KEY) != null) {
+			for (String name : environment.get(NAMES_KEY).split(",")) {
+				results.add(new NamedCheck(name.trim()));
+			}
+		}
+		return results;
+	}
+
+	public static class NamedCheck extends HealthCheck {
+
+		public NamedCheck(String name) {
+			super(name);
+		}
+
+		@Override
+		protected Result check() throws Exception {
+			return Result.healthy();
+		}
+
+	}
+
+	public class TestCheck5 extends HealthCheck {
+
+		public TestCheck5() {
+			super("testCheck5");
+		}
+
+		@Override
+		protected Result check() throws Exception {
+			// TODO Auto-generated method stub
+			return Result.healthy();
+		}
+
+	}
+}
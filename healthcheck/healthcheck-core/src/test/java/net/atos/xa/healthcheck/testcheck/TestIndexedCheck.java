@@ -0,0 +1,22 @@
+package net.atos.xa.healthcheck.testcheck;
+
+import net.atos.xa.healthcheck.spi.HealthCheckProvider;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * A check found from the index only, it is not declared as a service
+ */
+@HealthCheckProvider(name = "testIndexedCheck")
+public class TestIndexedCheck extends HealthCheck {
+
+	public TestIndexedCheck() {
+		super("testIndexedCheck");
+	}
+
+	@Override
+	protected Result check() throws Exception {
+		return Result.healthy();
+	}
+
+}
@@ -1,161 +1,140 @@
-package net.atos.xa.healthcheck.openejb;
-
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import javax.naming.Binding;
-import javax.naming.Context;
-import javax.naming.NamingEnumeration;
-import javax.naming.NamingException;
-
-import net.atos.xa.healthcheck.checks.DatabaseCheck;
-import net.atos.xa.healthcheck.openejb.util.JNDIUtil;
-import net.atos.xa.healthcheck.spi.HealthCheckFactory;
-
-import org.apache.commons.dbcp.BasicDataSource;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.yammer.metrics.core.HealthCheck;
-
-/**
- * Implementation of {@link HealthCheckFactory} for checking OpenEJB /TomEE
- * datasources This implementation browses the JNDI tree by looking for
- * Datasource entries. For each datasource entry, a {@link DatabaseCheck} is
- * created
- * 
- */
-public class DatasourceHealthCheckFactory implements HealthCheckFactory {
-
-	/** the logger */
-	private static Logger log = LoggerFactory
-			.getLogger(DatasourceHealthCheckFactory.class.getName());
-
-	private static final String ROOT = "";
-
-	/**
-	 * 
-	 */
-	public List<HealthCheck> getHealthChecks(Map<String, String> environment) {
-
-		if (log.isDebugEnabled()) {
-			log.debug("[HealthCheck] datasource healthcheck factory ");
-			StringBuffer buffer = new StringBuffer();
-			log.debug("[HealthCheck] Jndi Tree");
-			JNDIUtil.appendJndiTreeToBuffer(buffer,
-					JNDIUtil.getOpenEjbRootContext(), null);
-			log.debug(buffer.toString());
-		}
-
-		return getHealthChecks(JNDIUtil.getOpenEjbRootContext(), null);
-	}
-
-	private List<HealthCheck> getHealthChecks(Context context, String prefix) {
-
-		List<HealthCheck> result = null;
-
-		Set<DatasourceWrapper> dataSourceToAdd = new HashSet<DatasourceWrapper>();
-
-		try {
-			NamingEnumeration<Binding> ne = context.listBindings(ROOT);
-
-			while (ne.hasMoreElements()) {
-				Binding current = ne.next();
-				Object obj = current.getObject();
-				if (obj instanceof Context) {
-					List<HealthCheck> healthChecks = getHealthChecks(
-							(Context) obj, prefix + '/' + current.getName());
-
-					if (healthChecks != null) {
-						if (result == null) {
-							result = new ArrayList<HealthCheck>();
-						}
-
-						result.addAll(healthChecks);
-					}
-
-				} else if (BasicDataSource.class.isInstance(obj)) {
-
-					log.debug("Add datasource checker for : {}",
-							current.getName());
-
-					dataSourceToAdd.add(new DatasourceWrapper(
-							current.getName(), (BasicDataSource) obj));
-
-				}
-			}
-
-		} catch (NamingException e) {
-			log.error("[HealthCheck] " + e.getMessage(), e);
-			return null;
-		}
-
-		if (!dataSourceToAdd.isEmpty()) {
-
-			if (result == null) {
-				result = new ArrayList<HealthCheck>();
-			}
-
-			for (DatasourceWrapper datasourceWrapper : dataSourceToAdd) {
-				// no support of validation query timeout with openEJB 3.1
-				result.add(new DatabaseCheck(datasourceWrapper.getName(),
-						datasourceWrapper.getDatasource(), datasourceWrapper
-								.getDatasource().getValidationQuery(),
-						datasourceWrapper.getDatasource().getDriverClassName(),
-						0));
-			}
-		}
-
-		return result;
-
-	}
-
-	/*
-	 * By default OpenEJB creates two datasources (Jta and non Jta) for each
-	 * datasource referenced in the configuration.
-	 * 
-	 * @see org.apache.openejb.config.AutoConfig Use a wrapper to keep only one
-	 * datasource
-	 */
-	private class DatasourceWrapper {
-
-		private BasicDataSource datasource;
-		private String name;
-
-		DatasourceWrapper(String name, BasicDataSource datasource) {
-			this.datasource = datasource;
-			this.name = name;
-		}
-
-		public boolean equals(Object obj) {
-
-			if (!(obj instanceof DatasourceWrapper)) {
-				return false;
-			}
-
-			String nameDs = ((DatasourceWrapper) obj).getName();
-
-			return name.equals(nameDs + "Jta")
-					|| name.equals(nameDs + "NonJta")
-					|| nameDs.equals(name + "NonJta")
-					|| nameDs.equals(name + "Jta");
-
-		}
-
-		public int hashCode() {
-			return 1; // only the equals method must determine the equality
-		}
-
-		public String getName() {
-			return name;
-		}
-
-		public BasicDataSource getDatasource() {
-			return datasource;
-		}
-
-	}
-}
+package net.atos.xa.healthcheck.openejb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.Context;
+
+import net.atos.xa.healthcheck.checks.DatabaseCheck;
+import net.atos.xa.healthcheck.checks.ValidationStrategy;
+import net.atos.xa.healthcheck.openejb.util.JNDIUtil;
+import net.atos.xa.healthcheck.spi.HealthCheckFactory;
+import net.atos.xa.healthcheck.spi.HealthCheckProvider;
+import net.atos.xa.healthcheck.util.EnvironmentUtil;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yammer.metrics.core.HealthCheck;
+
+/**
+ * Implementation of {@link HealthCheckFactory} for checking OpenEJB /TomEE
+ * datasources This implementation browses the JNDI tree by looking for
+ * Datasource entries. For each datasource entry, a {@link DatabaseCheck} is
+ * created
+ * 
+ * <p>
+ * The following environment variables are optional:
+ * <ul>
+ * <li>openejbCheck.validationStrategy : the {@link ValidationStrategy} of the
+ * datasources (QUERY, PING or QUERY_THEN_PING, default QUERY)</li>
+ * <li>openejbCheck.validationStrategy.&lt;datasource name&gt; : the
+ * {@link ValidationStrategy} of one datasource, overrides the previous one</li>
+ * <li>openejbCheck.maxDepth : the maximum depth of the JNDI contexts walked
+ * (default 10)</li>
+ * <li>openejbCheck.include : the patterns of the JNDI paths of the
+ * datasources to check, separated by ';', '*' matching any sequence (e.g.
+ * /openejb/Resource/*, default all)</li>
+ * <li>openejbCheck.exclude : the patterns of the JNDI paths skipped with their
+ * sub-tree</li>
+ * <li>openejbCheck.walkThreads : the number of threads walking the sub-trees
+ * of the root context in parallel (default 1)</li>
+ * </ul>
+ * </p>
+ * 
+ */
+@HealthCheckProvider
+public class DatasourceHealthCheckFactory implements HealthCheckFactory {
+
+	/** the logger */
+	private static Logger log = LoggerFactory
+			.getLogger(DatasourceHealthCheckFactory.class.getName());
+
+	private static final String VALIDATION_STRATEGY_KEY = "openejbCheck.validationStrategy";
+
+	private static final String MAX_DEPTH_KEY = "openejbCheck.maxDepth";
+
+	private static final String INCLUDE_KEY = "openejbCheck.include";
+
+	private static final String EXCLUDE_KEY = "openejbCheck.exclude";
+
+	private static final String WALK_THREADS_KEY = "openejbCheck.walkThreads";
+
+	/**
+	 * 
+	 */
+	public List<HealthCheck> getHealthChecks(Map<String, String> environment) {
+
+		// the entries of the tree are logged in debug while walked
+		log.debug("[HealthCheck] datasource healthcheck factory ");
+		return getHealthChecks(JNDIUtil.getOpenEjbRootContext(), environment);
+	}
+
+	private List<HealthCheck> getHealthChecks(Context context,
+			Map<String, String> environment) {
+
+		List<HealthCheck> result = null;
+
+		Collection<DatasourceWrapper> dataSourceToAdd = new DatasourceWalker(
+				environment, MAX_DEPTH_KEY, INCLUDE_KEY, EXCLUDE_KEY,
+				WALK_THREADS_KEY).walk(context);
+
+		if (!dataSourceToAdd.isEmpty()) {
+
+			if (result == null) {
+				result = new ArrayList<HealthCheck>();
+			}
+
+			ValidationStrategy defaultStrategy = EnvironmentUtil.getEnum(
+					environment, VALIDATION_STRATEGY_KEY,
+					ValidationStrategy.class, ValidationStrategy.QUERY);
+
+			for (DatasourceWrapper datasourceWrapper : dataSourceToAdd) {
+				ValidationStrategy strategy = EnvironmentUtil.getEnum(
+						environment, VALIDATION_STRATEGY_KEY + "."
+								+ datasourceWrapper.getName(),
+						ValidationStrategy.class, defaultStrategy);
+
+				// no support of validation query timeout with openEJB 3.1
+				result.add(new DatabaseCheck(datasourceWrapper.getName(),
+						datasourceWrapper.getDatasource(), datasourceWrapper
+								.getDatasource().getValidationQuery(),
+						datasourceWrapper.getDatasource().getDriverClassName(),
+						0, strategy));
+			}
+		}
+
+		return result;
+
+	}
+
+	/*
+	 * By default OpenEJB creates two datasources (Jta and non Jta) for each
+	 * datasource referenced in the configuration.
+	 * 
+	 * @see org.apache.openejb.config.AutoConfig Only one datasource is kept
+	 * (see DatasourceWalker.ContextDatasources)
+	 */
+	static class DatasourceWrapper {
+
+		private BasicDataSource datasource;
+		private String name;
+
+		DatasourceWrapper(String name, BasicDataSource datasource) {
+			this.datasource = datasource;
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public BasicDataSource getDatasource() {
+			return datasource;
+		}
+
+	}
+}
@@ -0,0 +1,376 @@
+package net.atos.xa.healthcheck.openejb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.naming.Context;
+import javax.naming.NameClassPair;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+
+import net.atos.xa.healthcheck.openejb.DatasourceHealthCheckFactory.DatasourceWrapper;
+import net.atos.xa.healthcheck.util.EnvironmentUtil;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 
+ * Find the datasources of a JNDI tree. The entries are listed with
+ * {@link Context#list(String)} and only the sub-contexts and the datasources
+ * are looked up, the other entries are skipped from their class name.
+ * 
+ * The walk is bounded in depth, can skip or keep the paths matching patterns
+ * (e.g. "/openejb/Resource/*", the character '*' matches any sequence), and
+ * can walk the sub-trees of the root in parallel.
+ * 
+ */
+final class DatasourceWalker {
+
+	/** the logger */
+	private static Logger log = LoggerFactory.getLogger(DatasourceWalker.class
+			.getName());
+
+	private static final String ROOT = "";
+
+	/** the separator of the patterns of a list */
+	private static final String SEPARATOR = ";";
+
+	private static final String JTA = "Jta";
+
+	private static final String NON_JTA = "NonJta";
+
+	private final int maxDepth;
+
+	/** the datasource paths kept, all if empty */
+	private final List<Pattern> includes;
+
+	/** the paths skipped, with their sub-tree */
+	private final List<Pattern> excludes;
+
+	private final int threads;
+
+	/** the class loader of the classes of the entries */
+	private final ClassLoader classLoader;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param environment
+	 *            the environment, can be null
+	 * @param maxDepthKey
+	 *            the key of the maximum depth of the contexts walked
+	 * @param includeKey
+	 *            the key of the patterns of the datasource paths kept
+	 * @param excludeKey
+	 *            the key of the patterns of the paths skipped
+	 * @param threadsKey
+	 *            the key of the number of threads walking the sub-trees
+	 */
+	DatasourceWalker(Map<String, String> environment, String maxDepthKey,
+			String includeKey, String excludeKey, String threadsKey) {
+		this.maxDepth = EnvironmentUtil.getInt(environment, maxDepthKey, 10);
+		this.includes = compile(EnvironmentUtil.getString(environment,
+				includeKey));
+		this.excludes = compile(EnvironmentUtil.getString(environment,
+				excludeKey));
+		this.threads = EnvironmentUtil.getInt(environment, threadsKey, 1);
+		ClassLoader contextClassLoader = Thread.currentThread()
+				.getContextClassLoader();
+		this.classLoader = contextClassLoader != null ? contextClassLoader
+				: getClass().getClassLoader();
+	}
+
+	/**
+	 * 
+	 * @param root
+	 *            the root of the tree
+	 * @return the datasources found, without the Jta/NonJta duplicates of
+	 *         each context, the datasources of a context after those of its
+	 *         sub-contexts
+	 */
+	Collection<DatasourceWrapper> walk(final Context root) {
+		List<DatasourceWrapper> found = new ArrayList<DatasourceWrapper>();
+		if (threads <= 1) {
+			walk(root, ROOT, 0, found);
+			return found;
+		}
+
+		List<NameClassPair> entries = list(root, ROOT);
+		if (entries == null) {
+			return found;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new WalkerThreadFactory());
+		try {
+			List<Future<Subtree>> subtrees = new ArrayList<Future<Subtree>>();
+			for (final NameClassPair entry : entries) {
+				subtrees.add(executor.submit(new Callable<Subtree>() {
+					public Subtree call() {
+						Subtree subtree = new Subtree();
+						subtree.datasource = visit(root, entry, ROOT, 1,
+								subtree.found);
+						return subtree;
+					}
+				}));
+			}
+			// merged in the order of the tree
+			ContextDatasources datasources = new ContextDatasources();
+			for (Future<Subtree> future : subtrees) {
+				try {
+					Subtree subtree = future.get();
+					found.addAll(subtree.found);
+					if (subtree.datasource != null) {
+						datasources.add(subtree.datasource);
+					}
+				} catch (ExecutionException e) {
+					log.error("[HealthCheck] " + e.getCause().getMessage(),
+							e.getCause());
+				}
+			}
+			found.addAll(datasources.getDatasources());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.warn("[HealthCheck] interrupted while walking the jndi tree");
+		} finally {
+			executor.shutdownNow();
+		}
+		return found;
+	}
+
+	/**
+	 * Walk a context, the Jta/NonJta duplicates are removed within the
+	 * context only
+	 */
+	private void walk(Context context, String path, int depth,
+			List<DatasourceWrapper> found) {
+		List<NameClassPair> entries = list(context, path);
+		if (entries != null) {
+			ContextDatasources datasources = new ContextDatasources();
+			for (NameClassPair entry : entries) {
+				DatasourceWrapper datasource = visit(context, entry, path,
+						depth + 1, found);
+				if (datasource != null) {
+					datasources.add(datasource);
+				}
+			}
+			found.addAll(datasources.getDatasources());
+		}
+	}
+
+	/**
+	 * Visit an entry of a context
+	 * 
+	 * @param context
+	 *            the context
+	 * @param entry
+	 *            the entry
+	 * @param contextPath
+	 *            the path of the context
+	 * @param depth
+	 *            the depth of the entry
+	 * @param found
+	 *            the datasources found in the sub-tree of the entry
+	 * @return the datasource of the entry, or null if it is not a datasource
+	 */
+	private DatasourceWrapper visit(Context context, NameClassPair entry,
+			String contextPath, int depth, List<DatasourceWrapper> found) {
+		String path = contextPath + '/' + entry.getName();
+		log.debug("[HealthCheck] jndi entry {} ({})", path,
+				entry.getClassName());
+		if (matches(excludes, path)) {
+			log.debug("[HealthCheck] jndi entry {} excluded", path);
+			return null;
+		}
+		Class<?> type = loadClass(entry.getClassName());
+		if (type != null && !Context.class.isAssignableFrom(type)
+				&& !BasicDataSource.class.isAssignableFrom(type)) {
+			// neither a context nor a datasource, not resolved
+			return null;
+		}
+
+		Object obj;
+		try {
+			obj = context.lookup(entry.getName());
+		} catch (NamingException e) {
+			log.warn("[HealthCheck] cannot look up the jndi entry {}: {}",
+					path, e.getMessage());
+			return null;
+		}
+		if (obj instanceof Context) {
+			if (depth < maxDepth) {
+				walk((Context) obj, path, depth, found);
+			} else {
+				log.debug(
+						"[HealthCheck] jndi context {} not walked, maximum depth {} reached",
+						path, maxDepth);
+			}
+		} else if (obj instanceof BasicDataSource
+				&& (includes.isEmpty() || matches(includes, path))) {
+			log.debug("Add datasource checker for : {}", entry.getName());
+			return new DatasourceWrapper(entry.getName(),
+					(BasicDataSource) obj);
+		}
+		return null;
+	}
+
+	private static List<NameClassPair> list(Context context, String path) {
+		List<NameClassPair> entries = new ArrayList<NameClassPair>();
+		try {
+			NamingEnumeration<NameClassPair> ne = context.list(ROOT);
+			while (ne.hasMore()) {
+				entries.add(ne.next());
+			}
+			ne.close();
+		} catch (NamingException e) {
+			log.error("[HealthCheck] cannot list the jndi context " + path
+					+ ": " + e.getMessage(), e);
+			return null;
+		}
+		return entries;
+	}
+
+	/**
+	 * 
+	 * @return the class of the entry, or null if unknown
+	 */
+	private Class<?> loadClass(String className) {
+		if (className == null) {
+			return null;
+		}
+		try {
+			return Class.forName(className, false, classLoader);
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+	}
+
+	private static boolean matches(List<Pattern> patterns, String path) {
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(path).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 
+	 * @param patterns
+	 *            the patterns separated by ';', '*' matching any sequence of
+	 *            characters
+	 * @return the compiled patterns
+	 */
+	private static List<Pattern> compile(String patterns) {
+		List<Pattern> compiled = new ArrayList<Pattern>();
+		if (patterns != null) {
+			StringTokenizer tokenizer = new StringTokenizer(patterns, SEPARATOR);
+			while (tokenizer.hasMoreTokens()) {
+				String pattern = tokenizer.nextToken().trim();
+				if (pattern.length() == 0) {
+					continue;
+				}
+				StringBuilder regex = new StringBuilder();
+				int start = 0;
+				int wildcard;
+				while ((wildcard = pattern.indexOf('*', start)) >= 0) {
+					regex.append(Pattern.quote(pattern.substring(start,
+							wildcard)));
+					regex.append(".*");
+					start = wildcard + 1;
+				}
+				regex.append(Pattern.quote(pattern.substring(start)));
+				compiled.add(Pattern.compile(regex.toString()));
+			}
+		}
+		return compiled;
+	}
+
+	/**
+	 * The datasources of a context, without the Jta/NonJta duplicates: a
+	 * datasource is a duplicate of a datasource already added if the name of
+	 * one is the name of the other, possibly followed by Jta or NonJta (the
+	 * Jta and NonJta datasources are not duplicates of each other)
+	 */
+	static class ContextDatasources {
+
+		private final List<DatasourceWrapper> datasources = new ArrayList<DatasourceWrapper>();
+
+		/** the names of the datasources added */
+		private final Set<String> names = new HashSet<String>();
+
+		/**
+		 * 
+		 * @param datasource
+		 *            a datasource of the context
+		 * @return false if the datasource is a duplicate, it is not added
+		 */
+		boolean add(DatasourceWrapper datasource) {
+			String name = datasource.getName();
+			if (names.contains(name) || names.contains(name + JTA)
+					|| names.contains(name + NON_JTA)
+					|| names.contains(removeSuffix(name, JTA))
+					|| names.contains(removeSuffix(name, NON_JTA))) {
+				return false;
+			}
+			names.add(name);
+			datasources.add(datasource);
+			return true;
+		}
+
+		List<DatasourceWrapper> getDatasources() {
+			return datasources;
+		}
+
+		/**
+		 * 
+		 * @return the name without the suffix, or null if it does not end
+		 *         with the suffix
+		 */
+		private static String removeSuffix(String name, String suffix) {
+			return name.endsWith(suffix) ? name.substring(0, name.length()
+					- suffix.length()) : null;
+		}
+	}
+
+	/**
+	 * The datasources of a sub-tree of the root
+	 */
+	private static class Subtree {
+
+		/** the datasources of the sub-contexts of the entry */
+		private final List<DatasourceWrapper> found = new ArrayList<DatasourceWrapper>();
+
+		/** the entry itself if it is a datasource, or null */
+		private DatasourceWrapper datasource;
+	}
+
+	private static class WalkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "healthcheck-jndi-"
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -1,47 +1,185 @@
-package net.atos.xa.healthcheck.openejb;
-
-import java.util.Iterator;
-import java.util.List;
-
-import junit.framework.Assert;
-import net.atos.xa.healthcheck.openejb.util.OpenEjbUtil;
-
-import org.junit.Before;
-import org.junit.Test;
-
-import com.yammer.metrics.core.HealthCheck;
-
-public class DatasourceHealthCheckFactoryTestCase {
-
-	@Before
-	public void beforeTest() throws Exception {
-		OpenEjbUtil.startOpenEjb("testFactory");
-	}
-
-	@Test
-	public void testGetHealthChecks() {
-
-		DatasourceHealthCheckFactory factory = new DatasourceHealthCheckFactory();
-		List<HealthCheck> healthChecks = factory.getHealthChecks(null);
-		Assert.assertNotNull(healthChecks);
-		Assert.assertEquals(3, healthChecks.size());
-
-		Assert.assertTrue(contains(healthChecks, "databaseCheck DefaultDS"));
-		Assert.assertTrue(contains(healthChecks,
-				"databaseCheck xastory-cc-commonobjectsDS"));
-		Assert.assertTrue(contains(healthChecks,
-				"databaseCheck xastory-csm-coreDS"));
-	}
-
-	public boolean contains(List<HealthCheck> healthChecks, String checkName) {
-
-		boolean found = false;
-		Iterator<HealthCheck> iterator = healthChecks.iterator();
-		while (iterator.hasNext() && !found) {
-			HealthCheck check = iterator.next();
-			found = check.getName().equals(checkName);
-		}
-
-		return found;
-	}
-}
+package net.atos.xa.healthcheck.openejb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.Context;
+import javax.naming.NameClassPair;
+import javax.naming.NamingEnumeration;
+
+import junit.framework.Assert;
+import net.atos.xa.healthcheck.openejb.DatasourceHealthCheckFactory.DatasourceWrapper;
+import net.atos.xa.healthcheck.openejb.DatasourceWalker.ContextDatasources;
+import net.atos.xa.healthcheck.openejb.util.OpenEjbUtil;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.yammer.metrics.core.HealthCheck;
+
+public class DatasourceHealthCheckFactoryTestCase {
+
+	@Before
+	public void beforeTest() throws Exception {
+		OpenEjbUtil.startOpenEjb("testFactory");
+	}
+
+	@Test
+	public void testGetHealthChecks() {
+
+		DatasourceHealthCheckFactory factory = new DatasourceHealthCheckFactory();
+		List<HealthCheck> healthChecks = factory.getHealthChecks(null);
+		Assert.assertNotNull(healthChecks);
+		Assert.assertEquals(3, healthChecks.size());
+
+		Assert.assertTrue(contains(healthChecks, "databaseCheck DefaultDS"));
+		Assert.assertTrue(contains(healthChecks,
+				"databaseCheck xastory-cc-commonobjectsDS"));
+		Assert.assertTrue(contains(healthChecks,
+				"databaseCheck xastory-csm-coreDS"));
+	}
+
+	@Test
+	public void testJtaDuplicates() {
+
+		ContextDatasources datasources = new ContextDatasources();
+		Assert.assertTrue(datasources.add(wrapper("DefaultDS")));
+		Assert.assertFalse(datasources.add(wrapper("DefaultDSNonJta")));
+		Assert.assertFalse(datasources.add(wrapper("DefaultDSJta")));
+
+		datasources = new ContextDatasources();
+		Assert.assertTrue(datasources.add(wrapper("DefaultDSJta")));
+		Assert.assertFalse(datasources.add(wrapper("DefaultDS")));
+
+		// not the two datasources of one datasource
+		datasources = new ContextDatasources();
+		Assert.assertTrue(datasources.add(wrapper("DefaultDSJta")));
+		Assert.assertTrue(datasources.add(wrapper("DefaultDSNonJta")));
+		Assert.assertFalse(datasources.add(wrapper("DefaultDS")));
+		Assert.assertEquals(2, datasources.getDatasources().size());
+	}
+
+	@Test
+	public void testManyDatasources() {
+
+		Map<String, Object> resources = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < 20000; i++) {
+			resources.put("DS" + i, new BasicDataSource());
+			resources.put("DS" + i + "NonJta", new BasicDataSource());
+		}
+		Map<String, Object> root = new LinkedHashMap<String, Object>();
+		root.put("Resource", context(resources));
+
+		DatasourceWalker walker = new DatasourceWalker(null, "maxDepth",
+				"include", "exclude", "walkThreads");
+		Collection<DatasourceWrapper> datasources = walker.walk(context(root));
+		Assert.assertEquals(20000, datasources.size());
+		Assert.assertEquals("DS0", datasources.iterator().next().getName());
+	}
+
+	@Test
+	public void testSameNameInDifferentContexts() {
+
+		Map<String, Object> resources = new LinkedHashMap<String, Object>();
+		resources.put("DefaultDS", new BasicDataSource());
+		resources.put("DefaultDSNonJta", new BasicDataSource());
+		Map<String, Object> application = new LinkedHashMap<String, Object>();
+		application.put("DefaultDS", new BasicDataSource());
+		application.put("OtherDSJta", new BasicDataSource());
+		application.put("OtherDSNonJta", new BasicDataSource());
+		Map<String, Object> openejb = new LinkedHashMap<String, Object>();
+		openejb.put("Resource", context(resources));
+		openejb.put("app", context(application));
+		Map<String, Object> root = new LinkedHashMap<String, Object>();
+		root.put("openejb", context(openejb));
+		root.put("RootDS", new BasicDataSource());
+		root.put("RootDSNonJta", new BasicDataSource());
+
+		for (String threads : new String[] { "1", "2" }) {
+			Map<String, String> environment = new HashMap<String, String>();
+			environment.put("walkThreads", threads);
+			DatasourceWalker walker = new DatasourceWalker(environment,
+					"maxDepth", "include", "exclude", "walkThreads");
+			List<String> names = new ArrayList<String>();
+			for (DatasourceWrapper datasource : walker.walk(context(root))) {
+				names.add(datasource.getName());
+			}
+			Assert.assertEquals(
+					"[DefaultDS, DefaultDS, OtherDSJta, OtherDSNonJta, RootDS]",
+					names.toString());
+		}
+	}
+
+	private static DatasourceWrapper wrapper(String name) {
+		return new DatasourceWrapper(name, null);
+	}
+
+	/**
+	 * 
+	 * @return a read-only context of the given entries
+	 */
+	private static Context context(final Map<String, Object> entries) {
+		return (Context) Proxy.newProxyInstance(
+				DatasourceHealthCheckFactoryTestCase.class.getClassLoader(),
+				new Class<?>[] { Context.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("lookup")) {
+							return entries.get(args[0]);
+						}
+						if (method.getName().equals("list")) {
+							List<NameClassPair> pairs = new ArrayList<NameClassPair>();
+							for (Map.Entry<String, Object> entry : entries
+									.entrySet()) {
+								pairs.add(new NameClassPair(entry.getKey(),
+										entry.getValue() instanceof Context ? Context.class
+												.getName() : entry.getValue()
+												.getClass().getName()));
+							}
+							return enumeration(pairs.iterator());
+						}
+						return null;
+					}
+				});
+	}
+
+	private static NamingEnumeration<?> enumeration(final Iterator<?> iterator) {
+		return (NamingEnumeration<?>) Proxy.newProxyInstance(
+				DatasourceHealthCheckFactoryTestCase.class.getClassLoader(),
+				new Class<?>[] { NamingEnumeration.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						String name = method.getName();
+						if (name.startsWith("hasMore")) {
+							return Boolean.valueOf(iterator.hasNext());
+						}
+						if (name.startsWith("next")) {
+							return iterator.next();
+						}
+						return null;
+					}
+				});
+	}
+
+	public boolean contains(List<HealthCheck> healthChecks, String checkName) {
+
+		boolean found = false;
+		Iterator<HealthCheck> iterator = healthChecks.iterator();
+		while (iterator.hasNext() && !found) {
+			HealthCheck check = iterator.next();
+			found = check.getName().equals(checkName);
+		}
+
+		return found;
+	}
+}
@@ -0,0 +1,153 @@
+package net.atos.xa.healthcheck.servlet;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.atos.xa.healthcheck.HealthCheckResult;
+
+/**
+ * 
+ * Keep the last rendered report of each format and group, so that the
+ * successive requests answered with the same results (scheduler started or
+ * result TTL set) do not render the report again.
+ * 
+ * The ETag of a report is weak: it is derived from the name, the status and
+ * the message of the results only, the other values of the report (execution
+ * time and date, latency, history) are not significant for a client
+ * revalidating the report.
+ * 
+ */
+final class ReportCache {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/** the last report by format and group */
+	private final ConcurrentMap<String, CachedReport> reports = new ConcurrentHashMap<String, CachedReport>();
+
+	/**
+	 * 
+	 * @param key
+	 *            the format and the group of the report
+	 * @param results
+	 *            the results of the report
+	 * @return the report rendered for these result instances, or null
+	 */
+	CachedReport get(String key, Map<String, HealthCheckResult> results) {
+		CachedReport report = reports.get(key);
+		return report != null && report.isFor(results) ? report : null;
+	}
+
+	/**
+	 * Keep a report
+	 * 
+	 * @param key
+	 *            the format and the group of the report
+	 * @param report
+	 *            the rendered report
+	 */
+	void put(String key, CachedReport report) {
+		reports.put(key, report);
+	}
+
+	/**
+	 * 
+	 * @param format
+	 *            the format of the report
+	 * @param results
+	 *            the results of the report
+	 * @return the weak ETag of the report
+	 */
+	static String etag(String format, Map<String, HealthCheckResult> results) {
+		long hash = hash(FNV_OFFSET, format);
+		for (Map.Entry<String, HealthCheckResult> entry : results.entrySet()) {
+			hash = hash(hash, entry.getKey());
+			hash = (hash ^ (entry.getValue().isHealthy() ? '+' : '-'))
+					* FNV_PRIME;
+			hash = hash(hash, entry.getValue().getMessage());
+		}
+		return "W/\"" + Long.toHexString(hash) + '"';
+	}
+
+	private static long hash(long hash, String value) {
+		if (value == null) {
+			return (hash ^ 0xff) * FNV_PRIME;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+		}
+		// separate the values
+		return (hash ^ 0xfe) * FNV_PRIME;
+	}
+
+	/**
+	 * 
+	 * @param ifNoneMatch
+	 *            the header If-None-Match of the request, can be null
+	 * @param etag
+	 *            the ETag of the current report
+	 * @return true if the client has the current report, compared with the
+	 *         weak comparison
+	 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		String opaqueTag = opaqueTag(etag);
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if ("*".equals(tag) || opaqueTag.equals(opaqueTag(tag))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String opaqueTag(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	/**
+	 * A rendered report
+	 */
+	static final class CachedReport {
+
+		/** the results rendered, in the order of the report */
+		private final HealthCheckResult[] results;
+
+		/** the text of the report */
+		final String text;
+
+		/** the report encoded, null if it is written as text */
+		final byte[] bytes;
+
+		CachedReport(Map<String, HealthCheckResult> results, String text,
+				byte[] bytes) {
+			this.results = results.values().toArray(
+					new HealthCheckResult[results.size()]);
+			this.text = text;
+			this.bytes = bytes;
+		}
+
+		/**
+		 *
+		 * @return true if the report has been rendered from the same result
+		 *         instances
+		 */
+		boolean isFor(Map<String, HealthCheckResult> current) {
+			if (current.size() != results.length) {
+				return false;
+			}
+			int i = 0;
+			for (HealthCheckResult result : current.values()) {
+				if (result != results[i++]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+}
@@ -1,167 +1,640 @@
-package net.atos.xa.healthcheck.servlet;
-
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.Collection;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
-
-import javax.servlet.ServletConfig;
-import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-
-import net.atos.xa.healthcheck.HealthCheckManager;
-import net.atos.xa.healthcheck.HealthCheckReport;
-import net.atos.xa.healthcheck.HealthCheckResult;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.yammer.metrics.core.HealthCheck;
-import com.yammer.metrics.core.HealthCheckRegistry;
-
-/**
- * <p>
- * Complement the {@link HealthCheckServlet} servlet from the <a
- * href="http ://metrics.codahale.com">Yammer metrics framework</a>
- * 
- * Initialization parameters
- * 
- * param name "excludeChecks": a list of healthcheck names separated by
- * semi-colon ';'. white spaces are ignored between each semi-colon and name. If
- * a name does not match an available check, it is ignored.
- * 
- * 
- * Example: <textarea rows="11" cols="10 name="xml" readonly> <servlet>
- * <servlet-name>HealthCheckServlet</servlet-name> <servlet-class>
- * net.atos.xa.healthcheck.servlet.XaHealthCheckServlet </servlet-class>
- * <init-param> <param-name>excludeChecks</param-name>
- * <param-value>check1;check2</param-value> </init-param> </servlet> </textarea>
- * </p>
- * 
- */
-public class XaHealthCheckServlet extends HttpServlet {
-
-	private static final String EXCLUDE_CHECKS = "excludeChecks";
-
-	/** the logger */
-	private static Logger log = LoggerFactory
-			.getLogger(XaHealthCheckServlet.class.getName());
-
-	/**
-	 * The attribute name of the {@link HealthCheckRegistry} instance in the
-	 * servlet context.
-	 */
-	public static final String REGISTRY_ATTRIBUTE = XaHealthCheckServlet.class
-			.getName() + ".registry";
-	private static final String CONTENT_TYPE = "text/plain";
-
-	/**
-	 * 
-	 */
-	private static final long serialVersionUID = 5207476216122582925L;
-
-	@Override
-	public void init(ServletConfig config) throws ServletException {
-
-		log.info("[HealthCheck] register healthcheck");
-
-		Enumeration<String> initParameterNames = config.getInitParameterNames();
-		Map<String, String> environment = null;
-		while (initParameterNames.hasMoreElements()) {
-			String initParameterName = initParameterNames.nextElement();
-
-			if (!initParameterName.trim().equals(EXCLUDE_CHECKS)) {
-				if (environment == null) {
-					environment = new HashMap<String, String>();
-				}
-
-				log.info("Init param-name={} and param-value={}",
-						initParameterName,
-						config.getInitParameter(initParameterName));
-
-				environment.put(initParameterName,
-						config.getInitParameter(initParameterName));
-			}
-		}
-
-		Collection<HealthCheck> healthChecks = HealthCheckManager
-				.getFilteredHealthChecksList(
-						config.getInitParameter(EXCLUDE_CHECKS), environment);
-
-		HealthCheckManager.registerHealthChecks(healthChecks);
-
-	}
-
-	@Override
-	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
-			throws ServletException, IOException {
-
-		log.info("[HealthCheck] call healtchCheck servlet");
-
-		long start = System.currentTimeMillis();
-
-		resp.setContentType(CONTENT_TYPE);
-		resp.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
-		final PrintWriter writer = resp.getWriter();
-
-		if (req.getRequestURI().endsWith("/deactivateChecks")) {
-
-			// deactivate the register checks
-			HealthCheckManager.deactivateAllChecks();
-			writer.println("All checks are deactivated");
-		} else if (req.getRequestURI().endsWith("/activateChecks")) {
-
-			Collection<HealthCheck> healthChecks = HealthCheckManager
-					.getFilteredHealthChecksList(req.getSession()
-							.getServletContext()
-							.getInitParameter(EXCLUDE_CHECKS));
-
-			if (healthChecks != null) {
-				for (HealthCheck healthCheck : healthChecks) {
-					HealthCheckManager.activateCheck(healthCheck.getName());
-				}
-			}
-
-			writer.println("All checks are activated");
-
-		} else {
-			final Map<String, HealthCheckResult> results = HealthCheckManager
-					.runHealthchecksWithDetailedReport();
-
-			writer.format("Server host: %s (%s)\n", req.getLocalName(),
-					req.getLocalAddr());
-			writer.format("Client host: %s (%s)\n\n", req.getRemoteHost(),
-					req.getRemoteAddr());
-
-			if (results.isEmpty()) {
-				resp.setStatus(HttpServletResponse.SC_NOT_IMPLEMENTED);
-			} else {
-				if (isAllHealthy(results)) {
-					resp.setStatus(HttpServletResponse.SC_OK);
-				} else {
-					resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-				}
-			}
-
-			HealthCheckReport.produceReport(writer, results);
-
-		}
-
-		writer.format("\nTotal execution time : %s ms \n",
-				System.currentTimeMillis() - start);
-		writer.close();
-	}
-
-	private static boolean isAllHealthy(Map<String, HealthCheckResult> results) {
-		for (HealthCheckResult result : results.values()) {
-			if (!result.isHealthy()) {
-				return false;
-			}
-		}
-		return true;
-	}
-}
+package net.atos.xa.healthcheck.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.atos.xa.healthcheck.HealthCheckJsonReport;
+import net.atos.xa.healthcheck.HealthCheckManager;
+import net.atos.xa.healthcheck.HealthCheckOpenMetricsReport;
+import net.atos.xa.healthcheck.HealthCheckResult;
+import net.atos.xa.healthcheck.HealthCheckTextReport;
+import net.atos.xa.healthcheck.util.EnvironmentUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.yammer.metrics.core.HealthCheck;
+import com.yammer.metrics.core.HealthCheckRegistry;
+
+/**
+ * <p>
+ * Complement the {@link HealthCheckServlet} servlet from the <a
+ * href="http ://metrics.codahale.com">Yammer metrics framework</a>
+ * 
+ * Initialization parameters
+ * 
+ * param name "excludeChecks": a list of healthcheck names separated by
+ * semi-colon ';'. white spaces are ignored between each semi-colon and name. If
+ * a name does not match an available check, it is ignored.
+ * 
+ * The other init parameters are given as environment to the checks and to the
+ * health check manager (e.g. "healthcheck.executor.threads" to run the checks
+ * in parallel).
+ * 
+ * The report is produced in JSON (see {@link HealthCheckJsonReport}) when the
+ * request has the parameter "format=json" or accepts "application/json". The
+ * results are then sent one by one as the checks complete; the HTTP status
+ * (200, 500 or 501 as for the text report) is set at the end of the run if the
+ * response is not committed yet, the "healthy" attribute of the report is
+ * always reliable.
+ * 
+ * The paths "/live" and "/ready" run only the checks of the groups
+ * {@value HealthCheckManager#LIVENESS_GROUP} and
+ * {@value HealthCheckManager#READINESS_GROUP} (see
+ * {@link HealthCheckManager#setGroups(String, String...)}), so that the
+ * frequent probes of an orchestrator do not execute the expensive checks. The
+ * path "/deep" runs all the checks, as the other paths.
+ * 
+ * When the results are reused by several runs (scheduler started or result
+ * TTL set, see {@link HealthCheckManager#areResultsReused()}), the report of
+ * each format and path is rendered once for the same results. When all the
+ * checks are healthy, it is sent with a weak ETag derived from the name,
+ * status and message of the results: a request whose header "If-None-Match"
+ * has this ETag is answered with the status 304 (not modified) without
+ * report. A report with a failure is always sent in full with its status.
+ * 
+ * With the init parameter "healthcheck.servlet.async" set to true (and the
+ * servlet declared with async-supported), the reports are produced
+ * asynchronously: the request thread of the container is released at once,
+ * the checks are run by the threads of the servlet
+ * ("healthcheck.servlet.asyncThreads", 2 by default), and the response is
+ * completed when the results are ready. If the results are not ready after
+ * "healthcheck.servlet.asyncTimeout" milliseconds (30 seconds by default), the
+ * response is completed with the status 503 (service unavailable): a report
+ * still waiting for a thread is dropped, a report in progress is not
+ * interrupted, its checks run to their end and their results are kept for
+ * the other requests. At most "healthcheck.servlet.asyncQueue" reports (100 by
+ * default) wait for a thread, the next requests are answered at once with the
+ * status 503. The JSON report is written once all the checks are done.
+ * 
+ * The path "/metrics" exposes the last result and the execution times of the
+ * checks in the OpenMetrics text format (see
+ * {@link HealthCheckOpenMetricsReport}), the checks are not executed.
+ * 
+ * 
+ * Example: <textarea rows="11" cols="10 name="xml" readonly> <servlet>
+ * <servlet-name>HealthCheckServlet</servlet-name> <servlet-class>
+ * net.atos.xa.healthcheck.servlet.XaHealthCheckServlet </servlet-class>
+ * <init-param> <param-name>excludeChecks</param-name>
+ * <param-value>check1;check2</param-value> </init-param> <init-param>
+ * <param-name>healthcheck.servlet.async</param-name>
+ * <param-value>true</param-value> </init-param>
+ * <async-supported>true</async-supported> </servlet> </textarea>
+ * </p>
+ * 
+ */
+public class XaHealthCheckServlet extends HttpServlet {
+
+	private static final String EXCLUDE_CHECKS = "excludeChecks";
+
+	/** the logger */
+	private static Logger log = LoggerFactory
+			.getLogger(XaHealthCheckServlet.class.getName());
+
+	/**
+	 * The attribute name of the {@link HealthCheckRegistry} instance in the
+	 * servlet context.
+	 */
+	public static final String REGISTRY_ATTRIBUTE = XaHealthCheckServlet.class
+			.getName() + ".registry";
+	private static final String CONTENT_TYPE = "text/plain";
+
+	private static final String FORMAT_PARAMETER = "format";
+
+	private static final String JSON_FORMAT = "json";
+
+	private static final String LIVE_PATH = "/live";
+
+	private static final String READY_PATH = "/ready";
+
+	private static final String CACHE_CONTROL = "must-revalidate,no-cache,no-store";
+
+	private static final String TEXT_FORMAT = "text";
+
+	/** init parameter, true to produce the reports asynchronously */
+	private static final String ASYNC_KEY = "healthcheck.servlet.async";
+
+	/** init parameter, the number of threads running the asynchronous reports */
+	private static final String ASYNC_THREADS_KEY = "healthcheck.servlet.asyncThreads";
+
+	/**
+	 * init parameter, the time in milliseconds after which an asynchronous
+	 * report is completed without results
+	 */
+	private static final String ASYNC_TIMEOUT_KEY = "healthcheck.servlet.asyncTimeout";
+
+	/**
+	 * init parameter, the maximum number of asynchronous reports waiting for a
+	 * thread
+	 */
+	private static final String ASYNC_QUEUE_KEY = "healthcheck.servlet.asyncQueue";
+
+	/** renders the metrics, its buffer is reused by the scrapes */
+	private final transient HealthCheckOpenMetricsReport metricsReport = new HealthCheckOpenMetricsReport();
+
+	/** renders the text report, its buffer is reused by the requests */
+	private final transient HealthCheckTextReport textReport = new HealthCheckTextReport();
+
+	/** the last report of each format and path, for the reused results */
+	private final transient ReportCache reportCache = new ReportCache();
+
+	/** runs the asynchronous reports, null if the reports are synchronous */
+	private transient ThreadPoolExecutor asyncExecutor;
+
+	private long asyncTimeout;
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 5207476216122582925L;
+
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+
+		log.info("[HealthCheck] register healthcheck");
+
+		Enumeration<String> initParameterNames = config.getInitParameterNames();
+		Map<String, String> environment = null;
+		while (initParameterNames.hasMoreElements()) {
+			String initParameterName = initParameterNames.nextElement();
+
+			if (!initParameterName.trim().equals(EXCLUDE_CHECKS)) {
+				if (environment == null) {
+					environment = new HashMap<String, String>();
+				}
+
+				log.info("Init param-name={} and param-value={}",
+						initParameterName,
+						config.getInitParameter(initParameterName));
+
+				environment.put(initParameterName,
+						config.getInitParameter(initParameterName));
+			}
+		}
+
+		Collection<HealthCheck> healthChecks = HealthCheckManager
+				.getFilteredHealthChecksList(
+						config.getInitParameter(EXCLUDE_CHECKS), environment);
+
+		HealthCheckManager.registerHealthChecks(healthChecks);
+
+		if (EnvironmentUtil.getBoolean(environment, ASYNC_KEY, false)) {
+			asyncTimeout = EnvironmentUtil.getLong(environment,
+					ASYNC_TIMEOUT_KEY, 30000);
+			int threads = Math.max(
+					EnvironmentUtil.getInt(environment, ASYNC_THREADS_KEY, 2), 1);
+			asyncExecutor = new ThreadPoolExecutor(threads, threads, 0,
+					TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+							Math.max(EnvironmentUtil.getInt(environment,
+									ASYNC_QUEUE_KEY, 100), 1)),
+					new AsyncThreadFactory());
+			log.info("[HealthCheck] the reports are produced asynchronously");
+		}
+
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+
+		if (req.getRequestURI().endsWith("/metrics")) {
+			resp.setContentType(HealthCheckOpenMetricsReport.CONTENT_TYPE);
+			resp.setHeader("Cache-Control", CACHE_CONTROL);
+			PrintWriter writer = resp.getWriter();
+			metricsReport.writeTo(writer);
+			writer.close();
+			return;
+		}
+
+		log.info("[HealthCheck] call healtchCheck servlet");
+
+		long start = System.currentTimeMillis();
+
+		boolean report = !req.getRequestURI().endsWith("/deactivateChecks")
+				&& !req.getRequestURI().endsWith("/activateChecks");
+		if (report && asyncExecutor != null) {
+			if (req.isAsyncSupported()) {
+				startAsyncReport(req, start);
+				return;
+			}
+			log.debug("[HealthCheck] the servlet is not declared async-supported, the report is synchronous");
+		}
+
+		if (report && HealthCheckManager.areResultsReused()) {
+			produceCachedReport(req, resp,
+					HealthCheckManager.runGroupWithDetailedReport(getGroup(req)),
+					start);
+			return;
+		}
+
+		if (report && isJsonRequested(req)) {
+			produceJsonReport(resp, getGroup(req));
+			return;
+		}
+
+		if (report) {
+			produceTextReport(req, resp,
+					HealthCheckManager.runGroupWithDetailedReport(getGroup(req)),
+					start);
+			return;
+		}
+
+		resp.setContentType(CONTENT_TYPE);
+		resp.setHeader("Cache-Control", CACHE_CONTROL);
+		final PrintWriter writer = resp.getWriter();
+
+		if (req.getRequestURI().endsWith("/deactivateChecks")) {
+
+			// deactivate the register checks
+			HealthCheckManager.deactivateAllChecks();
+			writer.println("All checks are deactivated");
+		} else if (req.getRequestURI().endsWith("/activateChecks")) {
+
+			Collection<HealthCheck> healthChecks = HealthCheckManager
+					.getFilteredHealthChecksList(req.getSession()
+							.getServletContext()
+							.getInitParameter(EXCLUDE_CHECKS));
+
+			if (healthChecks != null) {
+				for (HealthCheck healthCheck : healthChecks) {
+					HealthCheckManager.activateCheck(healthCheck.getName());
+				}
+			}
+
+			writer.println("All checks are activated");
+
+		}
+
+		writer.format("\nTotal execution time : %s ms \n",
+				System.currentTimeMillis() - start);
+		writer.close();
+	}
+
+	/**
+	 * Release the request thread, the checks are run by the asynchronous
+	 * executor and the response is completed when the results are ready or
+	 * the timeout expires
+	 */
+	private void startAsyncReport(HttpServletRequest req, long start) {
+		AsyncContext asyncContext = req.startAsync();
+		asyncContext.setTimeout(asyncTimeout);
+		AsyncReport report = new AsyncReport(asyncContext, start);
+		asyncContext.addListener(report);
+		try {
+			asyncExecutor.execute(report);
+		} catch (RejectedExecutionException e) {
+			report.reject(asyncExecutor.isShutdown() ? "! the servlet is stopped"
+					: "! too many reports in progress");
+		}
+	}
+
+	private static void produceUnavailable(HttpServletResponse resp,
+			String message) throws IOException {
+		resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		resp.setContentType(CONTENT_TYPE);
+		resp.setHeader("Cache-Control", CACHE_CONTROL);
+		PrintWriter writer = resp.getWriter();
+		writer.println(message);
+		writer.close();
+	}
+
+	private void produceTextReport(HttpServletRequest req,
+			HttpServletResponse resp, Map<String, HealthCheckResult> results,
+			long start) throws IOException {
+		resp.setContentType(CONTENT_TYPE);
+		resp.setHeader("Cache-Control", CACHE_CONTROL);
+		resp.setStatus(getStatus(results));
+		PrintWriter writer = resp.getWriter();
+		writer.format("Server host: %s (%s)\n", req.getLocalName(),
+				req.getLocalAddr());
+		writer.format("Client host: %s (%s)\n\n", req.getRemoteHost(),
+				req.getRemoteAddr());
+		textReport.writeTo(writer, results, true);
+		writer.format("\nTotal execution time : %s ms \n",
+				System.currentTimeMillis() - start);
+		writer.close();
+	}
+
+	/**
+	 * Produce the report of the reused results: the report already rendered
+	 * for the same results is sent again, or not sent at all if the client
+	 * has it and all the checks are healthy
+	 */
+	private void produceCachedReport(HttpServletRequest req,
+			HttpServletResponse resp, Map<String, HealthCheckResult> results,
+			long start) throws IOException {
+
+		boolean json = isJsonRequested(req);
+		String group = getGroup(req);
+
+		String format = json ? JSON_FORMAT : TEXT_FORMAT;
+		int status = getStatus(results);
+		resp.setHeader("Cache-Control", CACHE_CONTROL);
+		resp.setHeader("Vary", "Accept");
+		// a 304 is only a substitute for a 200: the failures are always sent
+		// with their status, e.g. to the load balancers
+		if (status == HttpServletResponse.SC_OK) {
+			String etag = ReportCache.etag(format, results);
+			resp.setHeader("ETag", etag);
+			if (ReportCache.matches(req.getHeader("If-None-Match"), etag)) {
+				resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+		}
+
+		String key = format + ':' + group;
+		ReportCache.CachedReport cached = reportCache.get(key, results);
+		if (cached == null) {
+			StringWriter out = new StringWriter();
+			PrintWriter writer = new PrintWriter(out);
+			if (json) {
+				HealthCheckJsonReport.produceDetailedReport(writer, results);
+				writer.flush();
+				cached = new ReportCache.CachedReport(results, null, out
+						.toString().getBytes("UTF-8"));
+			} else {
+				textReport.writeTo(writer, results, true);
+				writer.flush();
+				cached = new ReportCache.CachedReport(results,
+						out.toString(), null);
+			}
+			reportCache.put(key, cached);
+		}
+		resp.setStatus(status);
+
+		if (json) {
+			resp.setContentType(HealthCheckJsonReport.CONTENT_TYPE);
+			resp.setCharacterEncoding("UTF-8");
+			resp.setContentLength(cached.bytes.length);
+			OutputStream out = resp.getOutputStream();
+			out.write(cached.bytes);
+			out.close();
+			return;
+		}
+
+		resp.setContentType(CONTENT_TYPE);
+		PrintWriter writer = resp.getWriter();
+		writer.format("Server host: %s (%s)\n", req.getLocalName(),
+				req.getLocalAddr());
+		writer.format("Client host: %s (%s)\n\n", req.getRemoteHost(),
+				req.getRemoteAddr());
+		writer.write(cached.text);
+		writer.format("\nTotal execution time : %s ms \n",
+				System.currentTimeMillis() - start);
+		writer.close();
+	}
+
+	private void produceJsonReport(HttpServletResponse resp, String group)
+			throws IOException {
+
+		resp.setContentType(HealthCheckJsonReport.CONTENT_TYPE);
+		resp.setCharacterEncoding("UTF-8");
+		resp.setHeader("Cache-Control", CACHE_CONTROL);
+		final PrintWriter writer = resp.getWriter();
+
+		HealthCheckJsonReport report = HealthCheckJsonReport
+				.produceReport(writer, group);
+
+		if (!resp.isCommitted()) {
+			if (report.getCount() == 0) {
+				resp.setStatus(HttpServletResponse.SC_NOT_IMPLEMENTED);
+			} else if (report.isHealthy()) {
+				resp.setStatus(HttpServletResponse.SC_OK);
+			} else {
+				resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			}
+		}
+		writer.close();
+	}
+
+	/**
+	 * 
+	 * @return the group of the checks to run, null to run all the checks
+	 */
+	private static String getGroup(HttpServletRequest req) {
+		String uri = req.getRequestURI();
+		if (uri.endsWith(LIVE_PATH)) {
+			return HealthCheckManager.LIVENESS_GROUP;
+		}
+		if (uri.endsWith(READY_PATH)) {
+			return HealthCheckManager.READINESS_GROUP;
+		}
+		return null;
+	}
+
+	private static boolean isJsonRequested(HttpServletRequest req) {
+		if (JSON_FORMAT.equalsIgnoreCase(req.getParameter(FORMAT_PARAMETER))) {
+			return true;
+		}
+		String accept = req.getHeader("Accept");
+		return accept != null
+				&& accept.indexOf(HealthCheckJsonReport.CONTENT_TYPE) >= 0;
+	}
+
+	@Override
+	public void destroy() {
+		log.info("[HealthCheck] release healthcheck resources");
+		if (asyncExecutor != null) {
+			asyncExecutor.shutdownNow();
+		}
+		HealthCheckManager.shutdown();
+		super.destroy();
+	}
+
+	/**
+	 * 
+	 * @return the HTTP status of a report
+	 */
+	private static int getStatus(Map<String, HealthCheckResult> results) {
+		if (results.isEmpty()) {
+			return HttpServletResponse.SC_NOT_IMPLEMENTED;
+		}
+		if (isAllHealthy(results)) {
+			return HttpServletResponse.SC_OK;
+		}
+		return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+	}
+
+	private static class AsyncThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "healthcheck-servlet-"
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * An asynchronous report. The response is written once, by the first of
+	 * the worker and the timeout, under the lock of the report: the
+	 * asynchronous cycle is always completed, and never while the worker is
+	 * still writing the response.
+	 */
+	private class AsyncReport implements Runnable, AsyncListener {
+
+		private final AsyncContext asyncContext;
+
+		private final long start;
+
+		/** true once the response is claimed by the worker or the timeout */
+		private boolean responded;
+
+		private boolean completed;
+
+		AsyncReport(AsyncContext asyncContext, long start) {
+			this.asyncContext = asyncContext;
+			this.start = start;
+		}
+
+		/**
+		 * Run the checks outside the lock, then write the report unless the
+		 * timeout has expired before
+		 */
+		public void run() {
+			synchronized (this) {
+				if (responded) {
+					return;
+				}
+			}
+			HttpServletRequest req = (HttpServletRequest) asyncContext
+					.getRequest();
+			HttpServletResponse resp = (HttpServletResponse) asyncContext
+					.getResponse();
+			Map<String, HealthCheckResult> results;
+			try {
+				results = HealthCheckManager
+						.runGroupWithDetailedReport(getGroup(req));
+			} catch (RuntimeException e) {
+				log.error("[HealthCheck] the report failed", e);
+				synchronized (this) {
+					if (!responded) {
+						responded = true;
+						resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+						complete();
+					}
+				}
+				return;
+			}
+			synchronized (this) {
+				if (responded) {
+					// timed out while running the checks
+					return;
+				}
+				responded = true;
+				try {
+					produceReport(req, resp, results);
+				} catch (IOException e) {
+					log.warn("[HealthCheck] cannot write the report", e);
+				} catch (RuntimeException e) {
+					log.error("[HealthCheck] the report failed", e);
+				} finally {
+					complete();
+				}
+			}
+		}
+
+		private void produceReport(HttpServletRequest req,
+				HttpServletResponse resp, Map<String, HealthCheckResult> results)
+				throws IOException {
+			if (HealthCheckManager.areResultsReused()) {
+				produceCachedReport(req, resp, results, start);
+			} else if (isJsonRequested(req)) {
+				resp.setContentType(HealthCheckJsonReport.CONTENT_TYPE);
+				resp.setCharacterEncoding("UTF-8");
+				resp.setHeader("Cache-Control", CACHE_CONTROL);
+				resp.setStatus(getStatus(results));
+				PrintWriter writer = resp.getWriter();
+				HealthCheckJsonReport.produceDetailedReport(writer, results);
+				writer.close();
+			} else {
+				produceTextReport(req, resp, results, start);
+			}
+		}
+
+		/**
+		 * Answer without report, the report cannot be executed
+		 */
+		synchronized void reject(String message) {
+			if (!responded) {
+				responded = true;
+				try {
+					produceUnavailable(
+							(HttpServletResponse) asyncContext.getResponse(),
+							message);
+				} catch (IOException e) {
+					log.warn("[HealthCheck] cannot write the report", e);
+				} finally {
+					complete();
+				}
+			}
+		}
+
+		public synchronized void onTimeout(AsyncEvent event)
+				throws IOException {
+			if (responded) {
+				// the worker has written the report, waited for by the lock
+				complete();
+				return;
+			}
+			log.warn("[HealthCheck] the report is not completed after {} ms",
+					asyncTimeout);
+			// a report still queued is dropped; a report in progress is left
+			// to end, its results may be shared with other requests
+			asyncExecutor.remove(this);
+			reject("! the checks are not completed after " + asyncTimeout
+					+ " ms");
+		}
+
+		private void complete() {
+			if (!completed) {
+				completed = true;
+				asyncContext.complete();
+			}
+		}
+
+		public void onStartAsync(AsyncEvent event) {
+			// nothing to do
+		}
+
+		public void onError(AsyncEvent event) {
+			// nothing to do
+		}
+
+		public void onComplete(AsyncEvent event) {
+			// nothing to do
+		}
+	}
+
+	private static boolean isAllHealthy(Map<String, HealthCheckResult> results) {
+		for (HealthCheckResult result : results.values()) {
+			if (!result.isHealthy()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,234 @@
+package net.atos.xa.healthcheck.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+public class AsyncReportTestCase {
+
+	@Test
+	public void testAsyncReport() throws Exception {
+
+		XaHealthCheckServlet servlet = newServlet();
+		try {
+			Exchange exchange = new Exchange(new StringWriter());
+			servlet.doGet(exchange.request, exchange.response);
+			assertTrue(exchange.completed.await(5, TimeUnit.SECONDS));
+			assertEquals(HttpServletResponse.SC_OK, exchange.status);
+			assertTrue(exchange.body.toString(), exchange.body.toString()
+					.contains("testCheck1=OK"));
+
+			// a late timeout does not complete the response again
+			exchange.listener.onTimeout(null);
+			assertEquals(1, exchange.completions.get());
+		} finally {
+			servlet.destroy();
+		}
+
+	}
+
+	@Test
+	public void testTimeoutAndBoundedQueue() throws Exception {
+
+		XaHealthCheckServlet servlet = newServlet();
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			// the single thread writes a report to a slow client
+			final Exchange slow = new Exchange(new Writer() {
+
+				@Override
+				public void write(char[] cbuf, int off, int len) {
+					writing.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+
+				@Override
+				public void flush() {
+				}
+
+				@Override
+				public void close() {
+				}
+			});
+			servlet.doGet(slow.request, slow.response);
+			assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+			Exchange queued = new Exchange(new StringWriter());
+			servlet.doGet(queued.request, queued.response);
+
+			// the queue is full
+			Exchange rejected = new Exchange(new StringWriter());
+			servlet.doGet(rejected.request, rejected.response);
+			assertEquals(1, rejected.completions.get());
+			assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+					rejected.status);
+
+			// the timeout of the queued report answers at once and frees the
+			// queue
+			queued.listener.onTimeout(null);
+			assertEquals(1, queued.completions.get());
+			assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+					queued.status);
+			Exchange next = new Exchange(new StringWriter());
+			servlet.doGet(next.request, next.response);
+			assertEquals(0, next.completions.get());
+
+			// the timeout of the report being written waits for its end
+			Thread timeout = new Thread() {
+				@Override
+				public void run() {
+					try {
+						slow.listener.onTimeout(null);
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			};
+			timeout.start();
+			Thread.sleep(100);
+			assertEquals(0, slow.completions.get());
+			release.countDown();
+			timeout.join();
+			assertEquals(1, slow.completions.get());
+			assertEquals(HttpServletResponse.SC_OK, slow.status);
+
+			assertTrue(next.completed.await(5, TimeUnit.SECONDS));
+			assertEquals(HttpServletResponse.SC_OK, next.status);
+		} finally {
+			release.countDown();
+			servlet.destroy();
+		}
+
+	}
+
+	private static XaHealthCheckServlet newServlet() throws Exception {
+		final Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("healthcheck.servlet.async", "true");
+		parameters.put("healthcheck.servlet.asyncThreads", "1");
+		parameters.put("healthcheck.servlet.asyncQueue", "1");
+		ServletConfig config = proxy(ServletConfig.class,
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("getInitParameterNames")) {
+							return Collections.enumeration(parameters.keySet());
+						}
+						if (method.getName().equals("getInitParameter")) {
+							return parameters.get(args[0]);
+						}
+						return null;
+					}
+				});
+		XaHealthCheckServlet servlet = new XaHealthCheckServlet();
+		servlet.init(config);
+		return servlet;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(
+				AsyncReportTestCase.class.getClassLoader(),
+				new Class<?>[] { type }, handler);
+	}
+
+	/**
+	 * A request answered asynchronously, with the minimal behavior of a
+	 * container
+	 */
+	private static class Exchange {
+
+		final Writer body;
+
+		final HttpServletRequest request;
+
+		final HttpServletResponse response;
+
+		final AsyncContext asyncContext;
+
+		volatile AsyncListener listener;
+
+		volatile int status = HttpServletResponse.SC_OK;
+
+		final AtomicInteger completions = new AtomicInteger();
+
+		final CountDownLatch completed = new CountDownLatch(1);
+
+		Exchange(Writer body) {
+			this.body = body;
+			asyncContext = proxy(AsyncContext.class, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					String name = method.getName();
+					if (name.equals("addListener")) {
+						listener = (AsyncListener) args[0];
+					} else if (name.equals("getRequest")) {
+						return request;
+					} else if (name.equals("getResponse")) {
+						return response;
+					} else if (name.equals("complete")) {
+						completions.incrementAndGet();
+						completed.countDown();
+					}
+					return null;
+				}
+			});
+			request = proxy(HttpServletRequest.class, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					String name = method.getName();
+					if (name.equals("getRequestURI")) {
+						return "/healthcheck";
+					} else if (name.equals("isAsyncSupported")) {
+						return Boolean.TRUE;
+					} else if (name.equals("startAsync")) {
+						return asyncContext;
+					} else if (method.getReturnType() == String.class) {
+						return name.startsWith("get") && args == null ? "localhost"
+								: null;
+					}
+					return null;
+				}
+			});
+			final PrintWriter writer = new PrintWriter(body);
+			response = proxy(HttpServletResponse.class,
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method,
+								Object[] args) {
+							String name = method.getName();
+							if (name.equals("setStatus")) {
+								status = ((Integer) args[0]).intValue();
+							} else if (name.equals("getWriter")) {
+								return writer;
+							} else if (method.getReturnType() == boolean.class) {
+								return Boolean.FALSE;
+							}
+							return null;
+						}
+					});
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+package net.atos.xa.healthcheck.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.atos.xa.healthcheck.HealthCheckManager;
+import net.atos.xa.healthcheck.HealthCheckResult;
+
+import org.junit.Test;
+
+import com.yammer.metrics.core.HealthCheck;
+import com.yammer.metrics.core.HealthCheck.Result;
+
+public class ReportCacheTestCase {
+
+	@Test
+	public void testEtag() {
+
+		Map<String, HealthCheckResult> results = new TreeMap<String, HealthCheckResult>();
+		results.put("check1", new HealthCheckResult(Result.healthy(), 10, 1000));
+		results.put("check2", new HealthCheckResult(Result.unhealthy("down"),
+				20, 1000));
+		String etag = ReportCache.etag("text", results);
+		assertTrue(etag, etag.startsWith("W/\""));
+
+		// the execution time and date are not significant
+		results.put("check1", new HealthCheckResult(Result.healthy(), 15, 2000));
+		assertEquals(etag, ReportCache.etag("text", results));
+		assertFalse(etag.equals(ReportCache.etag("json", results)));
+
+		results.put("check2", new HealthCheckResult(
+				Result.unhealthy("timed out"), 20, 2000));
+		assertFalse(etag.equals(ReportCache.etag("text", results)));
+		results.put("check2", new HealthCheckResult(Result.healthy("down"),
+				20, 2000));
+		assertFalse(etag.equals(ReportCache.etag("text", results)));
+
+	}
+
+	@Test
+	public void testMatches() {
+
+		String etag = "W/\"12ab\"";
+		assertFalse(ReportCache.matches(null, etag));
+		assertTrue(ReportCache.matches(etag, etag));
+		assertTrue(ReportCache.matches("\"12ab\"", etag));
+		assertTrue(ReportCache.matches("W/\"00\", W/\"12ab\"", etag));
+		assertTrue(ReportCache.matches("*", etag));
+		assertFalse(ReportCache.matches("W/\"12ac\"", etag));
+
+	}
+
+	@Test
+	public void testCachedReport() {
+
+		ReportCache cache = new ReportCache();
+		Map<String, HealthCheckResult> results = new TreeMap<String, HealthCheckResult>();
+		results.put("check1", new HealthCheckResult(Result.healthy(), 10, 1000));
+		assertNull(cache.get("text:null", results));
+
+		cache.put("text:null", new ReportCache.CachedReport(results, "report",
+				null));
+		assertNotNull(cache.get("text:null", results));
+		assertNull(cache.get("text:live", results));
+
+		// rendered again for new results, even equal
+		results.put("check1", new HealthCheckResult(Result.healthy(), 10, 1000));
+		assertNull(cache.get("text:null", results));
+
+	}
+
+	@Test
+	public void testNotModifiedOnlyWhenHealthy() throws Exception {
+
+		ServletConfig config = proxy(ServletConfig.class,
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("getInitParameterNames")) {
+							return Collections.enumeration(Collections
+									.emptyList());
+						}
+						return null;
+					}
+				});
+		XaHealthCheckServlet servlet = new XaHealthCheckServlet();
+		servlet.init(config);
+		// the manager is shared by the tests
+		HealthCheckManager.setResultTtl(1);
+		try {
+			Exchange exchange = new Exchange(null);
+			servlet.doGet(exchange.request, exchange.response);
+			assertEquals(HttpServletResponse.SC_OK, exchange.status);
+			String etag = exchange.headers.get("ETag");
+			assertNotNull(etag);
+
+			exchange = new Exchange(etag);
+			servlet.doGet(exchange.request, exchange.response);
+			assertEquals(HttpServletResponse.SC_NOT_MODIFIED, exchange.status);
+			assertEquals("", exchange.body.toString());
+
+			// a failure is always sent
+			HealthCheckManager.registerHealthChecks(new HealthCheck("down") {
+				@Override
+				protected Result check() {
+					return Result.unhealthy("down");
+				}
+			});
+			Thread.sleep(10);
+			exchange = new Exchange("*");
+			servlet.doGet(exchange.request, exchange.response);
+			assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+					exchange.status);
+			assertNull(exchange.headers.get("ETag"));
+			assertTrue(exchange.body.toString(), exchange.body.toString()
+					.contains("down"));
+		} finally {
+			HealthCheckManager.deactivateCheck("down");
+			HealthCheckManager.setResultTtl(0);
+			servlet.destroy();
+		}
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(
+				ReportCacheTestCase.class.getClassLoader(),
+				new Class<?>[] { type }, handler);
+	}
+
+	/**
+	 * A request for the text report with the header If-None-Match, and its
+	 * response
+	 */
+	private static class Exchange {
+
+		final StringWriter body = new StringWriter();
+
+		final Map<String, String> headers = new HashMap<String, String>();
+
+		final HttpServletRequest request;
+
+		final HttpServletResponse response;
+
+		int status = HttpServletResponse.SC_OK;
+
+		Exchange(final String ifNoneMatch) {
+			request = proxy(HttpServletRequest.class, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					String name = method.getName();
+					if (name.equals("getRequestURI")) {
+						return "/healthcheck";
+					} else if (name.equals("getHeader")) {
+						return "If-None-Match".equals(args[0]) ? ifNoneMatch
+								: null;
+					} else if (method.getReturnType() == boolean.class) {
+						return Boolean.FALSE;
+					} else if (method.getReturnType() == String.class) {
+						return name.startsWith("get") && args == null ? "localhost"
+								: null;
+					}
+					return null;
+				}
+			});
+			final PrintWriter writer = new PrintWriter(body);
+			response = proxy(HttpServletResponse.class,
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method,
+								Object[] args) {
+							String name = method.getName();
+							if (name.equals("setStatus")) {
+								status = ((Integer) args[0]).intValue();
+							} else if (name.equals("setHeader")) {
+								headers.put((String) args[0], (String) args[1]);
+							} else if (name.equals("getWriter")) {
+								return writer;
+							} else if (method.getReturnType() == boolean.class) {
+								return Boolean.FALSE;
+							}
+							return null;
+						}
+					});
+		}
+	}
+}